@@ -1,13 +1,16 @@
 #include <algorithm>
+#include <atomic>
 #include <cassert>
 #include <cmath>
 #include <cstdint>
 #include <cstdio>
+#include <cstring>
 #include <limits>
 #include <memory>
 #include <new>
 #include <numeric>
 #include <optional>
+#include <thread>
 #include <type_traits>
 #include <utility>
 
@@ -912,7 +915,8 @@ jobject createBattleOutcome(const Jni &jni, const Combatants &attackers,
   return battleOutcome;
 }
 
-jobject fight(const Jni &jni, jobject attackersList, jobject defendersList, jint seed) {
+// Fights the battle and returns the number of rounds, the stats are stored in the combatants.
+std::optional<std::uint32_t> runBattle(Combatants &attackers, Combatants &defenders, jint seed) {
   // Our RNG needs a positive seed.
   // Keep the calculation of the seed in sync with the java battle engine.
   if (seed < 0)
@@ -921,6 +925,32 @@ jobject fight(const Jni &jni, jobject attackersList, jobject defendersList, jint
     seed = 1;
   auto random = static_cast<std::uint32_t>(seed);
 
+  auto attackersParty = createParty(attackers);
+  if (!attackersParty)
+    return {};
+
+  auto defendersParty = createParty(defenders);
+  if (!defendersParty)
+    return {};
+
+  std::uint32_t round = 0u;
+  while (round < maxRounds && attackersParty->numAlive > 0u && defendersParty->numAlive > 0u) {
+    restoreShields(attackers, *attackersParty);
+    restoreShields(defenders, *defendersParty);
+
+    fire(attackers, defenders, *attackersParty, *defendersParty, round, random);
+    fire(defenders, attackers, *defendersParty, *attackersParty, round, random);
+
+    updateUnits(attackers, *attackersParty, round);
+    updateUnits(defenders, *defendersParty, round);
+
+    ++round;
+  }
+
+  return round;
+}
+
+jobject fight(const Jni &jni, jobject attackersList, jobject defendersList, jint seed) {
   auto attackers = loadCombatants(jni, attackersList);
   if (!attackers)
     return nullptr;
@@ -929,30 +959,364 @@ jobject fight(const Jni &jni, jobject attackersList, jobject defendersList, jint
   if (!defenders)
     return nullptr;
 
-  auto attackersParty = createParty(*attackers);
-  if (!attackersParty)
+  auto numRounds = runBattle(*attackers, *defenders, seed);
+  if (!numRounds)
     return nullptr;
 
-  auto defendersParty = createParty(*defenders);
-  if (!defendersParty)
-    return nullptr;
+  return createBattleOutcome(jni, *attackers, *defenders, *numRounds);
+}
 
-  std::uint32_t round = 0u;
-  while (round < maxRounds && attackersParty->numAlive > 0u && defendersParty->numAlive > 0u) {
-    restoreShields(*attackers, *attackersParty);
-    restoreShields(*defenders, *defendersParty);
+// Direct buffers
+// Keep the layouts in sync with DirectNativeBattleEngineStrategy. All values are in the native byte order.
+//
+// Input:
+//   header: int32 numKinds, int32 numAttackers, int32 numDefenders, int32 reserved
+//   for each attacker, then for each defender:
+//     int32 weaponsTechnology, int32 shieldingTechnology, int32 armorTechnology, int32 reserved
+//     int64 unitGroups[numKinds]
+//
+// Output, for each round, for each attacker then for each defender, for each kind:
+//   int64 numRemainingUnits, int64 timesFired, int64 timesWasShot,
+//   float shieldDamageDealt, float hullDamageDealt, float shieldDamageTaken, float hullDamageTaken
+
+constexpr std::size_t inputHeaderSize = 4u * sizeof(std::int32_t);
+constexpr std::size_t outputStatsSize = 3u * sizeof(std::int64_t) + 4u * sizeof(float);
+
+struct Reader {
+  const std::uint8_t *p;
+  const std::uint8_t *end;
+
+  template <typename T> std::optional<T> read() {
+    if (static_cast<std::size_t>(end - p) < sizeof(T))
+      return {};
+    T value;
+    std::memcpy(&value, p, sizeof(T));
+    p += sizeof(T);
+    return value;
+  }
+};
 
-    fire(*attackers, *defenders, *attackersParty, *defendersParty, round, random);
-    fire(*defenders, *attackers, *defendersParty, *attackersParty, round, random);
+struct Writer {
+  std::uint8_t *p;
 
-    updateUnits(*attackers, *attackersParty, round);
-    updateUnits(*defenders, *defendersParty, round);
+  template <typename T> void write(T value) {
+    std::memcpy(p, &value, sizeof(T));
+    p += sizeof(T);
+  }
+};
 
-    ++round;
+std::optional<Combatant> readCombatant(Reader &reader) {
+  auto weaponsTechnology = reader.read<std::int32_t>();
+  auto shieldingTechnology = reader.read<std::int32_t>();
+  auto armorTechnology = reader.read<std::int32_t>();
+  auto reserved = reader.read<std::int32_t>();
+  if (!weaponsTechnology || !shieldingTechnology || !armorTechnology || !reserved) {
+    std::fputs("BattleEngine: Input buffer too small\n", stderr);
+    return {};
+  }
+  if (*weaponsTechnology < 0 || *shieldingTechnology < 0 || *armorTechnology < 0) {
+    std::fputs("BattleEngine: Combat technologies cannot be negative\n", stderr);
+    return {};
+  }
+
+  std::unique_ptr<std::uint64_t[]> unitGroups(new (std::nothrow) std::uint64_t[g_numKinds]);
+  if (!unitGroups) {
+    std::fputs("BattleEngine: Allocating memory for unitGroups failed\n", stderr);
+    return {};
+  }
+  for (std::uint8_t kind = 0u; kind < g_numKinds; ++kind) {
+    auto count = reader.read<std::int64_t>();
+    if (!count) {
+      std::fputs("BattleEngine: Input buffer too small\n", stderr);
+      return {};
+    }
+    if (*count < 0) {
+      std::fputs("BattleEngine: Unit count cannot be negative\n", stderr);
+      return {};
+    }
+    unitGroups[kind] = static_cast<std::uint64_t>(*count);
+  }
+
+  // UnitGroupStats has a constructor that zeroes all fields.
+  std::unique_ptr<UnitGroupStats[]> stats(new (std::nothrow)
+                                              UnitGroupStats[g_numKinds * maxRounds]);
+  if (!stats) {
+    std::fputs("BattleEngine: Allocating memory for stats failed\n", stderr);
+    return {};
   }
 
-  std::uint32_t numRounds = round;
-  return createBattleOutcome(jni, *attackers, *defenders, numRounds);
+  return Combatant{
+      /* .weaponsTechnology = */ static_cast<float>(*weaponsTechnology),
+      /* .shieldingTechnology = */ static_cast<float>(*shieldingTechnology),
+      /* .armorTechnology = */ static_cast<float>(*armorTechnology),
+      /* .unitGroups = */ std::move(unitGroups),
+      /* .stats = */ std::move(stats),
+  };
+}
+
+std::optional<Combatants> readCombatants(Reader &reader, std::int32_t size) {
+  // Each unit has an uint8_t field representing its owner, and thus we cannot handle more than 256
+  // combatants on one side.
+  if (size < 0 || size > std::numeric_limits<std::uint8_t>::max()) {
+    std::fputs("BattleEngine: Too many combatants\n", stderr);
+    return {};
+  }
+
+  auto numCombatants = static_cast<std::uint8_t>(size);
+
+  std::unique_ptr<Combatant[]> combatants(new (std::nothrow) Combatant[numCombatants]);
+  if (!combatants) {
+    std::fputs("BattleEngine: Allocating memory for combatants failed\n", stderr);
+    return {};
+  }
+
+  for (std::uint8_t i = 0u; i < numCombatants; ++i) {
+    auto combatant = readCombatant(reader);
+    if (!combatant)
+      return {};
+    combatants[i] = std::move(*combatant);
+  }
+
+  return Combatants{
+      /* .combatants = */ std::move(combatants),
+      /* .num = */ numCombatants,
+  };
+}
+
+void writeStats(Writer &writer, const Combatants &combatants, std::uint32_t round) {
+  for (std::uint8_t i = 0u; i < combatants.num; ++i) {
+    const UnitGroupStats *stats = &combatants.combatants[i].stats[round * g_numKinds];
+    for (std::uint8_t kind = 0u; kind < g_numKinds; ++kind) {
+      const UnitGroupStats &s = stats[kind];
+      writer.write(static_cast<std::int64_t>(s.numRemainingUnits));
+      writer.write(static_cast<std::int64_t>(s.timesFired));
+      writer.write(static_cast<std::int64_t>(s.timesWasShot));
+      writer.write(s.shieldDamageDealt);
+      writer.write(s.hullDamageDealt);
+      writer.write(s.shieldDamageTaken);
+      writer.write(s.hullDamageTaken);
+    }
+  }
+}
+
+// Reads the combatants of a battle, fights it, and writes the stats. Returns the number of rounds.
+std::optional<std::uint32_t> fightBattle(Reader &reader, std::int32_t numAttackers,
+                                         std::int32_t numDefenders, jint seed, std::uint8_t *out,
+                                         std::size_t outCapacity) {
+  auto attackers = readCombatants(reader, numAttackers);
+  if (!attackers)
+    return {};
+
+  auto defenders = readCombatants(reader, numDefenders);
+  if (!defenders)
+    return {};
+
+  auto numRounds = runBattle(*attackers, *defenders, seed);
+  if (!numRounds)
+    return {};
+
+  auto roundSize = (std::size_t{attackers->num} + defenders->num) * g_numKinds * outputStatsSize;
+  if (outCapacity < *numRounds * roundSize) {
+    std::fputs("BattleEngine: Output buffer too small\n", stderr);
+    return {};
+  }
+
+  Writer writer{out};
+  for (std::uint32_t round = 0u; round < *numRounds; ++round) {
+    writeStats(writer, *attackers, round);
+    writeStats(writer, *defenders, round);
+  }
+
+  return numRounds;
+}
+
+struct Buffers {
+  const std::uint8_t *in;
+  std::uint8_t *out;
+  std::size_t inCapacity;
+  std::size_t outCapacity;
+};
+
+std::optional<Buffers> getBuffers(JNIEnv *env, jobject input, jobject output) {
+  auto *in = static_cast<const std::uint8_t *>(env->GetDirectBufferAddress(input));
+  auto *out = static_cast<std::uint8_t *>(env->GetDirectBufferAddress(output));
+  jlong inCapacity = env->GetDirectBufferCapacity(input);
+  jlong outCapacity = env->GetDirectBufferCapacity(output);
+  if (!in || !out || inCapacity < 0 || outCapacity < 0) {
+    std::fputs("BattleEngine: Buffers must be direct\n", stderr);
+    return {};
+  }
+  return Buffers{in, out, static_cast<std::size_t>(inCapacity),
+                 static_cast<std::size_t>(outCapacity)};
+}
+
+// Reads the header of the input, which is the same for a single battle and a batch. The second
+// value is the number of combatants (single battle) or the number of battles (batch).
+std::optional<std::pair<std::int32_t, std::int32_t>> readHeader(Reader &reader) {
+  auto numKinds = reader.read<std::int32_t>();
+  auto first = reader.read<std::int32_t>();
+  auto second = reader.read<std::int32_t>();
+  auto reserved = reader.read<std::int32_t>();
+  if (!numKinds || !first || !second || !reserved) {
+    std::fputs("BattleEngine: Input buffer too small\n", stderr);
+    return {};
+  }
+  if (*numKinds != g_numKinds) {
+    std::fprintf(stderr, "BattleEngine: Wrong number of unit kinds: %i, expected %u\n", *numKinds,
+                 g_numKinds);
+    return {};
+  }
+  return std::pair{*first, *second};
+}
+
+// Returns the number of rounds, or -1 if the battle couldn't be fought.
+jint fightBuffers(JNIEnv *env, jobject input, jobject output, jint seed) {
+  auto buffers = getBuffers(env, input, output);
+  if (!buffers)
+    return -1;
+
+  Reader reader{buffers->in, buffers->in + buffers->inCapacity};
+  auto header = readHeader(reader);
+  if (!header)
+    return -1;
+
+  auto numRounds =
+      fightBattle(reader, header->first, header->second, seed, buffers->out, buffers->outCapacity);
+  if (!numRounds)
+    return -1;
+
+  return static_cast<jint>(*numRounds);
+}
+
+// Batches
+// Keep the layouts in sync with DirectNativeBattleEngineStrategy.
+//
+// Input:
+//   header: int32 numKinds, int32 numBattles, int32 numThreads, int32 reserved
+//   for each battle:
+//     int32 numAttackers, int32 numDefenders, int32 seed, int32 reserved
+//     the combatants as in the input of a single battle
+//
+// Output:
+//   int32 numRounds[numBattles], padded to a multiple of 8 bytes
+//   for each battle: the stats as in the output of a single battle, maxRounds rounds are reserved
+
+struct BatchBattle {
+  Reader reader;
+  std::uint8_t *out;
+  std::size_t outCapacity;
+  std::int32_t numAttackers;
+  std::int32_t numDefenders;
+  std::int32_t seed;
+};
+
+struct Batch {
+  std::unique_ptr<BatchBattle[]> battles;
+  std::uint32_t num;
+  std::uint8_t *numRounds;
+  std::atomic<std::uint32_t> next{0u};
+  std::atomic<bool> failed{false};
+};
+
+void fightBatch(Batch &batch) {
+  while (!batch.failed.load(std::memory_order_relaxed)) {
+    std::uint32_t i = batch.next.fetch_add(1u, std::memory_order_relaxed);
+    if (i >= batch.num)
+      return;
+    BatchBattle &b = batch.battles[i];
+    auto numRounds =
+        fightBattle(b.reader, b.numAttackers, b.numDefenders, b.seed, b.out, b.outCapacity);
+    if (!numRounds) {
+      batch.failed.store(true, std::memory_order_relaxed);
+      return;
+    }
+    auto n = static_cast<std::int32_t>(*numRounds);
+    std::memcpy(batch.numRounds + i * sizeof(std::int32_t), &n, sizeof(n));
+  }
+}
+
+// Returns 0, or -1 if any of the battles couldn't be fought.
+jint fightBatchBuffers(JNIEnv *env, jobject input, jobject output) {
+  auto buffers = getBuffers(env, input, output);
+  if (!buffers)
+    return -1;
+
+  const std::uint8_t *inEnd = buffers->in + buffers->inCapacity;
+  Reader reader{buffers->in, inEnd};
+  auto header = readHeader(reader);
+  if (!header)
+    return -1;
+  auto [numBattles, numThreads] = *header;
+  if (numBattles < 0 || numThreads < 1) {
+    std::fputs("BattleEngine: Wrong batch header\n", stderr);
+    return -1;
+  }
+
+  Batch batch;
+  batch.num = static_cast<std::uint32_t>(numBattles);
+  batch.battles.reset(new (std::nothrow) BatchBattle[batch.num]);
+  if (!batch.battles) {
+    std::fputs("BattleEngine: Allocating memory for battles failed\n", stderr);
+    return -1;
+  }
+
+  // Find where the battles start in both buffers, the battles themselves are read by the workers.
+  std::size_t numRoundsSize = (batch.num * sizeof(std::int32_t) + 7u) / 8u * 8u;
+  if (buffers->outCapacity < numRoundsSize) {
+    std::fputs("BattleEngine: Output buffer too small\n", stderr);
+    return -1;
+  }
+  batch.numRounds = buffers->out;
+  std::size_t outOffset = numRoundsSize;
+  std::size_t combatantSize = 4u * sizeof(std::int32_t) + g_numKinds * sizeof(std::int64_t);
+  for (std::uint32_t i = 0u; i < batch.num; ++i) {
+    auto numAttackers = reader.read<std::int32_t>();
+    auto numDefenders = reader.read<std::int32_t>();
+    auto seed = reader.read<std::int32_t>();
+    auto reserved = reader.read<std::int32_t>();
+    if (!numAttackers || !numDefenders || !seed || !reserved || *numAttackers < 0 ||
+        *numDefenders < 0) {
+      std::fputs("BattleEngine: Wrong battle header\n", stderr);
+      return -1;
+    }
+    auto numCombatants =
+        static_cast<std::size_t>(*numAttackers) + static_cast<std::size_t>(*numDefenders);
+    auto inSize = numCombatants * combatantSize;
+    auto outSize = numCombatants * maxRounds * g_numKinds * outputStatsSize;
+    if (static_cast<std::size_t>(inEnd - reader.p) < inSize ||
+        buffers->outCapacity - outOffset < outSize) {
+      std::fputs("BattleEngine: Buffer too small\n", stderr);
+      return -1;
+    }
+    batch.battles[i] = BatchBattle{
+        /* .reader = */ Reader{reader.p, reader.p + inSize},
+        /* .out = */ buffers->out + outOffset,
+        /* .outCapacity = */ outSize,
+        /* .numAttackers = */ *numAttackers,
+        /* .numDefenders = */ *numDefenders,
+        /* .seed = */ *seed,
+    };
+    reader.p += inSize;
+    outOffset += outSize;
+  }
+
+  // The current thread is one of the workers.
+  auto numWorkers = std::min(static_cast<std::uint32_t>(numThreads), batch.num);
+  std::unique_ptr<std::thread[]> threads;
+  if (numWorkers > 1u) {
+    threads.reset(new (std::nothrow) std::thread[numWorkers - 1u]);
+    if (!threads) {
+      std::fputs("BattleEngine: Allocating memory for threads failed\n", stderr);
+      return -1;
+    }
+    for (std::uint32_t i = 0u; i < numWorkers - 1u; ++i)
+      threads[i] = std::thread(fightBatch, std::ref(batch));
+  }
+  fightBatch(batch);
+  for (std::uint32_t i = 0u; i + 1u < numWorkers; ++i)
+    threads[i].join();
+
+  return batch.failed.load() ? -1 : 0;
 }
 
 } // namespace
@@ -977,3 +1341,25 @@ Java_com_github_retro_1game_retro_1game_battleengine_NativeBattleEngineStrategy_
 
   return fight(jni, attackersList, defendersList, seed);
 }
+
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_github_retro_1game_retro_1game_battleengine_DirectNativeBattleEngineStrategy_init(
+    JNIEnv *env, [[maybe_unused]] jobject battleEngine, jobjectArray unitsAttributesArray) {
+  Jni jni(env);
+  if (!jni.init())
+    return false;
+
+  return initUnitsAttributes(jni, unitsAttributesArray);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_github_retro_1game_retro_1game_battleengine_DirectNativeBattleEngineStrategy_fight(
+    JNIEnv *env, [[maybe_unused]] jobject battleEngine, jobject input, jobject output, jint seed) {
+  return fightBuffers(env, input, output, seed);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_github_retro_1game_retro_1game_battleengine_DirectNativeBattleEngineStrategy_fightAll(
+    JNIEnv *env, [[maybe_unused]] jobject battleEngine, jobject input, jobject output) {
+  return fightBatchBuffers(env, input, output);
+}
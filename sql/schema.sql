@@ -208,7 +208,10 @@ create table events (
   id bigserial primary key,
   at timestamptz not null,
   kind int not null,
-  param bigint
+  param bigint,
+  body_id bigint,
+  claimed_by text,
+  claimed_until timestamptz
 );
 
 create index events_at_id_idx
@@ -216,6 +219,20 @@ create index events_at_id_idx
 create index events_kind_param_idx
           on events (kind, param);
 
+-- Events that kept failing, moved out of the events table
+
+create table events_dead_letter (
+  id bigserial primary key,
+  event_id bigint not null,
+  at timestamptz not null,
+  kind int not null,
+  param bigint,
+  body_id bigint,
+  attempts int not null,
+  error text not null,
+  failed_at timestamptz not null
+);
+
 -- Combat reports
 
 create table combat_reports (
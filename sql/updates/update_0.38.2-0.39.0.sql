@@ -0,0 +1,24 @@
+-- @formatter:off
+
+-- Event leases for the cluster mode
+
+alter table events add column claimed_by text;
+alter table events add column claimed_until timestamptz;
+
+-- The body a flight event touches, the partition key of the event
+
+alter table events add column body_id bigint;
+
+-- Dead letter for failing events
+
+create table events_dead_letter (
+  id bigserial primary key,
+  event_id bigint not null,
+  at timestamptz not null,
+  kind int not null,
+  param bigint,
+  body_id bigint,
+  attempts int not null,
+  error text not null,
+  failed_at timestamptz not null
+);
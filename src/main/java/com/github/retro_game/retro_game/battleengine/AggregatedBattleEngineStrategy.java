@@ -0,0 +1,477 @@
+package com.github.retro_game.retro_game.battleengine;
+
+import com.github.retro_game.retro_game.entity.UnitKind;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+
+// A battle engine that doesn't keep a slot per unit. Units of the same combatant and kind that have the same hull and
+// shield are indistinguishable, thus we keep only the number of units in each such state (a bucket). A fresh fleet is
+// a single bucket per combatant and kind, and a new bucket appears only when a shot leaves a unit in a new state. The
+// memory and the per round work (restoring shields, removing dead units) depend on the number of distinct states, not
+// on the number of units, which also removes the limit of Integer.MAX_VALUE units.
+//
+// The rules are the same as in the java battle engine, but targets are picked from the buckets, so for the same seed
+// the outcome differs from the other engines.
+@Component
+@ConditionalOnProperty(value = "retro-game.battle-engine", havingValue = "aggregated")
+public final class AggregatedBattleEngineStrategy implements BattleEngineStrategy {
+  private static final int MAX_ROUNDS = 6;
+  private static final int NUM_KINDS = UnitKind.values().length;
+  private static final UnitAttributes[] unitsAttributes = UnitAttributes.makeUnitsAttributes();
+
+  // The attributes of the units of each combatant and kind, including the combat technologies.
+  private record Attributes(float[] damages, float[] maxShields, float[] maxHulls) {
+  }
+
+  private static final class Buckets {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int size;
+    private long numAlive;
+    private int[] combatantIds;
+    private byte[] kinds;
+    private float[] shields;
+    private float[] hulls;
+    private long[] counts;
+
+    // Fenwick tree over counts, used to pick a random unit. The tree is 1-based, tree[0] is unused.
+    private long[] tree;
+
+    // Open addressing hash table: (combatant, kind, shield, hull) -> bucket index + 1, 0 means an empty slot.
+    private int[] index;
+
+    private Buckets() {
+      combatantIds = new int[INITIAL_CAPACITY];
+      kinds = new byte[INITIAL_CAPACITY];
+      shields = new float[INITIAL_CAPACITY];
+      hulls = new float[INITIAL_CAPACITY];
+      counts = new long[INITIAL_CAPACITY];
+      tree = new long[INITIAL_CAPACITY + 1];
+      index = new int[2 * INITIAL_CAPACITY];
+    }
+
+    private static int hash(int combatantId, int kind, float shield, float hull) {
+      var h = combatantId * 31 + kind;
+      h = h * 31 + Float.floatToIntBits(shield);
+      h = h * 31 + Float.floatToIntBits(hull);
+      return h ^ (h >>> 16);
+    }
+
+    // Returns the bucket with the given state, or adds an empty one.
+    private int findOrAdd(int combatantId, int kind, float shield, float hull) {
+      var mask = index.length - 1;
+      var slot = hash(combatantId, kind, shield, hull) & mask;
+      while (index[slot] != 0) {
+        var i = index[slot] - 1;
+        if (combatantIds[i] == combatantId && kinds[i] == kind &&
+            Float.floatToIntBits(shields[i]) == Float.floatToIntBits(shield) &&
+            Float.floatToIntBits(hulls[i]) == Float.floatToIntBits(hull)) {
+          return i;
+        }
+        slot = (slot + 1) & mask;
+      }
+
+      if (size == counts.length) {
+        grow();
+        return findOrAdd(combatantId, kind, shield, hull);
+      }
+
+      var i = size++;
+      combatantIds[i] = combatantId;
+      kinds[i] = (byte) kind;
+      shields[i] = shield;
+      hulls[i] = hull;
+      counts[i] = 0;
+      index[slot] = i + 1;
+      return i;
+    }
+
+    private void grow() {
+      var capacity = 2 * counts.length;
+      combatantIds = Arrays.copyOf(combatantIds, capacity);
+      kinds = Arrays.copyOf(kinds, capacity);
+      shields = Arrays.copyOf(shields, capacity);
+      hulls = Arrays.copyOf(hulls, capacity);
+      counts = Arrays.copyOf(counts, capacity);
+      tree = new long[capacity + 1];
+      index = new int[2 * capacity];
+      reindex();
+      buildTree();
+    }
+
+    private void reindex() {
+      Arrays.fill(index, 0);
+      var mask = index.length - 1;
+      for (var i = 0; i < size; i++) {
+        var slot = hash(combatantIds[i], kinds[i], shields[i], hulls[i]) & mask;
+        while (index[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        index[slot] = i + 1;
+      }
+    }
+
+    private void buildTree() {
+      Arrays.fill(tree, 0L);
+      for (var j = 1; j < tree.length; j++) {
+        if (j <= size) {
+          tree[j] += counts[j - 1];
+        }
+        var parent = j + (j & -j);
+        if (parent < tree.length) {
+          tree[parent] += tree[j];
+        }
+      }
+    }
+
+    private void add(int i, long delta) {
+      counts[i] += delta;
+      for (var j = i + 1; j < tree.length; j += j & -j) {
+        tree[j] += delta;
+      }
+    }
+
+    // Returns the bucket of the n-th unit, n must be less than the total number of units in buckets.
+    private int find(long n) {
+      var pos = 0;
+      for (var step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+        var next = pos + step;
+        if (next < tree.length && tree[next] <= n) {
+          pos = next;
+          n -= tree[next];
+        }
+      }
+      return pos;
+    }
+
+    // Moves one unit from the given bucket to the bucket with the new state.
+    private void move(int from, float shield, float hull) {
+      if (hull == 0.0f) {
+        // The shield of a dead unit doesn't matter, keep all dead units of a group in one bucket.
+        shield = 0.0f;
+        hull = 0.0f;
+      }
+      if (Float.floatToIntBits(shields[from]) == Float.floatToIntBits(shield) &&
+          Float.floatToIntBits(hulls[from]) == Float.floatToIntBits(hull)) {
+        return;
+      }
+      var to = findOrAdd(combatantIds[from], kinds[from], shield, hull);
+      add(from, -1L);
+      add(to, 1L);
+    }
+  }
+
+  private record Stats(long[] numRemainingUnits, long[] timesFired, long[] timesWasShot, float[] shieldDamageDealt,
+                       float[] hullDamageDealt, float[] shieldDamageTaken, float[] hullDamageTaken) {
+  }
+
+  private record Party(Attributes attributes, Buckets buckets, Stats stats) {
+  }
+
+  private static int idx(int combatantId, int kind) {
+    return combatantId * NUM_KINDS + kind;
+  }
+
+  private static int statsIdx(int combatantId, int round, int kind) {
+    return combatantId * MAX_ROUNDS * NUM_KINDS + round * NUM_KINDS + kind;
+  }
+
+  private static Attributes makeAttributes(Combatant[] combatants) {
+    var size = combatants.length * NUM_KINDS;
+    var damages = new float[size];
+    var maxShields = new float[size];
+    var maxHulls = new float[size];
+    for (var i = 0; i < combatants.length; i++) {
+      var combatant = combatants[i];
+      for (var kind = 0; kind < NUM_KINDS; kind++) {
+        var attrs = unitsAttributes[kind];
+        // Keep the calculations in sync with the java battle engine.
+        damages[idx(i, kind)] = attrs.weapons * (1.0f + 0.1f * combatant.weaponsTechnology());
+        maxShields[idx(i, kind)] = attrs.shield * (1.0f + 0.1f * combatant.shieldingTechnology());
+        maxHulls[idx(i, kind)] = 0.1f * attrs.armor * (1.0f + 0.1f * combatant.armorTechnology());
+      }
+    }
+    return new Attributes(damages, maxShields, maxHulls);
+  }
+
+  private static Buckets makeBuckets(Combatant[] combatants, Attributes attributes) {
+    var buckets = new Buckets();
+    for (var i = 0; i < combatants.length; i++) {
+      for (var item : combatants[i].unitGroups().entrySet()) {
+        var kind = item.getKey().ordinal();
+        var count = item.getValue();
+        assert count >= 0;
+        if (count == 0) {
+          continue;
+        }
+        // We don't initialize shields here, we will do it in restoreShields().
+        var b = buckets.findOrAdd(i, kind, 0.0f, attributes.maxHulls[idx(i, kind)]);
+        buckets.counts[b] = count;
+        buckets.numAlive += count;
+      }
+    }
+    buckets.buildTree();
+    return buckets;
+  }
+
+  private static Stats makeStats(Combatant[] combatants) {
+    assert combatants.length <= Integer.MAX_VALUE / (MAX_ROUNDS * NUM_KINDS);
+    var size = combatants.length * MAX_ROUNDS * NUM_KINDS;
+    return new Stats(new long[size], new long[size], new long[size], new float[size], new float[size],
+        new float[size], new float[size]);
+  }
+
+  private static Party makeParty(Combatant[] combatants) {
+    var attributes = makeAttributes(combatants);
+    var buckets = makeBuckets(combatants, attributes);
+    var stats = makeStats(combatants);
+    return new Party(attributes, buckets, stats);
+  }
+
+  // Restores the shields and merges the buckets that became equal. Dead units must be removed already.
+  private static void restoreShields(Party party) {
+    var buckets = party.buckets;
+    var maxShields = party.attributes.maxShields;
+    var n = 0;
+    Arrays.fill(buckets.index, 0);
+    for (var i = 0; i < buckets.size; i++) {
+      var combatantId = buckets.combatantIds[i];
+      var kind = buckets.kinds[i];
+      var shield = maxShields[idx(combatantId, kind)];
+      var hull = buckets.hulls[i];
+      var count = buckets.counts[i];
+      // Buckets [0, n) are already reindexed, thus findOrAdd() either merges this bucket to an earlier one or moves it
+      // to the position n.
+      var size = buckets.size;
+      buckets.size = n;
+      var b = buckets.findOrAdd(combatantId, kind, shield, hull);
+      buckets.size = size;
+      if (b == n) {
+        n++;
+        buckets.counts[b] = count;
+      } else {
+        buckets.counts[b] += count;
+      }
+    }
+    buckets.size = n;
+    buckets.buildTree();
+  }
+
+  // Returns the number of alive units of each combatant and kind. The units that die during the round still fire,
+  // thus we must take the snapshot before any side fires.
+  private static long[] countShooters(Combatant[] combatants, Party party) {
+    var buckets = party.buckets;
+    var shooters = new long[combatants.length * NUM_KINDS];
+    for (var i = 0; i < buckets.size; i++) {
+      shooters[idx(buckets.combatantIds[i], buckets.kinds[i])] += buckets.counts[i];
+    }
+    return shooters;
+  }
+
+  private static int fire(Combatant[] attackers, long[] shooters, Party attackersParty, Party defendersParty,
+                          int round, int random) {
+    var r = random;
+
+    final var damages = attackersParty.attributes.damages;
+    final var maxShields = defendersParty.attributes.maxShields;
+    final var maxHulls = defendersParty.attributes.maxHulls;
+
+    final var targets = defendersParty.buckets;
+
+    final var attackersStats = attackersParty.stats;
+    final var defendersStats = defendersParty.stats;
+
+    // The dead units stay in the buckets till the end of the round, so the number of targets doesn't change.
+    final var numTargets = targets.numAlive;
+
+    for (var attackerId = 0; attackerId < attackers.length; attackerId++) {
+      for (var shooterKind = 0; shooterKind < NUM_KINDS; shooterKind++) {
+        final var numShooters = shooters[idx(attackerId, shooterKind)];
+        if (numShooters == 0) {
+          continue;
+        }
+
+        final var shooterStatsIdx = statsIdx(attackerId, round, shooterKind);
+        final var damage = damages[idx(attackerId, shooterKind)];
+        final var rapidFireAgainst = unitsAttributes[shooterKind].rapidFire;
+
+        // Each shooter fires at one or more random targets.
+        for (var i = 0L; i < numShooters; i++) {
+          while (true) {
+            // Pick a random target. A single draw of our RNG isn't enough to pick from more than MAX units.
+            long n;
+            r = LehmerRandom.next(r);
+            if (numTargets <= LehmerRandom.MAX) {
+              n = r % numTargets;
+            } else {
+              var high = (long) (r - 1);
+              r = LehmerRandom.next(r);
+              n = (high * LehmerRandom.MAX + (r - 1)) % numTargets;
+            }
+            final var b = targets.find(n);
+
+            var shield = targets.shields[b];
+            var hull = targets.hulls[b];
+            final var targetKind = targets.kinds[b];
+            final var defenderId = targets.combatantIds[b];
+            final var targetStatsIdx = statsIdx(defenderId, round, targetKind);
+
+            attackersStats.timesFired[shooterStatsIdx]++;
+            defendersStats.timesWasShot[targetStatsIdx]++;
+
+            // Is the target alive?
+            if (hull != 0.0f) {
+              var hullDamage = damage - shield;
+
+              // Does the shooter break through the shield at all?
+              if (hullDamage < 0.0f) {
+                // All damage absorbed by the shield. Calculate the shield damage including the bouncing effect.
+                var maxShield = maxShields[idx(defenderId, targetKind)];
+                var shieldDamage = 0.01f * (float) Math.floor(100.0f * damage / maxShield) * maxShield;
+                shield -= shieldDamage;
+
+                attackersStats.shieldDamageDealt[shooterStatsIdx] += shieldDamage;
+                defendersStats.shieldDamageTaken[targetStatsIdx] += shieldDamage;
+              } else {
+                // We break through the shield.
+                var shieldDamage = shield;
+                shield = 0.0f;
+
+                if (hullDamage > hull) {
+                  hullDamage = hull;
+                }
+                hull -= hullDamage;
+
+                attackersStats.shieldDamageDealt[shooterStatsIdx] += shieldDamage;
+                attackersStats.hullDamageDealt[shooterStatsIdx] += hullDamage;
+                defendersStats.shieldDamageTaken[targetStatsIdx] += shieldDamage;
+                defendersStats.hullDamageTaken[targetStatsIdx] += hullDamage;
+              }
+
+              if (hull != 0.0f) {
+                // If the target's hull is less than 70%, the target might explode.
+                var maxHull = maxHulls[idx(defenderId, targetKind)];
+                if (hull < 0.7f * maxHull) {
+                  r = LehmerRandom.next(r);
+                  if (hull < (1.0f / LehmerRandom.MAX * r * maxHull)) {
+                    // The target explodes, we mark it as dead.
+                    hull = 0.0f;
+                  }
+                }
+              }
+
+              targets.move(b, shield, hull);
+            }
+
+            var rapidFire = rapidFireAgainst[targetKind];
+            if (rapidFire == 0) {
+              break;
+            }
+
+            r = LehmerRandom.next(r);
+            if (r % rapidFire == 0) {
+              break;
+            }
+          }
+        }
+      }
+    }
+
+    return r;
+  }
+
+  // Remove the dead units, and update the stats.
+  private static void updateUnits(Party party, int round) {
+    var buckets = party.buckets;
+    var stats = party.stats;
+
+    var n = 0;
+    var numAlive = 0L;
+    for (var i = 0; i < buckets.size; i++) {
+      var count = buckets.counts[i];
+      if (buckets.hulls[i] != 0.0f && count != 0) {
+        buckets.combatantIds[n] = buckets.combatantIds[i];
+        buckets.kinds[n] = buckets.kinds[i];
+        buckets.shields[n] = buckets.shields[i];
+        buckets.hulls[n] = buckets.hulls[i];
+        buckets.counts[n] = count;
+        n++;
+
+        numAlive += count;
+        stats.numRemainingUnits[statsIdx(buckets.combatantIds[i], round, buckets.kinds[i])] += count;
+      }
+    }
+
+    buckets.size = n;
+    buckets.numAlive = numAlive;
+  }
+
+  private static List<CombatantOutcome> makeOutcomes(Combatant[] combatants, Party party, int numRounds) {
+    var stats = party.stats;
+    var outcomes = new ArrayList<CombatantOutcome>(combatants.length);
+    for (var i = 0; i < combatants.length; i++) {
+      var combatantStats = new ArrayList<EnumMap<UnitKind, UnitGroupStats>>(numRounds);
+      for (var round = 0; round < numRounds; round++) {
+        var roundStats = new EnumMap<UnitKind, UnitGroupStats>(UnitKind.class);
+        for (var kind : UnitKind.values()) {
+          var idx = statsIdx(i, round, kind.ordinal());
+          roundStats.put(kind, new UnitGroupStats(
+              stats.numRemainingUnits[idx],
+              stats.timesFired[idx],
+              stats.timesWasShot[idx],
+              stats.shieldDamageDealt[idx],
+              stats.hullDamageDealt[idx],
+              stats.shieldDamageTaken[idx],
+              stats.hullDamageTaken[idx]
+          ));
+        }
+        combatantStats.add(roundStats);
+      }
+      outcomes.add(new CombatantOutcome(combatantStats));
+    }
+    return outcomes;
+  }
+
+  @Override
+  public String rules() {
+    return AGGREGATED_RULES;
+  }
+
+  @Override
+  public BattleOutcome fight(List<Combatant> attackersList, List<Combatant> defendersList, int seed) {
+    var r = LehmerRandom.makeSeed(seed);
+
+    var attackers = attackersList.toArray(new Combatant[0]);
+    var defenders = defendersList.toArray(new Combatant[0]);
+
+    var attackersParty = makeParty(attackers);
+    var defendersParty = makeParty(defenders);
+
+    var round = 0;
+    while (round < MAX_ROUNDS && attackersParty.buckets.numAlive > 0 && defendersParty.buckets.numAlive > 0) {
+      restoreShields(attackersParty);
+      restoreShields(defendersParty);
+
+      var attackersShooters = countShooters(attackers, attackersParty);
+      var defendersShooters = countShooters(defenders, defendersParty);
+
+      r = fire(attackers, attackersShooters, attackersParty, defendersParty, round, r);
+      r = fire(defenders, defendersShooters, defendersParty, attackersParty, round, r);
+
+      updateUnits(attackersParty, round);
+      updateUnits(defendersParty, round);
+
+      round++;
+    }
+
+    var numRounds = round;
+    var attackersOutcomes = makeOutcomes(attackers, attackersParty, numRounds);
+    var defendersOutcomes = makeOutcomes(defenders, defendersParty, numRounds);
+    return new BattleOutcome(numRounds, attackersOutcomes, defendersOutcomes);
+  }
+}
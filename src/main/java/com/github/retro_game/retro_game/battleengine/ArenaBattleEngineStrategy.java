@@ -0,0 +1,370 @@
+package com.github.retro_game.retro_game.battleengine;
+
+import com.github.retro_game.retro_game.entity.UnitKind;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+// A battle engine that reuses its buffers. The rules and the outcome are exactly the same as in the java battle engine,
+// but the buffers of units and stats are taken from a per-thread arena, which only grows. The stats are copied out of
+// the arena once per battle, and the outcomes are flat views of them: the maps of unit groups are made only when a
+// round is actually read (e.g. when the combat report is stored).
+@Component
+@ConditionalOnProperty(value = "retro-game.battle-engine", havingValue = "arena")
+public final class ArenaBattleEngineStrategy implements BattleEngineStrategy {
+  private static final int MAX_ROUNDS = 6;
+  private static final int NUM_KINDS = UnitKind.values().length;
+  private static final UnitAttributes[] unitsAttributes = UnitAttributes.makeUnitsAttributes();
+
+  // Buffers for bigger battles are not kept, a single huge battle shouldn't hold a lot of memory forever.
+  private static final int MAX_RETAINED_UNITS = 1 << 20;
+
+  private final ThreadLocal<Arena> arenas = ThreadLocal.withInitial(Arena::new);
+
+  private static final class Units {
+    private int numAlive;
+    private float[] shields;
+    private float[] hulls;
+    private byte[] kinds;
+    private byte[] ids;
+
+    private Units(int capacity) {
+      shields = new float[capacity];
+      hulls = new float[capacity];
+      kinds = new byte[capacity];
+      ids = new byte[capacity];
+    }
+
+    private int capacity() {
+      return hulls.length;
+    }
+  }
+
+  private static final class Stats {
+    private int[] numRemainingUnits = new int[0];
+    private long[] timesFired = new long[0];
+    private long[] timesWasShot = new long[0];
+    private float[] shieldDamageDealt = new float[0];
+    private float[] hullDamageDealt = new float[0];
+    private float[] shieldDamageTaken = new float[0];
+    private float[] hullDamageTaken = new float[0];
+  }
+
+  private record Party(Units units, Stats stats) {
+  }
+
+  private static final class Arena {
+    private final Units attackersUnits = new Units(0);
+    private final Units defendersUnits = new Units(0);
+    private final Stats attackersStats = new Stats();
+    private final Stats defendersStats = new Stats();
+  }
+
+  // The stats of a party copied out of the arena, the layout is the same as in the arena.
+  private record FlatStats(int[] numRemainingUnits, long[] timesFired, long[] timesWasShot, float[] shieldDamageDealt,
+                           float[] hullDamageDealt, float[] shieldDamageTaken, float[] hullDamageTaken) {
+  }
+
+  // Rounds of a combatant backed by the flat stats, the map of a round is made on the first access.
+  private static final class FlatRoundsStats extends AbstractList<EnumMap<UnitKind, UnitGroupStats>>
+      implements RandomAccess {
+    private final FlatStats stats;
+    private final int combatantIdx;
+    private final EnumMap<UnitKind, UnitGroupStats>[] rounds;
+
+    @SuppressWarnings("unchecked")
+    private FlatRoundsStats(FlatStats stats, int combatantIdx, int numRounds) {
+      this.stats = stats;
+      this.combatantIdx = combatantIdx;
+      this.rounds = (EnumMap<UnitKind, UnitGroupStats>[]) new EnumMap[numRounds];
+    }
+
+    @Override
+    public EnumMap<UnitKind, UnitGroupStats> get(int round) {
+      var roundStats = rounds[round];
+      if (roundStats == null) {
+        roundStats = new EnumMap<>(UnitKind.class);
+        for (var kind : UnitKind.values()) {
+          int idx = combatantIdx * MAX_ROUNDS * NUM_KINDS + round * NUM_KINDS + kind.ordinal();
+          roundStats.put(kind, new UnitGroupStats(
+              stats.numRemainingUnits[idx],
+              stats.timesFired[idx],
+              stats.timesWasShot[idx],
+              stats.shieldDamageDealt[idx],
+              stats.hullDamageDealt[idx],
+              stats.shieldDamageTaken[idx],
+              stats.hullDamageTaken[idx]
+          ));
+        }
+        rounds[round] = roundStats;
+      }
+      return roundStats;
+    }
+
+    @Override
+    public int size() {
+      return rounds.length;
+    }
+  }
+
+  private static Units prepareUnits(Combatant[] combatants, Units arenaUnits) {
+    assert UnitKind.values().length <= Byte.MAX_VALUE;
+    assert combatants.length <= Byte.MAX_VALUE;
+
+    var totalUnits = Arrays.stream(combatants)
+        .mapToLong(c -> c.unitGroups().values().stream().mapToLong(Long::longValue).sum())
+        .sum();
+    if (totalUnits > Integer.MAX_VALUE) {
+      // We cannot make bigger arrays in Java.
+      throw new IllegalArgumentException("Too many units");
+    }
+
+    var units = arenaUnits;
+    if (units.capacity() < totalUnits) {
+      if (totalUnits > MAX_RETAINED_UNITS) {
+        units = new Units((int) totalUnits);
+      } else {
+        // Grow geometrically, so that a series of slightly bigger battles doesn't reallocate every time.
+        var capacity = (int) Math.min(Math.max(totalUnits, 2L * units.capacity()), MAX_RETAINED_UNITS);
+        units.shields = new float[capacity];
+        units.hulls = new float[capacity];
+        units.kinds = new byte[capacity];
+        units.ids = new byte[capacity];
+      }
+    }
+
+    // Shields don't need to be cleared, they are restored at the beginning of every round.
+    var n = 0;
+    for (var i = 0; i < combatants.length; i++) {
+      var combatant = combatants[i];
+      for (var item : combatant.unitGroups().entrySet()) {
+        var kind = item.getKey().ordinal();
+        var count = item.getValue().intValue();
+        var maxHull = 0.1f * unitsAttributes[kind].armor * (1.0f + 0.1f * combatant.armorTechnology());
+        Arrays.fill(units.hulls, n, n + count, maxHull);
+        Arrays.fill(units.kinds, n, n + count, (byte) kind);
+        Arrays.fill(units.ids, n, n + count, (byte) i);
+        n += count;
+      }
+    }
+    units.numAlive = n;
+
+    return units;
+  }
+
+  private static Stats prepareStats(Combatant[] combatants, Stats stats) {
+    assert combatants.length <= Integer.MAX_VALUE / (MAX_ROUNDS * NUM_KINDS);
+    var size = combatants.length * MAX_ROUNDS * NUM_KINDS;
+    if (stats.numRemainingUnits.length < size) {
+      stats.numRemainingUnits = new int[size];
+      stats.timesFired = new long[size];
+      stats.timesWasShot = new long[size];
+      stats.shieldDamageDealt = new float[size];
+      stats.hullDamageDealt = new float[size];
+      stats.shieldDamageTaken = new float[size];
+      stats.hullDamageTaken = new float[size];
+    } else {
+      Arrays.fill(stats.numRemainingUnits, 0, size, 0);
+      Arrays.fill(stats.timesFired, 0, size, 0L);
+      Arrays.fill(stats.timesWasShot, 0, size, 0L);
+      Arrays.fill(stats.shieldDamageDealt, 0, size, 0.0f);
+      Arrays.fill(stats.hullDamageDealt, 0, size, 0.0f);
+      Arrays.fill(stats.shieldDamageTaken, 0, size, 0.0f);
+      Arrays.fill(stats.hullDamageTaken, 0, size, 0.0f);
+    }
+    return stats;
+  }
+
+  private static void restoreShields(Combatant[] combatants, Party party) {
+    var units = party.units;
+    for (var i = 0; i < units.numAlive; i++) {
+      var kind = units.kinds[i];
+      var id = units.ids[i];
+      var combatant = combatants[id];
+      var shield = unitsAttributes[kind].shield * (1.0f + 0.1f * combatant.shieldingTechnology());
+      units.shields[i] = shield;
+    }
+  }
+
+  private static int fire(Combatant[] attackers, Combatant[] defenders, Party attackersParty, Party defendersParty,
+                          int round, int random) {
+    var r = random;
+
+    final var attackersUnits = attackersParty.units;
+    final var defendersUnits = defendersParty.units;
+
+    final var attackersStats = attackersParty.stats;
+    final var defendersStats = defendersParty.stats;
+
+    final var numShooters = attackersUnits.numAlive;
+    final var numTargets = defendersUnits.numAlive;
+
+    // Each shooter fires at one or more random targets.
+    for (var i = 0; i < numShooters; i++) {
+      final var shooterKind = attackersUnits.kinds[i];
+      final var attackerId = attackersUnits.ids[i];
+      final var attacker = attackers[attackerId];
+      final var shooterStatsIdx = attackerId * MAX_ROUNDS * NUM_KINDS + round * NUM_KINDS + shooterKind;
+
+      final var damage = unitsAttributes[shooterKind].weapons * (1.0f + 0.1f * attacker.weaponsTechnology());
+
+      while (true) {
+        // Pick a random target.
+        r = LehmerRandom.next(r);
+        final var targetIdx = r % numTargets;
+
+        var shield = defendersUnits.shields[targetIdx];
+        var hull = defendersUnits.hulls[targetIdx];
+        final var targetKind = defendersUnits.kinds[targetIdx];
+        final var defenderId = defendersUnits.ids[targetIdx];
+        final var defender = defenders[defenderId];
+        final var targetStatsIdx = defenderId * MAX_ROUNDS * NUM_KINDS + round * NUM_KINDS + targetKind;
+
+        attackersStats.timesFired[shooterStatsIdx]++;
+        defendersStats.timesWasShot[targetStatsIdx]++;
+
+        // Is the target alive?
+        if (hull != 0.0f) {
+          var hullDamage = damage - shield;
+
+          // Does the shooter break through the shield at all?
+          if (hullDamage < 0.0f) {
+            // All damage absorbed by the shield. Calculate the shield damage including the bouncing effect.
+            var maxShield = unitsAttributes[targetKind].shield * (1.0f + 0.1f * defender.shieldingTechnology());
+            var shieldDamage = 0.01f * (float) Math.floor(100.0f * damage / maxShield) * maxShield;
+            shield -= shieldDamage;
+
+            attackersStats.shieldDamageDealt[shooterStatsIdx] += shieldDamage;
+            defendersStats.shieldDamageTaken[targetStatsIdx] += shieldDamage;
+          } else {
+            // We break through the shield.
+            var shieldDamage = shield;
+            shield = 0.0f;
+
+            if (hullDamage > hull) {
+              hullDamage = hull;
+            }
+            hull -= hullDamage;
+
+            attackersStats.shieldDamageDealt[shooterStatsIdx] += shieldDamage;
+            attackersStats.hullDamageDealt[shooterStatsIdx] += hullDamage;
+            defendersStats.shieldDamageTaken[targetStatsIdx] += shieldDamage;
+            defendersStats.hullDamageTaken[targetStatsIdx] += hullDamage;
+          }
+
+          if (hull != 0.0f) {
+            // If the target's hull is less than 70%, the target might explode.
+            var maxHull = 0.1f * unitsAttributes[targetKind].armor * (1.0f + 0.1f * defender.armorTechnology());
+            if (hull < 0.7f * maxHull) {
+              r = LehmerRandom.next(r);
+              if (hull < (1.0f / LehmerRandom.MAX * r * maxHull)) {
+                // The target explodes, we mark it as dead.
+                hull = 0.0f;
+              }
+            }
+          }
+
+          defendersUnits.shields[targetIdx] = shield;
+          defendersUnits.hulls[targetIdx] = hull;
+        }
+
+        var rapidFire = unitsAttributes[shooterKind].rapidFire[targetKind];
+        if (rapidFire == 0) {
+          break;
+        }
+
+        r = LehmerRandom.next(r);
+        if (r % rapidFire == 0) {
+          break;
+        }
+      }
+    }
+
+    return r;
+  }
+
+  // Remove (place at the end) the dead units, and update the stats.
+  private static void updateUnits(Party party, int round) {
+    var units = party.units;
+    var stats = party.stats;
+
+    var n = 0;
+    for (var i = 0; i < units.numAlive; i++) {
+      if (units.hulls[i] != 0.0f) {
+        units.shields[n] = units.shields[i];
+        units.hulls[n] = units.hulls[i];
+        units.kinds[n] = units.kinds[i];
+        units.ids[n] = units.ids[i];
+        n++;
+
+        int idx = units.ids[i] * MAX_ROUNDS * NUM_KINDS + round * NUM_KINDS + units.kinds[i];
+        stats.numRemainingUnits[idx]++;
+      }
+    }
+
+    units.numAlive = n;
+  }
+
+  private static List<CombatantOutcome> makeOutcomes(Combatant[] combatants, Party party, int numRounds) {
+    // The stats must be copied, the arena is reused by the next battle on this thread.
+    var stats = party.stats;
+    var size = combatants.length * MAX_ROUNDS * NUM_KINDS;
+    var flatStats = new FlatStats(
+        Arrays.copyOf(stats.numRemainingUnits, size),
+        Arrays.copyOf(stats.timesFired, size),
+        Arrays.copyOf(stats.timesWasShot, size),
+        Arrays.copyOf(stats.shieldDamageDealt, size),
+        Arrays.copyOf(stats.hullDamageDealt, size),
+        Arrays.copyOf(stats.shieldDamageTaken, size),
+        Arrays.copyOf(stats.hullDamageTaken, size));
+    var outcomes = new ArrayList<CombatantOutcome>(combatants.length);
+    for (var i = 0; i < combatants.length; i++) {
+      outcomes.add(new CombatantOutcome(new FlatRoundsStats(flatStats, i, numRounds)));
+    }
+    return outcomes;
+  }
+
+  @Override
+  public String rules() {
+    return JAVA_RULES;
+  }
+
+  @Override
+  public BattleOutcome fight(List<Combatant> attackersList, List<Combatant> defendersList, int seed) {
+    var r = LehmerRandom.makeSeed(seed);
+
+    var attackers = attackersList.toArray(new Combatant[0]);
+    var defenders = defendersList.toArray(new Combatant[0]);
+
+    var arena = arenas.get();
+    var attackersParty = new Party(prepareUnits(attackers, arena.attackersUnits),
+        prepareStats(attackers, arena.attackersStats));
+    var defendersParty = new Party(prepareUnits(defenders, arena.defendersUnits),
+        prepareStats(defenders, arena.defendersStats));
+
+    var round = 0;
+    while (round < MAX_ROUNDS && attackersParty.units.numAlive > 0 && defendersParty.units.numAlive > 0) {
+      restoreShields(attackers, attackersParty);
+      restoreShields(defenders, defendersParty);
+
+      r = fire(attackers, defenders, attackersParty, defendersParty, round, r);
+      r = fire(defenders, attackers, defendersParty, attackersParty, round, r);
+
+      updateUnits(attackersParty, round);
+      updateUnits(defendersParty, round);
+
+      round++;
+    }
+
+    var numRounds = round;
+    var attackersOutcomes = makeOutcomes(attackers, attackersParty, numRounds);
+    var defendersOutcomes = makeOutcomes(defenders, defendersParty, numRounds);
+    return new BattleOutcome(numRounds, attackersOutcomes, defendersOutcomes);
+  }
+}
@@ -3,5 +3,11 @@ package com.github.retro_game.retro_game.battleengine;
 import java.util.List;
 
 public interface BattleEngine {
+  // See BattleEngineStrategy.
+  String rules();
+
   BattleOutcome fight(List<Combatant> attackers, List<Combatant> defenders, int seed);
+
+  // Fights many independent battles at once, the outcomes are in the same order as the inputs.
+  List<BattleOutcome> fightAll(List<BattleInput> inputs);
 }
@@ -4,6 +4,7 @@ import com.github.retro_game.retro_game.entity.UnitKind;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.List;
 
@@ -15,6 +16,11 @@ public class BattleEngineImpl implements BattleEngine {
     this.battleEngineStrategy = battleEngineStrategy;
   }
 
+  @Override
+  public String rules() {
+    return battleEngineStrategy.rules();
+  }
+
   @Override
   public BattleOutcome fight(List<Combatant> attackers, List<Combatant> defenders, int seed) {
     var numAttackersUnits = totalUnits(attackers);
@@ -28,6 +34,34 @@ public class BattleEngineImpl implements BattleEngine {
     return battleEngineStrategy.fight(attackers, defenders, seed);
   }
 
+  @Override
+  public List<BattleOutcome> fightAll(List<BattleInput> inputs) {
+    var outcomes = new BattleOutcome[inputs.size()];
+
+    // Battles without units on one of the sides don't need the engine.
+    var toFight = new ArrayList<BattleInput>(inputs.size());
+    var toFightIndices = new int[inputs.size()];
+    for (var i = 0; i < inputs.size(); i++) {
+      var input = inputs.get(i);
+      if (totalUnits(input.attackers()) == 0 || totalUnits(input.defenders()) == 0) {
+        outcomes[i] = new BattleOutcome(1, makeOutcomes(input.attackers()), makeOutcomes(input.defenders()));
+      } else {
+        toFightIndices[toFight.size()] = i;
+        toFight.add(input);
+      }
+    }
+
+    if (!toFight.isEmpty()) {
+      var fought = battleEngineStrategy.fightAll(toFight);
+      assert fought.size() == toFight.size();
+      for (var i = 0; i < fought.size(); i++) {
+        outcomes[toFightIndices[i]] = fought.get(i);
+      }
+    }
+
+    return Arrays.asList(outcomes);
+  }
+
   private static long totalUnits(List<Combatant> combatants) {
     return combatants.stream().mapToLong(c -> c.unitGroups().values().stream().mapToLong(Long::longValue).sum()).sum();
   }
@@ -3,5 +3,20 @@ package com.github.retro_game.retro_game.battleengine;
 import java.util.List;
 
 public interface BattleEngineStrategy {
+  // Engines with the same rules give the same outcome for the same combatants and seed, thus a battle can be replayed
+  // by any of them.
+  String JAVA_RULES = "java";
+  String AGGREGATED_RULES = "aggregated";
+  String PARALLEL_RULES = "parallel";
+
+  String rules();
+
   BattleOutcome fight(List<Combatant> attackers, List<Combatant> defenders, int seed);
+
+  // Strategies that can share the setup between battles or fight them in parallel should override this.
+  default List<BattleOutcome> fightAll(List<BattleInput> inputs) {
+    return inputs.stream()
+        .map(input -> fight(input.attackers(), input.defenders(), input.seed()))
+        .toList();
+  }
 }
@@ -0,0 +1,6 @@
+package com.github.retro_game.retro_game.battleengine;
+
+import java.util.List;
+
+public record BattleInput(List<Combatant> attackers, List<Combatant> defenders, int seed) {
+}
@@ -0,0 +1,247 @@
+package com.github.retro_game.retro_game.battleengine;
+
+import com.github.retro_game.retro_game.entity.UnitKind;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+// The native battle engine, but combatants and stats are passed in direct buffers instead of Java objects, which
+// saves the JNI calls needed to walk the objects. The buffers are reused per thread, the stats are copied out of the
+// output buffer once and decoded lazily, when a round is actually read. Batches of battles are fought in a single call
+// by native threads.
+// Keep the layouts of the buffers in sync with the native battle engine.
+@Component
+@ConditionalOnProperty(value = "retro-game.battle-engine", havingValue = "native-direct")
+public final class DirectNativeBattleEngineStrategy implements BattleEngineStrategy {
+  private static final int MAX_ROUNDS = 6;
+  private static final int NUM_KINDS = UnitKind.values().length;
+  private static final int INPUT_HEADER_SIZE = 4 * Integer.BYTES;
+  private static final int INPUT_COMBATANT_SIZE = 4 * Integer.BYTES + NUM_KINDS * Long.BYTES;
+  private static final int OUTPUT_STATS_SIZE = 3 * Long.BYTES + 4 * Float.BYTES;
+  private static final int BATCH_BATTLE_HEADER_SIZE = 4 * Integer.BYTES;
+  // Big batches are split, so that the reused output buffer doesn't grow without a limit.
+  private static final int MAX_BATCH_OUTPUT_SIZE = 16 * 1024 * 1024;
+
+  static {
+    System.loadLibrary("BattleEngine");
+  }
+
+  private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+  private final int numThreads;
+
+  public DirectNativeBattleEngineStrategy(@Value("${retro-game.battle-engine-parallelism:0}") int parallelism) {
+    numThreads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    var unitsAttributes = UnitAttributes.makeUnitsAttributes();
+    var success = init(unitsAttributes);
+    Assert.isTrue(success, "Failed to init battle engine");
+  }
+
+  private native boolean init(UnitAttributes[] unitsAttributes);
+
+  // Returns the number of rounds, or -1 on failure.
+  private native int fight(ByteBuffer input, ByteBuffer output, int seed);
+
+  // Returns 0, or -1 on failure.
+  private native int fightAll(ByteBuffer input, ByteBuffer output);
+
+  private static final class Buffers {
+    private ByteBuffer input = allocate(0);
+    private ByteBuffer output = allocate(0);
+
+    private static ByteBuffer allocate(int capacity) {
+      return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    private ByteBuffer input(int size) {
+      if (input.capacity() < size) {
+        input = allocate(Math.max(size, 2 * input.capacity()));
+      }
+      return input.clear();
+    }
+
+    private ByteBuffer output(int size) {
+      if (output.capacity() < size) {
+        output = allocate(Math.max(size, 2 * output.capacity()));
+      }
+      return output.clear();
+    }
+  }
+
+  // Rounds of a combatant backed by the copied output, the map of a round is made on the first access.
+  private static final class BufferRoundsStats extends AbstractList<EnumMap<UnitKind, UnitGroupStats>>
+      implements RandomAccess {
+    private final ByteBuffer stats;
+    private final int numCombatants;
+    private final int combatantIdx;
+    private final EnumMap<UnitKind, UnitGroupStats>[] rounds;
+
+    @SuppressWarnings("unchecked")
+    private BufferRoundsStats(ByteBuffer stats, int numCombatants, int combatantIdx, int numRounds) {
+      this.stats = stats;
+      this.numCombatants = numCombatants;
+      this.combatantIdx = combatantIdx;
+      this.rounds = (EnumMap<UnitKind, UnitGroupStats>[]) new EnumMap[numRounds];
+    }
+
+    @Override
+    public EnumMap<UnitKind, UnitGroupStats> get(int round) {
+      var roundStats = rounds[round];
+      if (roundStats == null) {
+        roundStats = new EnumMap<>(UnitKind.class);
+        var offset = ((round * numCombatants + combatantIdx) * NUM_KINDS) * OUTPUT_STATS_SIZE;
+        for (var kind : UnitKind.values()) {
+          roundStats.put(kind, new UnitGroupStats(
+              stats.getLong(offset),
+              stats.getLong(offset + 8),
+              stats.getLong(offset + 16),
+              stats.getFloat(offset + 24),
+              stats.getFloat(offset + 28),
+              stats.getFloat(offset + 32),
+              stats.getFloat(offset + 36)
+          ));
+          offset += OUTPUT_STATS_SIZE;
+        }
+        rounds[round] = roundStats;
+      }
+      return roundStats;
+    }
+
+    @Override
+    public int size() {
+      return rounds.length;
+    }
+  }
+
+  private static void putCombatants(ByteBuffer input, List<Combatant> combatants) {
+    var kinds = UnitKind.values();
+    for (var combatant : combatants) {
+      input.putInt(combatant.weaponsTechnology());
+      input.putInt(combatant.shieldingTechnology());
+      input.putInt(combatant.armorTechnology());
+      input.putInt(0);
+      var unitGroups = combatant.unitGroups();
+      for (var kind : kinds) {
+        input.putLong(unitGroups.getOrDefault(kind, 0L));
+      }
+    }
+  }
+
+  private static List<CombatantOutcome> makeOutcomes(ByteBuffer stats, int numCombatants, int firstIdx, int num,
+                                                     int numRounds) {
+    var outcomes = new ArrayList<CombatantOutcome>(num);
+    for (var i = 0; i < num; i++) {
+      outcomes.add(new CombatantOutcome(new BufferRoundsStats(stats, numCombatants, firstIdx + i, numRounds)));
+    }
+    return outcomes;
+  }
+
+  // Copies the rounds actually fought out of the reused output buffer, and makes the outcome.
+  private static BattleOutcome makeBattleOutcome(ByteBuffer output, int offset, int numAttackers, int numDefenders,
+                                                 int numRounds) {
+    var numCombatants = numAttackers + numDefenders;
+    var size = numRounds * numCombatants * NUM_KINDS * OUTPUT_STATS_SIZE;
+    var stats = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+    stats.put(0, output, offset, size);
+    var attackersOutcomes = makeOutcomes(stats, numCombatants, 0, numAttackers, numRounds);
+    var defendersOutcomes = makeOutcomes(stats, numCombatants, numAttackers, numDefenders, numRounds);
+    return new BattleOutcome(numRounds, attackersOutcomes, defendersOutcomes);
+  }
+
+  private static int outputSize(BattleInput input) {
+    return MAX_ROUNDS * (input.attackers().size() + input.defenders().size()) * NUM_KINDS * OUTPUT_STATS_SIZE;
+  }
+
+  @Override
+  public String rules() {
+    return JAVA_RULES;
+  }
+
+  @Override
+  public BattleOutcome fight(List<Combatant> attackers, List<Combatant> defenders, int seed) {
+    var numCombatants = attackers.size() + defenders.size();
+    var buffers = this.buffers.get();
+
+    var input = buffers.input(INPUT_HEADER_SIZE + numCombatants * INPUT_COMBATANT_SIZE);
+    input.putInt(NUM_KINDS);
+    input.putInt(attackers.size());
+    input.putInt(defenders.size());
+    input.putInt(0);
+    putCombatants(input, attackers);
+    putCombatants(input, defenders);
+
+    var output = buffers.output(MAX_ROUNDS * numCombatants * NUM_KINDS * OUTPUT_STATS_SIZE);
+
+    var numRounds = fight(input, output, seed);
+    Assert.isTrue(numRounds >= 0, "Battle engine failed");
+
+    return makeBattleOutcome(output, 0, attackers.size(), defenders.size(), numRounds);
+  }
+
+  @Override
+  public List<BattleOutcome> fightAll(List<BattleInput> inputs) {
+    var outcomes = new ArrayList<BattleOutcome>(inputs.size());
+    var from = 0;
+    while (from < inputs.size()) {
+      // Take as many battles as fit in the output limit, but at least one.
+      var to = from + 1;
+      var outputSize = outputSize(inputs.get(from));
+      while (to < inputs.size() && outputSize + outputSize(inputs.get(to)) <= MAX_BATCH_OUTPUT_SIZE) {
+        outputSize += outputSize(inputs.get(to));
+        to++;
+      }
+      outcomes.addAll(fightBatch(inputs.subList(from, to), outputSize));
+      from = to;
+    }
+    return outcomes;
+  }
+
+  private List<BattleOutcome> fightBatch(List<BattleInput> inputs, int statsSize) {
+    var numRoundsSize = (inputs.size() * Integer.BYTES + 7) / 8 * 8;
+    var inputSize = INPUT_HEADER_SIZE;
+    for (var battle : inputs) {
+      inputSize += BATCH_BATTLE_HEADER_SIZE +
+          (battle.attackers().size() + battle.defenders().size()) * INPUT_COMBATANT_SIZE;
+    }
+
+    var buffers = this.buffers.get();
+
+    var input = buffers.input(inputSize);
+    input.putInt(NUM_KINDS);
+    input.putInt(inputs.size());
+    input.putInt(numThreads);
+    input.putInt(0);
+    for (var battle : inputs) {
+      input.putInt(battle.attackers().size());
+      input.putInt(battle.defenders().size());
+      input.putInt(battle.seed());
+      input.putInt(0);
+      putCombatants(input, battle.attackers());
+      putCombatants(input, battle.defenders());
+    }
+
+    var output = buffers.output(numRoundsSize + statsSize);
+
+    var result = fightAll(input, output);
+    Assert.isTrue(result == 0, "Battle engine failed");
+
+    var outcomes = new ArrayList<BattleOutcome>(inputs.size());
+    var offset = numRoundsSize;
+    for (var i = 0; i < inputs.size(); i++) {
+      var battle = inputs.get(i);
+      var numRounds = output.getInt(i * Integer.BYTES);
+      outcomes.add(makeBattleOutcome(output, offset, battle.attackers().size(), battle.defenders().size(),
+          numRounds));
+      offset += outputSize(battle);
+    }
+    return outcomes;
+  }
+}
@@ -1,33 +1,45 @@
 package com.github.retro_game.retro_game.battleengine;
 
 import com.github.retro_game.retro_game.entity.UnitKind;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 @Component
 @ConditionalOnProperty(value = "retro-game.battle-engine", havingValue = "java")
 public final class JavaBattleEngineStrategy implements BattleEngineStrategy {
-  // Lehmer RNG
-  // Using this simple RNG improves the performance of the battle engine by a wide margin.
-  // Keep in sync with the RNG in the native battle engine.
-  // TODO: We need a RNG that returns 64-bit integers.
-  private static final class Random {
-    private static final int MODULUS = 2_147_483_647;
-    private static final int MAX = MODULUS - 1;
-    private static final int MULTIPLIER = 48_271;
-
-    private static int next(int r) {
-      return (int) ((long) r * (long) MULTIPLIER % (long) MODULUS);
+  private static final int MAX_ROUNDS = 6;
+  private static final UnitAttributes[] unitsAttributes = UnitAttributes.makeUnitsAttributes();
+
+  // Batches of battles are fought on a pool of their own, so that a big batch doesn't starve the common pool. The pool
+  // is created by the first batch, single battles don't need it.
+  private final int parallelism;
+  private ForkJoinPool pool;
+
+  public JavaBattleEngineStrategy(@Value("${retro-game.battle-engine-parallelism:0}") int parallelism) {
+    this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+  }
+
+  private synchronized ForkJoinPool getPool() {
+    if (pool == null) {
+      pool = new ForkJoinPool(parallelism);
     }
+    return pool;
   }
 
-  private static final int MAX_ROUNDS = 6;
-  private static final UnitAttributes[] unitsAttributes = UnitAttributes.makeUnitsAttributes();
+  @PreDestroy
+  synchronized void shutdown() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
 
   private static final class Units {
     private int numAlive;
@@ -144,7 +156,7 @@ public final class JavaBattleEngineStrategy implements BattleEngineStrategy {
 
       while (true) {
         // Pick a random target.
-        r = Random.next(r);
+        r = LehmerRandom.next(r);
         final var targetIdx = r % numTargets;
 
         var shield = defendersUnits.shields[targetIdx];
@@ -191,8 +203,8 @@ public final class JavaBattleEngineStrategy implements BattleEngineStrategy {
             // If the target's hull is less than 70%, the target might explode.
             var maxHull = 0.1f * unitsAttributes[targetKind].armor * (1.0f + 0.1f * defender.armorTechnology());
             if (hull < 0.7f * maxHull) {
-              r = Random.next(r);
-              if (hull < (1.0f / Random.MAX * r * maxHull)) {
+              r = LehmerRandom.next(r);
+              if (hull < (1.0f / LehmerRandom.MAX * r * maxHull)) {
                 // The target explodes, we mark it as dead.
                 hull = 0.0f;
               }
@@ -208,7 +220,7 @@ public final class JavaBattleEngineStrategy implements BattleEngineStrategy {
           break;
         }
 
-        r = Random.next(r);
+        r = LehmerRandom.next(r);
         if (r % rapidFire == 0) {
           break;
         }
@@ -268,15 +280,14 @@ public final class JavaBattleEngineStrategy implements BattleEngineStrategy {
     return outcomes;
   }
 
+  @Override
+  public String rules() {
+    return JAVA_RULES;
+  }
+
   @Override
   public BattleOutcome fight(List<Combatant> attackersList, List<Combatant> defendersList, int seed) {
-    // Our RNG needs a positive seed.
-    // Keep the calculation of the seed in sync with the native battle engine.
-    if (seed < 0)
-      seed = -seed;
-    if (seed < 0 || seed == 0)
-      seed = 1;
-    var r = seed;
+    var r = LehmerRandom.makeSeed(seed);
 
     var attackers = attackersList.toArray(new Combatant[0]);
     var defenders = defendersList.toArray(new Combatant[0]);
@@ -303,4 +314,12 @@ public final class JavaBattleEngineStrategy implements BattleEngineStrategy {
     var defendersOutcomes = makeOutcomes(defenders, defendersParty, numRounds);
     return new BattleOutcome(numRounds, attackersOutcomes, defendersOutcomes);
   }
+
+  // Battles are independent, so they are fought in parallel. A parallel stream runs on the pool it is started from.
+  @Override
+  public List<BattleOutcome> fightAll(List<BattleInput> inputs) {
+    return getPool().submit(() -> inputs.parallelStream()
+        .map(input -> fight(input.attackers(), input.defenders(), input.seed()))
+        .toList()).join();
+  }
 }
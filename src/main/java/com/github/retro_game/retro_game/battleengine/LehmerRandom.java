@@ -0,0 +1,44 @@
+package com.github.retro_game.retro_game.battleengine;
+
+// Lehmer RNG
+// Using this simple RNG improves the performance of the battle engine by a wide margin.
+// Keep in sync with the RNG in the native battle engine.
+// TODO: We need a RNG that returns 64-bit integers.
+final class LehmerRandom {
+  static final int MODULUS = 2_147_483_647;
+  static final int MAX = MODULUS - 1;
+  private static final int MULTIPLIER = 48_271;
+
+  private LehmerRandom() {
+  }
+
+  static int next(int r) {
+    return (int) ((long) r * (long) MULTIPLIER % (long) MODULUS);
+  }
+
+  // Derives the seed of an independent stream from the seed of the battle. The derived seeds depend only on the given
+  // values, which makes battles split into streams reproducible.
+  static int makeStreamSeed(int seed, long stream) {
+    var z = mix(makeSeed(seed) + 0x9e3779b97f4a7c15L);
+    z = mix(z ^ stream);
+    // The stream must start with a value in [1, MAX].
+    return (int) Long.remainderUnsigned(z, MAX) + 1;
+  }
+
+  // The finalizer of SplitMix64.
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  // Our RNG needs a positive seed.
+  // Keep the calculation of the seed in sync with the native battle engine.
+  static int makeSeed(int seed) {
+    if (seed < 0)
+      seed = -seed;
+    if (seed < 0 || seed == 0)
+      seed = 1;
+    return seed;
+  }
+}
@@ -21,6 +21,11 @@ public final class NativeBattleEngineStrategy implements BattleEngineStrategy {
 
   private native boolean init(UnitAttributes[] unitsAttributes);
 
+  @Override
+  public String rules() {
+    return JAVA_RULES;
+  }
+
   @Override
   public native BattleOutcome fight(List<Combatant> attackers, List<Combatant> defenders, int seed);
 }
@@ -0,0 +1,313 @@
+package com.github.retro_game.retro_game.battleengine;
+
+import com.github.retro_game.retro_game.entity.UnitKind;
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+
+// A battle engine that keeps the units off the heap. The rules are the same as in the java battle engine, and so is
+// the outcome for battles the java battle engine can handle, but units are indexed with longs, thus the number of
+// units is not limited by the size of Java arrays. The memory is allocated with the Foreign Memory Access API and freed
+// as soon as the battle is over, it counts towards -XX:MaxDirectMemorySize rather than the heap.
+// The JVM must be started with --add-modules jdk.incubator.foreign to use this engine.
+@Component
+@ConditionalOnProperty(value = "retro-game.battle-engine", havingValue = "off-heap")
+public final class OffHeapBattleEngineStrategy implements BattleEngineStrategy {
+  private static final int MAX_ROUNDS = 6;
+  private static final int NUM_KINDS = UnitKind.values().length;
+  private static final UnitAttributes[] unitsAttributes = UnitAttributes.makeUnitsAttributes();
+
+  // The layout of units: struct of arrays, each field in its own segment.
+  private static final class Units {
+    private long numAlive;
+    private final MemorySegment shields;
+    private final MemorySegment hulls;
+    private final MemorySegment kinds;
+    private final MemorySegment ids;
+
+    private Units(long numAlive, MemorySegment shields, MemorySegment hulls, MemorySegment kinds, MemorySegment ids) {
+      this.numAlive = numAlive;
+      this.shields = shields;
+      this.hulls = hulls;
+      this.kinds = kinds;
+      this.ids = ids;
+    }
+  }
+
+  private record Stats(long[] numRemainingUnits, long[] timesFired, long[] timesWasShot, float[] shieldDamageDealt,
+                       float[] hullDamageDealt, float[] shieldDamageTaken, float[] hullDamageTaken) {
+  }
+
+  private record Party(Units units, Stats stats) {
+  }
+
+  private static Units makeUnits(Combatant[] combatants, ResourceScope scope) {
+    assert UnitKind.values().length <= Byte.MAX_VALUE;
+    assert combatants.length <= Byte.MAX_VALUE;
+
+    var totalUnits = 0L;
+    for (var combatant : combatants) {
+      for (var count : combatant.unitGroups().values()) {
+        totalUnits = Math.addExact(totalUnits, count);
+      }
+    }
+
+    // Segments cannot be empty.
+    var capacity = Math.max(totalUnits, 1L);
+    var shields = MemorySegment.allocateNative(capacity * Float.BYTES, Float.BYTES, scope);
+    var hulls = MemorySegment.allocateNative(capacity * Float.BYTES, Float.BYTES, scope);
+    var kinds = MemorySegment.allocateNative(capacity, scope);
+    var ids = MemorySegment.allocateNative(capacity, scope);
+
+    var n = 0L;
+    for (var i = 0; i < combatants.length; i++) {
+      var combatant = combatants[i];
+      for (var item : combatant.unitGroups().entrySet()) {
+        var kind = item.getKey().ordinal();
+        var count = item.getValue();
+        if (count == 0) {
+          continue;
+        }
+        var maxHull = 0.1f * unitsAttributes[kind].armor * (1.0f + 0.1f * combatant.armorTechnology());
+        for (var j = n; j < n + count; j++) {
+          MemoryAccess.setFloatAtIndex(hulls, j, maxHull);
+        }
+        kinds.asSlice(n, count).fill((byte) kind);
+        ids.asSlice(n, count).fill((byte) i);
+        n += count;
+      }
+    }
+
+    return new Units(totalUnits, shields, hulls, kinds, ids);
+  }
+
+  private static Stats makeStats(Combatant[] combatants) {
+    assert combatants.length <= Integer.MAX_VALUE / (MAX_ROUNDS * NUM_KINDS);
+    var size = combatants.length * MAX_ROUNDS * NUM_KINDS;
+    var numRemainingUnits = new long[size];
+    var timesFired = new long[size];
+    var timesWasShot = new long[size];
+    var shieldDamageDealt = new float[size];
+    var hullDamageDealt = new float[size];
+    var shieldDamageTaken = new float[size];
+    var hullDamageTaken = new float[size];
+    return new Stats(numRemainingUnits, timesFired, timesWasShot, shieldDamageDealt, hullDamageDealt, shieldDamageTaken,
+        hullDamageTaken);
+  }
+
+  private static Party makeParty(Combatant[] combatants, ResourceScope scope) {
+    var units = makeUnits(combatants, scope);
+    var stats = makeStats(combatants);
+    return new Party(units, stats);
+  }
+
+  private static void restoreShields(Combatant[] combatants, Party party) {
+    var units = party.units;
+    for (var i = 0L; i < units.numAlive; i++) {
+      var kind = MemoryAccess.getByteAtOffset(units.kinds, i);
+      var id = MemoryAccess.getByteAtOffset(units.ids, i);
+      var combatant = combatants[id];
+      var shield = unitsAttributes[kind].shield * (1.0f + 0.1f * combatant.shieldingTechnology());
+      MemoryAccess.setFloatAtIndex(units.shields, i, shield);
+    }
+  }
+
+  private static int fire(Combatant[] attackers, Combatant[] defenders, Party attackersParty, Party defendersParty,
+                          int round, int random) {
+    var r = random;
+
+    final var attackersUnits = attackersParty.units;
+    final var defendersUnits = defendersParty.units;
+
+    final var attackersStats = attackersParty.stats;
+    final var defendersStats = defendersParty.stats;
+
+    final var numShooters = attackersUnits.numAlive;
+    final var numTargets = defendersUnits.numAlive;
+
+    // Each shooter fires at one or more random targets.
+    for (var i = 0L; i < numShooters; i++) {
+      final var shooterKind = MemoryAccess.getByteAtOffset(attackersUnits.kinds, i);
+      final var attackerId = MemoryAccess.getByteAtOffset(attackersUnits.ids, i);
+      final var attacker = attackers[attackerId];
+      final var shooterStatsIdx = attackerId * MAX_ROUNDS * NUM_KINDS + round * NUM_KINDS + shooterKind;
+
+      final var damage = unitsAttributes[shooterKind].weapons * (1.0f + 0.1f * attacker.weaponsTechnology());
+
+      while (true) {
+        // Pick a random target. A single draw of our RNG isn't enough to pick from more than MAX units.
+        long targetIdx;
+        r = LehmerRandom.next(r);
+        if (numTargets <= LehmerRandom.MAX) {
+          targetIdx = r % numTargets;
+        } else {
+          var high = (long) (r - 1);
+          r = LehmerRandom.next(r);
+          targetIdx = (high * LehmerRandom.MAX + (r - 1)) % numTargets;
+        }
+
+        var shield = MemoryAccess.getFloatAtIndex(defendersUnits.shields, targetIdx);
+        var hull = MemoryAccess.getFloatAtIndex(defendersUnits.hulls, targetIdx);
+        final var targetKind = MemoryAccess.getByteAtOffset(defendersUnits.kinds, targetIdx);
+        final var defenderId = MemoryAccess.getByteAtOffset(defendersUnits.ids, targetIdx);
+        final var defender = defenders[defenderId];
+        final var targetStatsIdx = defenderId * MAX_ROUNDS * NUM_KINDS + round * NUM_KINDS + targetKind;
+
+        attackersStats.timesFired[shooterStatsIdx]++;
+        defendersStats.timesWasShot[targetStatsIdx]++;
+
+        // Is the target alive?
+        if (hull != 0.0f) {
+          var hullDamage = damage - shield;
+
+          // Does the shooter break through the shield at all?
+          if (hullDamage < 0.0f) {
+            // All damage absorbed by the shield. Calculate the shield damage including the bouncing effect.
+            var maxShield = unitsAttributes[targetKind].shield * (1.0f + 0.1f * defender.shieldingTechnology());
+            var shieldDamage = 0.01f * (float) Math.floor(100.0f * damage / maxShield) * maxShield;
+            shield -= shieldDamage;
+
+            attackersStats.shieldDamageDealt[shooterStatsIdx] += shieldDamage;
+            defendersStats.shieldDamageTaken[targetStatsIdx] += shieldDamage;
+          } else {
+            // We break through the shield.
+            var shieldDamage = shield;
+            shield = 0.0f;
+
+            if (hullDamage > hull) {
+              hullDamage = hull;
+            }
+            hull -= hullDamage;
+
+            attackersStats.shieldDamageDealt[shooterStatsIdx] += shieldDamage;
+            attackersStats.hullDamageDealt[shooterStatsIdx] += hullDamage;
+            defendersStats.shieldDamageTaken[targetStatsIdx] += shieldDamage;
+            defendersStats.hullDamageTaken[targetStatsIdx] += hullDamage;
+          }
+
+          if (hull != 0.0f) {
+            // If the target's hull is less than 70%, the target might explode.
+            var maxHull = 0.1f * unitsAttributes[targetKind].armor * (1.0f + 0.1f * defender.armorTechnology());
+            if (hull < 0.7f * maxHull) {
+              r = LehmerRandom.next(r);
+              if (hull < (1.0f / LehmerRandom.MAX * r * maxHull)) {
+                // The target explodes, we mark it as dead.
+                hull = 0.0f;
+              }
+            }
+          }
+
+          MemoryAccess.setFloatAtIndex(defendersUnits.shields, targetIdx, shield);
+          MemoryAccess.setFloatAtIndex(defendersUnits.hulls, targetIdx, hull);
+        }
+
+        var rapidFire = unitsAttributes[shooterKind].rapidFire[targetKind];
+        if (rapidFire == 0) {
+          break;
+        }
+
+        r = LehmerRandom.next(r);
+        if (r % rapidFire == 0) {
+          break;
+        }
+      }
+    }
+
+    return r;
+  }
+
+  // Remove (place at the end) the dead units, and update the stats. Shields are not moved, they are restored at the
+  // beginning of every round anyway.
+  private static void updateUnits(Party party, int round) {
+    var units = party.units;
+    var stats = party.stats;
+
+    var n = 0L;
+    for (var i = 0L; i < units.numAlive; i++) {
+      var hull = MemoryAccess.getFloatAtIndex(units.hulls, i);
+      if (hull != 0.0f) {
+        var kind = MemoryAccess.getByteAtOffset(units.kinds, i);
+        var id = MemoryAccess.getByteAtOffset(units.ids, i);
+        MemoryAccess.setFloatAtIndex(units.hulls, n, hull);
+        MemoryAccess.setByteAtOffset(units.kinds, n, kind);
+        MemoryAccess.setByteAtOffset(units.ids, n, id);
+        n++;
+
+        int idx = id * MAX_ROUNDS * NUM_KINDS + round * NUM_KINDS + kind;
+        stats.numRemainingUnits[idx]++;
+      }
+    }
+
+    units.numAlive = n;
+  }
+
+  private static List<CombatantOutcome> makeOutcomes(Combatant[] combatants, Party party, int numRounds) {
+    var stats = party.stats;
+    var outcomes = new ArrayList<CombatantOutcome>(combatants.length);
+    for (var i = 0; i < combatants.length; i++) {
+      var combatantStats = new ArrayList<EnumMap<UnitKind, UnitGroupStats>>(numRounds);
+      for (var round = 0; round < numRounds; round++) {
+        var roundStats = new EnumMap<UnitKind, UnitGroupStats>(UnitKind.class);
+        for (var kind : UnitKind.values()) {
+          int idx = i * MAX_ROUNDS * NUM_KINDS + round * NUM_KINDS + kind.ordinal();
+          roundStats.put(kind, new UnitGroupStats(
+              stats.numRemainingUnits[idx],
+              stats.timesFired[idx],
+              stats.timesWasShot[idx],
+              stats.shieldDamageDealt[idx],
+              stats.hullDamageDealt[idx],
+              stats.shieldDamageTaken[idx],
+              stats.hullDamageTaken[idx]
+          ));
+        }
+        combatantStats.add(roundStats);
+      }
+      outcomes.add(new CombatantOutcome(combatantStats));
+    }
+    return outcomes;
+  }
+
+  @Override
+  public String rules() {
+    return JAVA_RULES;
+  }
+
+  @Override
+  public BattleOutcome fight(List<Combatant> attackersList, List<Combatant> defendersList, int seed) {
+    var r = LehmerRandom.makeSeed(seed);
+
+    var attackers = attackersList.toArray(new Combatant[0]);
+    var defenders = defendersList.toArray(new Combatant[0]);
+
+    // The units are freed when the scope is closed.
+    try (var scope = ResourceScope.newConfinedScope()) {
+      var attackersParty = makeParty(attackers, scope);
+      var defendersParty = makeParty(defenders, scope);
+
+      var round = 0;
+      while (round < MAX_ROUNDS && attackersParty.units.numAlive > 0 && defendersParty.units.numAlive > 0) {
+        restoreShields(attackers, attackersParty);
+        restoreShields(defenders, defendersParty);
+
+        r = fire(attackers, defenders, attackersParty, defendersParty, round, r);
+        r = fire(defenders, attackers, defendersParty, attackersParty, round, r);
+
+        updateUnits(attackersParty, round);
+        updateUnits(defendersParty, round);
+
+        round++;
+      }
+
+      var numRounds = round;
+      var attackersOutcomes = makeOutcomes(attackers, attackersParty, numRounds);
+      var defendersOutcomes = makeOutcomes(defenders, defendersParty, numRounds);
+      return new BattleOutcome(numRounds, attackersOutcomes, defendersOutcomes);
+    }
+  }
+}
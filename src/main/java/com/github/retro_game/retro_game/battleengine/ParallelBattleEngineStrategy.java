@@ -0,0 +1,546 @@
+package com.github.retro_game.retro_game.battleengine;
+
+import com.github.retro_game.retro_game.entity.UnitKind;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+
+// A battle engine that fires on many cores. The rules are the same as in the java battle engine, but a single RNG
+// cannot be threaded through all shots, thus the shots of a side are made in two phases:
+// 1. Shooters are split into chunks, and each chunk picks its targets using its own RNG stream. The targets and the
+//    number of shots depend only on the kinds of the targets, which don't change during a round.
+// 2. Targets are split into partitions, and each partition applies the damage of its hits in the order of chunks. The
+//    explosion checks use the RNG stream of the partition.
+// The streams are derived from the seed of the battle, and the sizes of chunks and partitions don't depend on the
+// number of cores, so replaying a battle gives the same outcome on any machine. The outcome differs from the other
+// engines though.
+@Component
+@ConditionalOnProperty(value = "retro-game.battle-engine", havingValue = "parallel")
+public final class ParallelBattleEngineStrategy implements BattleEngineStrategy {
+  private static final int MAX_ROUNDS = 6;
+  private static final int NUM_KINDS = UnitKind.values().length;
+  private static final UnitAttributes[] unitsAttributes = UnitAttributes.makeUnitsAttributes();
+
+  // Don't change the constants below without a good reason, replays of existing battles depend on them.
+  private static final int CHUNK_SIZE = 4096;
+  // The hits of a wave of chunks are buffered before they are applied, this limits the memory used by the buffers.
+  private static final int CHUNKS_PER_WAVE = 16;
+  private static final int MAX_PARTITIONS = 64;
+  private static final int MIN_PARTITION_SIZE = 1024;
+  private static final int INITIAL_HITS_CAPACITY = 256;
+
+  // Kinds of RNG streams.
+  private static final int FIRE_STREAM = 0;
+  private static final int EXPLOSION_STREAM = 1;
+
+  // The workspace of the last fight on each thread, the fights of small battles would spend most of their time
+  // allocating it otherwise. All buffers are cleared by fire() before they are used.
+  private static final ThreadLocal<Workspace> workspaces = new ThreadLocal<>();
+
+  // The pool is created by the first fight that splits its work, with a parallelism of 1 it's never needed.
+  private final int parallelism;
+  private ForkJoinPool pool;
+
+  public ParallelBattleEngineStrategy(@Value("${retro-game.battle-engine-parallelism:0}") int parallelism) {
+    this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+  }
+
+  private synchronized ForkJoinPool getPool() {
+    if (pool == null) {
+      pool = new ForkJoinPool(parallelism);
+    }
+    return pool;
+  }
+
+  @PreDestroy
+  synchronized void shutdown() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  private static final class Units {
+    private int numAlive;
+    private final float[] shields;
+    private final float[] hulls;
+    private final byte[] kinds;
+    private final byte[] ids;
+
+    private Units(int numAlive, float[] shields, float[] hulls, byte[] kinds, byte[] ids) {
+      this.numAlive = numAlive;
+      this.shields = shields;
+      this.hulls = hulls;
+      this.kinds = kinds;
+      this.ids = ids;
+    }
+  }
+
+  // The attributes of the units of each combatant and kind, including the combat technologies.
+  private record Attributes(float[] damages, float[] maxShields, float[] maxHulls) {
+  }
+
+  private record Stats(int[] numRemainingUnits, long[] timesFired, long[] timesWasShot, float[] shieldDamageDealt,
+                       float[] hullDamageDealt, float[] shieldDamageTaken, float[] hullDamageTaken) {
+  }
+
+  private record Party(Units units, Attributes attributes, Stats stats) {
+  }
+
+  // Buffers of a fight, reused by all rounds and by the next fights on the same thread.
+  private static final class Workspace {
+    private final int maxCombatants;
+    // Hits of each chunk of a wave: (shooter group << 32 | target index), in the order of shots.
+    private final long[][] hits = new long[CHUNKS_PER_WAVE][];
+    // The same hits sorted by the partition of the target, the order of shots within a partition is kept.
+    private final long[][] sortedHits = new long[CHUNKS_PER_WAVE][];
+    private final int[][] offsets = new int[CHUNKS_PER_WAVE][MAX_PARTITIONS + 1];
+    private final long[][] timesFired = new long[CHUNKS_PER_WAVE][];
+    private final long[][] timesWasShot = new long[CHUNKS_PER_WAVE][];
+    private final float[][] shieldDamageDealt = new float[MAX_PARTITIONS][];
+    private final float[][] hullDamageDealt = new float[MAX_PARTITIONS][];
+    private final float[][] shieldDamageTaken = new float[MAX_PARTITIONS][];
+    private final float[][] hullDamageTaken = new float[MAX_PARTITIONS][];
+    private final int[] randoms = new int[MAX_PARTITIONS];
+
+    private Workspace(int maxCombatants) {
+      this.maxCombatants = maxCombatants;
+      var size = maxCombatants * NUM_KINDS;
+      for (var i = 0; i < CHUNKS_PER_WAVE; i++) {
+        hits[i] = new long[INITIAL_HITS_CAPACITY];
+        sortedHits[i] = new long[INITIAL_HITS_CAPACITY];
+        timesFired[i] = new long[size];
+        timesWasShot[i] = new long[size];
+      }
+      for (var i = 0; i < MAX_PARTITIONS; i++) {
+        shieldDamageDealt[i] = new float[size];
+        hullDamageDealt[i] = new float[size];
+        shieldDamageTaken[i] = new float[size];
+        hullDamageTaken[i] = new float[size];
+      }
+    }
+  }
+
+  private static int idx(int combatantId, int kind) {
+    return combatantId * NUM_KINDS + kind;
+  }
+
+  private static int statsIdx(int combatantId, int round, int kind) {
+    return combatantId * MAX_ROUNDS * NUM_KINDS + round * NUM_KINDS + kind;
+  }
+
+  private static Units makeUnits(Combatant[] combatants, Attributes attributes) {
+    assert UnitKind.values().length <= Byte.MAX_VALUE;
+    assert combatants.length <= Byte.MAX_VALUE;
+
+    // The target index is packed into the lower 32 bits of a hit, and we cannot make bigger arrays in Java anyway.
+    // Each count is checked before it is added, so that huge counts cannot wrap the sum around below the limit.
+    var totalUnits = 0L;
+    for (var combatant : combatants) {
+      for (var count : combatant.unitGroups().values()) {
+        assert count >= 0;
+        if (count > Integer.MAX_VALUE - totalUnits) {
+          throw new IllegalArgumentException("Too many units");
+        }
+        totalUnits += count;
+      }
+    }
+
+    var shields = new float[(int) totalUnits];
+    var hulls = new float[(int) totalUnits];
+    var kinds = new byte[(int) totalUnits];
+    var ids = new byte[(int) totalUnits];
+
+    var n = 0;
+    for (var i = 0; i < combatants.length; i++) {
+      for (var item : combatants[i].unitGroups().entrySet()) {
+        var kind = item.getKey().ordinal();
+        var count = item.getValue();
+        var maxHull = attributes.maxHulls[idx(i, kind)];
+        for (var j = 0; j < count; j++) {
+          hulls[n] = maxHull;
+          kinds[n] = (byte) kind;
+          ids[n] = (byte) i;
+          n++;
+        }
+      }
+    }
+
+    return new Units((int) totalUnits, shields, hulls, kinds, ids);
+  }
+
+  private static Attributes makeAttributes(Combatant[] combatants) {
+    var size = combatants.length * NUM_KINDS;
+    var damages = new float[size];
+    var maxShields = new float[size];
+    var maxHulls = new float[size];
+    for (var i = 0; i < combatants.length; i++) {
+      var combatant = combatants[i];
+      for (var kind = 0; kind < NUM_KINDS; kind++) {
+        var attrs = unitsAttributes[kind];
+        // Keep the calculations in sync with the java battle engine.
+        damages[idx(i, kind)] = attrs.weapons * (1.0f + 0.1f * combatant.weaponsTechnology());
+        maxShields[idx(i, kind)] = attrs.shield * (1.0f + 0.1f * combatant.shieldingTechnology());
+        maxHulls[idx(i, kind)] = 0.1f * attrs.armor * (1.0f + 0.1f * combatant.armorTechnology());
+      }
+    }
+    return new Attributes(damages, maxShields, maxHulls);
+  }
+
+  private static Stats makeStats(Combatant[] combatants) {
+    assert combatants.length <= Integer.MAX_VALUE / (MAX_ROUNDS * NUM_KINDS);
+    var size = combatants.length * MAX_ROUNDS * NUM_KINDS;
+    return new Stats(new int[size], new long[size], new long[size], new float[size], new float[size], new float[size],
+        new float[size]);
+  }
+
+  private static Party makeParty(Combatant[] combatants) {
+    var attributes = makeAttributes(combatants);
+    var units = makeUnits(combatants, attributes);
+    var stats = makeStats(combatants);
+    return new Party(units, attributes, stats);
+  }
+
+  private static Workspace getWorkspace(int maxCombatants) {
+    var workspace = workspaces.get();
+    if (workspace == null || workspace.maxCombatants < maxCombatants) {
+      workspace = new Workspace(maxCombatants);
+      workspaces.set(workspace);
+    }
+    return workspace;
+  }
+
+  // Runs the tasks 0, ..., n - 1 on the pool and waits for all of them.
+  private void forEach(int n, IntConsumer task) {
+    if (n == 1 || parallelism == 1) {
+      for (var i = 0; i < n; i++) {
+        task.accept(i);
+      }
+      return;
+    }
+    var pool = getPool();
+    var tasks = new ArrayList<ForkJoinTask<?>>(n);
+    for (var i = 0; i < n; i++) {
+      var j = i;
+      tasks.add(pool.submit(() -> task.accept(j)));
+    }
+    for (var t : tasks) {
+      t.join();
+    }
+  }
+
+  private void restoreShields(Party party) {
+    var units = party.units;
+    var maxShields = party.attributes.maxShields;
+    var numChunks = (units.numAlive + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    forEach(Math.max(1, numChunks), chunk -> {
+      var end = Math.min(units.numAlive, (chunk + 1) * CHUNK_SIZE);
+      for (var i = chunk * CHUNK_SIZE; i < end; i++) {
+        units.shields[i] = maxShields[idx(units.ids[i], units.kinds[i])];
+      }
+    });
+  }
+
+  // Picks the targets of the shooters of the given chunk, and sorts the hits by the partition of the target.
+  private static void generateHits(Workspace workspace, int slot, int chunk, Units shooters, Units targets,
+                                   int numPartitions, int seed, int round, int side) {
+    final var numTargets = targets.numAlive;
+    final var timesFired = workspace.timesFired[slot];
+    final var timesWasShot = workspace.timesWasShot[slot];
+    var hits = workspace.hits[slot];
+    var n = 0;
+
+    var stream = (((long) round * 2 + side) * 2 + FIRE_STREAM) << 32 | chunk;
+    var r = LehmerRandom.makeStreamSeed(seed, stream);
+
+    var end = Math.min(shooters.numAlive, (chunk + 1) * CHUNK_SIZE);
+    for (var i = chunk * CHUNK_SIZE; i < end; i++) {
+      final var shooterKind = shooters.kinds[i];
+      final var group = idx(shooters.ids[i], shooterKind);
+      final var rapidFireAgainst = unitsAttributes[shooterKind].rapidFire;
+
+      while (true) {
+        // Pick a random target.
+        r = LehmerRandom.next(r);
+        final var targetIdx = r % numTargets;
+        final var targetKind = targets.kinds[targetIdx];
+
+        timesFired[group]++;
+        timesWasShot[idx(targets.ids[targetIdx], targetKind)]++;
+
+        if (n == hits.length) {
+          hits = Arrays.copyOf(hits, 2 * n);
+        }
+        hits[n++] = (long) group << 32 | targetIdx;
+
+        var rapidFire = rapidFireAgainst[targetKind];
+        if (rapidFire == 0) {
+          break;
+        }
+
+        r = LehmerRandom.next(r);
+        if (r % rapidFire == 0) {
+          break;
+        }
+      }
+    }
+    workspace.hits[slot] = hits;
+
+    // Counting sort by partition.
+    var offsets = workspace.offsets[slot];
+    Arrays.fill(offsets, 0);
+    for (var i = 0; i < n; i++) {
+      offsets[partition((int) hits[i], numTargets, numPartitions) + 1]++;
+    }
+    for (var p = 0; p < numPartitions; p++) {
+      offsets[p + 1] += offsets[p];
+    }
+    var sortedHits = workspace.sortedHits[slot];
+    if (sortedHits.length < n) {
+      sortedHits = new long[hits.length];
+      workspace.sortedHits[slot] = sortedHits;
+    }
+    var positions = Arrays.copyOf(offsets, numPartitions);
+    for (var i = 0; i < n; i++) {
+      var hit = hits[i];
+      sortedHits[positions[partition((int) hit, numTargets, numPartitions)]++] = hit;
+    }
+  }
+
+  private static int partition(int targetIdx, int numTargets, int numPartitions) {
+    return (int) ((long) targetIdx * numPartitions / numTargets);
+  }
+
+  // Applies the hits of the given partition, in the order of chunks.
+  private static void applyHits(Workspace workspace, int partition, int numChunks, Party attackersParty,
+                                Party defendersParty) {
+    final var damages = attackersParty.attributes.damages;
+    final var maxShields = defendersParty.attributes.maxShields;
+    final var maxHulls = defendersParty.attributes.maxHulls;
+    final var targets = defendersParty.units;
+
+    final var shieldDamageDealt = workspace.shieldDamageDealt[partition];
+    final var hullDamageDealt = workspace.hullDamageDealt[partition];
+    final var shieldDamageTaken = workspace.shieldDamageTaken[partition];
+    final var hullDamageTaken = workspace.hullDamageTaken[partition];
+
+    var r = workspace.randoms[partition];
+
+    for (var slot = 0; slot < numChunks; slot++) {
+      var hits = workspace.sortedHits[slot];
+      var end = workspace.offsets[slot][partition + 1];
+      for (var i = workspace.offsets[slot][partition]; i < end; i++) {
+        final var hit = hits[i];
+        final var shooterGroup = (int) (hit >>> 32);
+        final var targetIdx = (int) hit;
+
+        var shield = targets.shields[targetIdx];
+        var hull = targets.hulls[targetIdx];
+
+        // Is the target alive?
+        if (hull == 0.0f) {
+          continue;
+        }
+
+        final var targetGroup = idx(targets.ids[targetIdx], targets.kinds[targetIdx]);
+        final var damage = damages[shooterGroup];
+        var hullDamage = damage - shield;
+
+        // Does the shooter break through the shield at all?
+        if (hullDamage < 0.0f) {
+          // All damage absorbed by the shield. Calculate the shield damage including the bouncing effect.
+          var maxShield = maxShields[targetGroup];
+          var shieldDamage = 0.01f * (float) Math.floor(100.0f * damage / maxShield) * maxShield;
+          shield -= shieldDamage;
+
+          shieldDamageDealt[shooterGroup] += shieldDamage;
+          shieldDamageTaken[targetGroup] += shieldDamage;
+        } else {
+          // We break through the shield.
+          var shieldDamage = shield;
+          shield = 0.0f;
+
+          if (hullDamage > hull) {
+            hullDamage = hull;
+          }
+          hull -= hullDamage;
+
+          shieldDamageDealt[shooterGroup] += shieldDamage;
+          hullDamageDealt[shooterGroup] += hullDamage;
+          shieldDamageTaken[targetGroup] += shieldDamage;
+          hullDamageTaken[targetGroup] += hullDamage;
+        }
+
+        if (hull != 0.0f) {
+          // If the target's hull is less than 70%, the target might explode.
+          var maxHull = maxHulls[targetGroup];
+          if (hull < 0.7f * maxHull) {
+            r = LehmerRandom.next(r);
+            if (hull < (1.0f / LehmerRandom.MAX * r * maxHull)) {
+              // The target explodes, we mark it as dead.
+              hull = 0.0f;
+            }
+          }
+        }
+
+        targets.shields[targetIdx] = shield;
+        targets.hulls[targetIdx] = hull;
+      }
+    }
+
+    workspace.randoms[partition] = r;
+  }
+
+  private void fire(Workspace workspace, int numAttackers, int numDefenders, Party attackersParty,
+                    Party defendersParty, int seed, int round, int side) {
+    final var shooters = attackersParty.units;
+    final var targets = defendersParty.units;
+    final var numChunks = (shooters.numAlive + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    final var numPartitions =
+        Math.min(MAX_PARTITIONS, (targets.numAlive + MIN_PARTITION_SIZE - 1) / MIN_PARTITION_SIZE);
+
+    var attackersSize = numAttackers * NUM_KINDS;
+    var defendersSize = numDefenders * NUM_KINDS;
+    for (var slot = 0; slot < CHUNKS_PER_WAVE; slot++) {
+      Arrays.fill(workspace.timesFired[slot], 0, attackersSize, 0L);
+      Arrays.fill(workspace.timesWasShot[slot], 0, defendersSize, 0L);
+    }
+    for (var p = 0; p < numPartitions; p++) {
+      Arrays.fill(workspace.shieldDamageDealt[p], 0, attackersSize, 0.0f);
+      Arrays.fill(workspace.hullDamageDealt[p], 0, attackersSize, 0.0f);
+      Arrays.fill(workspace.shieldDamageTaken[p], 0, defendersSize, 0.0f);
+      Arrays.fill(workspace.hullDamageTaken[p], 0, defendersSize, 0.0f);
+      var stream = (((long) round * 2 + side) * 2 + EXPLOSION_STREAM) << 32 | p;
+      workspace.randoms[p] = LehmerRandom.makeStreamSeed(seed, stream);
+    }
+
+    for (var wave = 0; wave < numChunks; wave += CHUNKS_PER_WAVE) {
+      var firstChunk = wave;
+      var numWaveChunks = Math.min(CHUNKS_PER_WAVE, numChunks - wave);
+      forEach(numWaveChunks, slot -> generateHits(workspace, slot, firstChunk + slot, shooters, targets,
+          numPartitions, seed, round, side));
+      forEach(numPartitions, partition -> applyHits(workspace, partition, numWaveChunks, attackersParty,
+          defendersParty));
+    }
+
+    // Merge the stats in a fixed order, float addition isn't associative.
+    var attackersStats = attackersParty.stats;
+    var defendersStats = defendersParty.stats;
+    for (var c = 0; c < numAttackers; c++) {
+      for (var kind = 0; kind < NUM_KINDS; kind++) {
+        var i = idx(c, kind);
+        var statsIdx = statsIdx(c, round, kind);
+        for (var slot = 0; slot < CHUNKS_PER_WAVE; slot++) {
+          attackersStats.timesFired[statsIdx] += workspace.timesFired[slot][i];
+        }
+        for (var p = 0; p < numPartitions; p++) {
+          attackersStats.shieldDamageDealt[statsIdx] += workspace.shieldDamageDealt[p][i];
+          attackersStats.hullDamageDealt[statsIdx] += workspace.hullDamageDealt[p][i];
+        }
+      }
+    }
+    for (var c = 0; c < numDefenders; c++) {
+      for (var kind = 0; kind < NUM_KINDS; kind++) {
+        var i = idx(c, kind);
+        var statsIdx = statsIdx(c, round, kind);
+        for (var slot = 0; slot < CHUNKS_PER_WAVE; slot++) {
+          defendersStats.timesWasShot[statsIdx] += workspace.timesWasShot[slot][i];
+        }
+        for (var p = 0; p < numPartitions; p++) {
+          defendersStats.shieldDamageTaken[statsIdx] += workspace.shieldDamageTaken[p][i];
+          defendersStats.hullDamageTaken[statsIdx] += workspace.hullDamageTaken[p][i];
+        }
+      }
+    }
+  }
+
+  // Remove (place at the end) the dead units, and update the stats.
+  private static void updateUnits(Party party, int round) {
+    var units = party.units;
+    var stats = party.stats;
+
+    var n = 0;
+    for (var i = 0; i < units.numAlive; i++) {
+      if (units.hulls[i] != 0.0f) {
+        units.shields[n] = units.shields[i];
+        units.hulls[n] = units.hulls[i];
+        units.kinds[n] = units.kinds[i];
+        units.ids[n] = units.ids[i];
+        n++;
+
+        stats.numRemainingUnits[statsIdx(units.ids[i], round, units.kinds[i])]++;
+      }
+    }
+
+    units.numAlive = n;
+  }
+
+  private static List<CombatantOutcome> makeOutcomes(Combatant[] combatants, Party party, int numRounds) {
+    var stats = party.stats;
+    var outcomes = new ArrayList<CombatantOutcome>(combatants.length);
+    for (var i = 0; i < combatants.length; i++) {
+      var combatantStats = new ArrayList<EnumMap<UnitKind, UnitGroupStats>>(numRounds);
+      for (var round = 0; round < numRounds; round++) {
+        var roundStats = new EnumMap<UnitKind, UnitGroupStats>(UnitKind.class);
+        for (var kind : UnitKind.values()) {
+          var idx = statsIdx(i, round, kind.ordinal());
+          roundStats.put(kind, new UnitGroupStats(
+              stats.numRemainingUnits[idx],
+              stats.timesFired[idx],
+              stats.timesWasShot[idx],
+              stats.shieldDamageDealt[idx],
+              stats.hullDamageDealt[idx],
+              stats.shieldDamageTaken[idx],
+              stats.hullDamageTaken[idx]
+          ));
+        }
+        combatantStats.add(roundStats);
+      }
+      outcomes.add(new CombatantOutcome(combatantStats));
+    }
+    return outcomes;
+  }
+
+  @Override
+  public String rules() {
+    return PARALLEL_RULES;
+  }
+
+  @Override
+  public BattleOutcome fight(List<Combatant> attackersList, List<Combatant> defendersList, int seed) {
+    var attackers = attackersList.toArray(new Combatant[0]);
+    var defenders = defendersList.toArray(new Combatant[0]);
+
+    var attackersParty = makeParty(attackers);
+    var defendersParty = makeParty(defenders);
+
+    var workspace = getWorkspace(Math.max(attackers.length, defenders.length));
+
+    var round = 0;
+    while (round < MAX_ROUNDS && attackersParty.units.numAlive > 0 && defendersParty.units.numAlive > 0) {
+      restoreShields(attackersParty);
+      restoreShields(defendersParty);
+
+      fire(workspace, attackers.length, defenders.length, attackersParty, defendersParty, seed, round, 0);
+      fire(workspace, defenders.length, attackers.length, defendersParty, attackersParty, seed, round, 1);
+
+      updateUnits(attackersParty, round);
+      updateUnits(defendersParty, round);
+
+      round++;
+    }
+
+    var numRounds = round;
+    var attackersOutcomes = makeOutcomes(attackers, attackersParty, numRounds);
+    var defendersOutcomes = makeOutcomes(defenders, defendersParty, numRounds);
+    return new BattleOutcome(numRounds, attackersOutcomes, defendersOutcomes);
+  }
+}
@@ -0,0 +1,34 @@
+package com.github.retro_game.retro_game.battleengine;
+
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Makes the engines which replay battles fought with other rules than the configured engine. They are made on demand
+// and outside of the context, thus their pools are shut down here, together with the context.
+@Component
+public class ReplayBattleEngineFactory {
+  private final ConcurrentHashMap<String, BattleEngineStrategy> strategies = new ConcurrentHashMap<>();
+
+  // A replay fights a single battle, thus the engines run on the calling thread.
+  public BattleEngine get(String rules) {
+    return new BattleEngineImpl(strategies.computeIfAbsent(rules, r -> switch (r) {
+      case BattleEngineStrategy.JAVA_RULES -> new JavaBattleEngineStrategy(1);
+      case BattleEngineStrategy.AGGREGATED_RULES -> new AggregatedBattleEngineStrategy();
+      case BattleEngineStrategy.PARALLEL_RULES -> new ParallelBattleEngineStrategy(1);
+      default -> throw new IllegalStateException("Cannot replay a battle with unknown rules: " + r);
+    }));
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    for (var strategy : strategies.values()) {
+      if (strategy instanceof JavaBattleEngineStrategy javaStrategy) {
+        javaStrategy.shutdown();
+      } else if (strategy instanceof ParallelBattleEngineStrategy parallelStrategy) {
+        parallelStrategy.shutdown();
+      }
+    }
+  }
+}
@@ -0,0 +1,391 @@
+package com.github.retro_game.retro_game.battleengine;
+
+import com.github.retro_game.retro_game.entity.UnitKind;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+
+// A battle engine that uses SIMD instructions through the Vector API. The outcome is exactly the same as in the java
+// battle engine.
+// Units are kept ordered by their groups (combatant and kind), the dead ones are removed without changing the order,
+// thus every group is a contiguous range of units. Restoring shields and removing dead units work on whole vectors of
+// units of a group, and the remaining units are counted per group rather than per unit. Shots are still made one by
+// one, as every shot depends on the previous one through the RNG.
+// The JVM must be started with --add-modules jdk.incubator.vector to use this engine.
+@Component
+@ConditionalOnProperty(value = "retro-game.battle-engine", havingValue = "vector")
+public final class VectorBattleEngineStrategy implements BattleEngineStrategy {
+  private static final int MAX_ROUNDS = 6;
+  private static final int NUM_KINDS = UnitKind.values().length;
+  private static final UnitAttributes[] unitsAttributes = UnitAttributes.makeUnitsAttributes();
+
+  private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Short> SHORT_SPECIES = ShortVector.SPECIES_PREFERRED;
+
+  // Groups are the pairs of a combatant and a kind, the attributes of units are computed once per group.
+  private static final class Groups {
+    private final int size;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] kinds;
+    // The index of the stats of the group in the first round.
+    private final int[] statsIndices;
+    private final float[] damages;
+    private final float[] maxShields;
+    private final float[] maxHulls;
+
+    private Groups(int size) {
+      this.size = size;
+      starts = new int[size];
+      ends = new int[size];
+      kinds = new int[size];
+      statsIndices = new int[size];
+      damages = new float[size];
+      maxShields = new float[size];
+      maxHulls = new float[size];
+    }
+  }
+
+  private static final class Units {
+    private int numAlive;
+    private final float[] shields;
+    private final float[] hulls;
+    private final short[] groups;
+
+    private Units(int numAlive, float[] shields, float[] hulls, short[] groups) {
+      this.numAlive = numAlive;
+      this.shields = shields;
+      this.hulls = hulls;
+      this.groups = groups;
+    }
+  }
+
+  private record Stats(int[] numRemainingUnits, long[] timesFired, long[] timesWasShot, float[] shieldDamageDealt,
+                       float[] hullDamageDealt, float[] shieldDamageTaken, float[] hullDamageTaken) {
+  }
+
+  private record Party(Groups groups, Units units, Stats stats) {
+  }
+
+  private static Groups makeGroups(Combatant[] combatants) {
+    assert combatants.length <= Byte.MAX_VALUE;
+
+    var numGroups = 0;
+    for (var combatant : combatants) {
+      numGroups += combatant.unitGroups().size();
+    }
+    assert numGroups <= Short.MAX_VALUE;
+
+    var groups = new Groups(numGroups);
+    var g = 0;
+    var n = 0L;
+    for (var i = 0; i < combatants.length; i++) {
+      var combatant = combatants[i];
+      for (var item : combatant.unitGroups().entrySet()) {
+        var kind = item.getKey().ordinal();
+        var count = item.getValue();
+        var attributes = unitsAttributes[kind];
+        groups.starts[g] = (int) n;
+        n += count;
+        if (n > Integer.MAX_VALUE) {
+          // We cannot make bigger arrays in Java.
+          throw new IllegalArgumentException("Too many units");
+        }
+        groups.ends[g] = (int) n;
+        groups.kinds[g] = kind;
+        groups.statsIndices[g] = i * MAX_ROUNDS * NUM_KINDS + kind;
+        groups.damages[g] = attributes.weapons * (1.0f + 0.1f * combatant.weaponsTechnology());
+        groups.maxShields[g] = attributes.shield * (1.0f + 0.1f * combatant.shieldingTechnology());
+        groups.maxHulls[g] = 0.1f * attributes.armor * (1.0f + 0.1f * combatant.armorTechnology());
+        g++;
+      }
+    }
+    return groups;
+  }
+
+  private static Units makeUnits(Groups groups) {
+    var totalUnits = groups.size > 0 ? groups.ends[groups.size - 1] : 0;
+    var shields = new float[totalUnits];
+    var hulls = new float[totalUnits];
+    var unitsGroups = new short[totalUnits];
+    for (var g = 0; g < groups.size; g++) {
+      fill(hulls, groups.starts[g], groups.ends[g], groups.maxHulls[g]);
+      fill(unitsGroups, groups.starts[g], groups.ends[g], (short) g);
+    }
+    return new Units(totalUnits, shields, hulls, unitsGroups);
+  }
+
+  private static Stats makeStats(Combatant[] combatants) {
+    assert combatants.length <= Integer.MAX_VALUE / (MAX_ROUNDS * NUM_KINDS);
+    var size = combatants.length * MAX_ROUNDS * NUM_KINDS;
+    var numRemainingUnits = new int[size];
+    var timesFired = new long[size];
+    var timesWasShot = new long[size];
+    var shieldDamageDealt = new float[size];
+    var hullDamageDealt = new float[size];
+    var shieldDamageTaken = new float[size];
+    var hullDamageTaken = new float[size];
+    return new Stats(numRemainingUnits, timesFired, timesWasShot, shieldDamageDealt, hullDamageDealt, shieldDamageTaken,
+        hullDamageTaken);
+  }
+
+  private static Party makeParty(Combatant[] combatants) {
+    var groups = makeGroups(combatants);
+    var units = makeUnits(groups);
+    var stats = makeStats(combatants);
+    return new Party(groups, units, stats);
+  }
+
+  private static void fill(float[] a, int from, int to, float value) {
+    var v = FloatVector.broadcast(FLOAT_SPECIES, value);
+    var i = from;
+    for (var bound = from + FLOAT_SPECIES.loopBound(to - from); i < bound; i += FLOAT_SPECIES.length()) {
+      v.intoArray(a, i);
+    }
+    for (; i < to; i++) {
+      a[i] = value;
+    }
+  }
+
+  private static void fill(short[] a, int from, int to, short value) {
+    var v = ShortVector.broadcast(SHORT_SPECIES, value);
+    var i = from;
+    for (var bound = from + SHORT_SPECIES.loopBound(to - from); i < bound; i += SHORT_SPECIES.length()) {
+      v.intoArray(a, i);
+    }
+    for (; i < to; i++) {
+      a[i] = value;
+    }
+  }
+
+  private static void restoreShields(Party party) {
+    var groups = party.groups;
+    var units = party.units;
+    for (var g = 0; g < groups.size; g++) {
+      fill(units.shields, groups.starts[g], groups.ends[g], groups.maxShields[g]);
+    }
+  }
+
+  private static int fire(Party attackersParty, Party defendersParty, int round, int random) {
+    var r = random;
+
+    final var attackersGroups = attackersParty.groups;
+    final var defendersGroups = defendersParty.groups;
+
+    final var defendersUnits = defendersParty.units;
+
+    final var attackersStats = attackersParty.stats;
+    final var defendersStats = defendersParty.stats;
+
+    final var numTargets = defendersUnits.numAlive;
+
+    for (var g = 0; g < attackersGroups.size; g++) {
+      final var damage = attackersGroups.damages[g];
+      final var rapidFire = unitsAttributes[attackersGroups.kinds[g]].rapidFire;
+      final var shooterStatsIdx = attackersGroups.statsIndices[g] + round * NUM_KINDS;
+
+      // The shots of a group are counted locally, the order of additions is the same as in the java battle engine.
+      var timesFired = 0L;
+      var shieldDamageDealt = 0.0f;
+      var hullDamageDealt = 0.0f;
+
+      // Each shooter fires at one or more random targets.
+      for (var i = attackersGroups.starts[g]; i < attackersGroups.ends[g]; i++) {
+        while (true) {
+          // Pick a random target.
+          r = LehmerRandom.next(r);
+          final var targetIdx = r % numTargets;
+
+          var shield = defendersUnits.shields[targetIdx];
+          var hull = defendersUnits.hulls[targetIdx];
+          final var targetGroup = defendersUnits.groups[targetIdx];
+          final var targetKind = defendersGroups.kinds[targetGroup];
+          final var targetStatsIdx = defendersGroups.statsIndices[targetGroup] + round * NUM_KINDS;
+
+          timesFired++;
+          defendersStats.timesWasShot[targetStatsIdx]++;
+
+          // Is the target alive?
+          if (hull != 0.0f) {
+            var hullDamage = damage - shield;
+
+            // Does the shooter break through the shield at all?
+            if (hullDamage < 0.0f) {
+              // All damage absorbed by the shield. Calculate the shield damage including the bouncing effect.
+              var maxShield = defendersGroups.maxShields[targetGroup];
+              var shieldDamage = 0.01f * (float) Math.floor(100.0f * damage / maxShield) * maxShield;
+              shield -= shieldDamage;
+
+              shieldDamageDealt += shieldDamage;
+              defendersStats.shieldDamageTaken[targetStatsIdx] += shieldDamage;
+            } else {
+              // We break through the shield.
+              var shieldDamage = shield;
+              shield = 0.0f;
+
+              if (hullDamage > hull) {
+                hullDamage = hull;
+              }
+              hull -= hullDamage;
+
+              shieldDamageDealt += shieldDamage;
+              hullDamageDealt += hullDamage;
+              defendersStats.shieldDamageTaken[targetStatsIdx] += shieldDamage;
+              defendersStats.hullDamageTaken[targetStatsIdx] += hullDamage;
+            }
+
+            if (hull != 0.0f) {
+              // If the target's hull is less than 70%, the target might explode.
+              var maxHull = defendersGroups.maxHulls[targetGroup];
+              if (hull < 0.7f * maxHull) {
+                r = LehmerRandom.next(r);
+                if (hull < (1.0f / LehmerRandom.MAX * r * maxHull)) {
+                  // The target explodes, we mark it as dead.
+                  hull = 0.0f;
+                }
+              }
+            }
+
+            defendersUnits.shields[targetIdx] = shield;
+            defendersUnits.hulls[targetIdx] = hull;
+          }
+
+          var rf = rapidFire[targetKind];
+          if (rf == 0) {
+            break;
+          }
+
+          r = LehmerRandom.next(r);
+          if (r % rf == 0) {
+            break;
+          }
+        }
+      }
+
+      attackersStats.timesFired[shooterStatsIdx] += timesFired;
+      attackersStats.shieldDamageDealt[shooterStatsIdx] += shieldDamageDealt;
+      attackersStats.hullDamageDealt[shooterStatsIdx] += hullDamageDealt;
+    }
+
+    return r;
+  }
+
+  // Remove the dead units keeping the order, and update the stats. Shields are not moved, they are restored at the
+  // beginning of every round anyway.
+  private static void updateUnits(Party party, int round) {
+    var groups = party.groups;
+    var units = party.units;
+    var hulls = units.hulls;
+    var stats = party.stats;
+    var length = FLOAT_SPECIES.length();
+
+    var n = 0;
+    for (var g = 0; g < groups.size; g++) {
+      var start = groups.starts[g];
+      var end = groups.ends[g];
+      var newStart = n;
+
+      var i = start;
+      for (var bound = start + FLOAT_SPECIES.loopBound(end - start); i < bound; i += length) {
+        var v = FloatVector.fromArray(FLOAT_SPECIES, hulls, i);
+        var alive = v.compare(VectorOperators.NE, 0.0f);
+        if (alive.allTrue()) {
+          // The common case, the whole vector is moved at once.
+          if (n != i) {
+            v.intoArray(hulls, n);
+          }
+          n += length;
+        } else if (alive.anyTrue()) {
+          for (var j = alive.firstTrue(); j < length; j++) {
+            if (alive.laneIsSet(j)) {
+              hulls[n++] = hulls[i + j];
+            }
+          }
+        }
+      }
+      for (; i < end; i++) {
+        if (hulls[i] != 0.0f) {
+          hulls[n++] = hulls[i];
+        }
+      }
+
+      groups.starts[g] = newStart;
+      groups.ends[g] = n;
+      if (newStart != start) {
+        fill(units.groups, newStart, n, (short) g);
+      }
+
+      stats.numRemainingUnits[groups.statsIndices[g] + round * NUM_KINDS] = n - newStart;
+    }
+
+    units.numAlive = n;
+  }
+
+  private static List<CombatantOutcome> makeOutcomes(Combatant[] combatants, Party party, int numRounds) {
+    var stats = party.stats;
+    var outcomes = new ArrayList<CombatantOutcome>(combatants.length);
+    for (var i = 0; i < combatants.length; i++) {
+      var combatantStats = new ArrayList<EnumMap<UnitKind, UnitGroupStats>>(numRounds);
+      for (var round = 0; round < numRounds; round++) {
+        var roundStats = new EnumMap<UnitKind, UnitGroupStats>(UnitKind.class);
+        for (var kind : UnitKind.values()) {
+          int idx = i * MAX_ROUNDS * NUM_KINDS + round * NUM_KINDS + kind.ordinal();
+          roundStats.put(kind, new UnitGroupStats(
+              stats.numRemainingUnits[idx],
+              stats.timesFired[idx],
+              stats.timesWasShot[idx],
+              stats.shieldDamageDealt[idx],
+              stats.hullDamageDealt[idx],
+              stats.shieldDamageTaken[idx],
+              stats.hullDamageTaken[idx]
+          ));
+        }
+        combatantStats.add(roundStats);
+      }
+      outcomes.add(new CombatantOutcome(combatantStats));
+    }
+    return outcomes;
+  }
+
+  @Override
+  public String rules() {
+    return JAVA_RULES;
+  }
+
+  @Override
+  public BattleOutcome fight(List<Combatant> attackersList, List<Combatant> defendersList, int seed) {
+    var r = LehmerRandom.makeSeed(seed);
+
+    var attackers = attackersList.toArray(new Combatant[0]);
+    var defenders = defendersList.toArray(new Combatant[0]);
+
+    var attackersParty = makeParty(attackers);
+    var defendersParty = makeParty(defenders);
+
+    var round = 0;
+    while (round < MAX_ROUNDS && attackersParty.units.numAlive > 0 && defendersParty.units.numAlive > 0) {
+      restoreShields(attackersParty);
+      restoreShields(defendersParty);
+
+      r = fire(attackersParty, defendersParty, round, r);
+      r = fire(defendersParty, attackersParty, round, r);
+
+      updateUnits(attackersParty, round);
+      updateUnits(defendersParty, round);
+
+      round++;
+    }
+
+    var numRounds = round;
+    var attackersOutcomes = makeOutcomes(attackers, attackersParty, numRounds);
+    var defendersOutcomes = makeOutcomes(defenders, defendersParty, numRounds);
+    return new BattleOutcome(numRounds, attackersOutcomes, defendersOutcomes);
+  }
+}
@@ -1,5 +1,6 @@
 package com.github.retro_game.retro_game.cache;
 
+import com.github.retro_game.retro_game.entity.Coordinates;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
@@ -7,43 +8,79 @@ import org.springframework.transaction.support.TransactionSynchronizationManager
 @Component
 public class CacheObserver {
   private final BodyInfoCache bodyInfoCache;
+  private final EmpireBodyCache empireBodyCache;
+  private final GalaxySystemCache galaxySystemCache;
   private final UserInfoCache userInfoCache;
 
-  public CacheObserver(BodyInfoCache bodyInfoCache, UserInfoCache userInfoCache) {
+  public CacheObserver(BodyInfoCache bodyInfoCache, EmpireBodyCache empireBodyCache,
+                       GalaxySystemCache galaxySystemCache, UserInfoCache userInfoCache) {
     this.bodyInfoCache = bodyInfoCache;
+    this.empireBodyCache = empireBodyCache;
+    this.galaxySystemCache = galaxySystemCache;
     this.userInfoCache = userInfoCache;
   }
 
-  public void notifyBodyCreated(long userId) {
+  public void notifyBodyCreated(long userId, Coordinates coordinates) {
     // The mapping user -> list of bodies in user info must be refreshed. The cache for body info for the newly created
     // body should be empty.
+    var galaxy = coordinates.getGalaxy();
+    var system = coordinates.getSystem();
     TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
       @Override
       public void afterCommit() {
         userInfoCache.evict(userId);
+        galaxySystemCache.evict(galaxy, system);
       }
     });
   }
 
-  public void notifyBodyUpdated(long bodyId) {
+  public void notifyBodyUpdated(long bodyId, Coordinates coordinates) {
     // We need to refresh the given body. The mapping user -> list of bodies in user info should stay unchanged.
+    var galaxy = coordinates.getGalaxy();
+    var system = coordinates.getSystem();
     TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
       @Override
       public void afterCommit() {
         bodyInfoCache.evict(bodyId);
+        empireBodyCache.evict(bodyId);
+        galaxySystemCache.evict(galaxy, system);
       }
     });
   }
 
-  public void notifyBodyDeleted(long userId, long bodyId) {
+  public void notifyBodyDeleted(long userId, long bodyId, Coordinates coordinates) {
     // The mapping user -> list of bodies in user info must be updated, as the body is deleted. There is also no reason
     // to keep the body info cache for the given body, since it won't be used anymore.
+    var galaxy = coordinates.getGalaxy();
+    var system = coordinates.getSystem();
     TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
       @Override
       public void afterCommit() {
         bodyInfoCache.evict(bodyId);
+        empireBodyCache.evict(bodyId);
+        galaxySystemCache.evict(galaxy, system);
         userInfoCache.evict(userId);
       }
     });
   }
+
+  public void notifyDebrisFieldUpdated(int galaxy, int system) {
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        galaxySystemCache.evict(galaxy, system);
+      }
+    });
+  }
+
+  public void notifyUserUpdated() {
+    // The name and the vacation state of a user are shown next to each of their planets, which can be in any system.
+    // Such changes are rare, thus the whole galaxy is reloaded rather than looking for the user's systems.
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        galaxySystemCache.evictAll();
+      }
+    });
+  }
 }
@@ -0,0 +1,29 @@
+package com.github.retro_game.retro_game.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+@Component
+public class EmpireBodyCache {
+  private final static int MAX_SIZE = 16384;
+
+  // Guava provides a thread-safe implementation, no synchronization is required.
+  private final Cache<Long, EmpireBodySnapshot> cache = CacheBuilder.newBuilder()
+      .maximumSize(MAX_SIZE)
+      .build();
+
+  @Nullable
+  public EmpireBodySnapshot get(long bodyId) {
+    return cache.getIfPresent(bodyId);
+  }
+
+  public void put(long bodyId, EmpireBodySnapshot snapshot) {
+    cache.put(bodyId, snapshot);
+  }
+
+  public void evict(long bodyId) {
+    cache.invalidate(bodyId);
+  }
+}
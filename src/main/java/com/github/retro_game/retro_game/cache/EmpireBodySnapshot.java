@@ -0,0 +1,25 @@
+package com.github.retro_game.retro_game.cache;
+
+import com.github.retro_game.retro_game.dto.EmpireBodyDto;
+
+import java.util.Arrays;
+
+// An empire row together with the state of the body it was computed from. Only the resources of the row change with
+// time, everything else stays valid as long as the state is the same.
+public class EmpireBodySnapshot {
+  private final int[] state;
+  private final EmpireBodyDto row;
+
+  public EmpireBodySnapshot(int[] state, EmpireBodyDto row) {
+    this.state = state;
+    this.row = row;
+  }
+
+  public boolean matches(int[] state, String name) {
+    return Arrays.equals(this.state, state) && row.getName().equals(name);
+  }
+
+  public EmpireBodyDto getRow() {
+    return row;
+  }
+}
@@ -0,0 +1,106 @@
+package com.github.retro_game.retro_game.cache;
+
+import com.github.retro_game.retro_game.entity.GalaxySlot;
+import com.github.retro_game.retro_game.repository.GalaxySlotRepository;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps the slots of the galaxy view per system. The slots contain only the data shared by all players, everything
+// specific to the viewer is added by the galaxy service on top of it.
+@Component
+public class GalaxySystemCache {
+  // The size of the universe, the same as in the free systems view.
+  private static final int NUM_GALAXIES = 5;
+  private static final int NUM_SYSTEMS = 500;
+  private static final Logger logger = LoggerFactory.getLogger(GalaxySystemCache.class);
+
+  private record Key(int galaxy, int system) {
+  }
+
+  // The generations of the systems and of the whole galaxy, bumped by every eviction.
+  private record Generation(long galaxy, long system) {
+  }
+
+  private final GalaxySlotRepository galaxySlotRepository;
+
+  // Guava provides a thread-safe implementation, no synchronization is required. There is no size limit, as the
+  // number of systems is small and all of them are loaded at startup anyway.
+  private final Cache<Key, List<GalaxySlot>> cache;
+
+  // A load that is in flight when the system is evicted may have read the slots before the change, thus it's stored
+  // only if the system wasn't evicted in the meantime. An eviction bumps the generation before invalidating the entry.
+  private final AtomicLong galaxyGeneration = new AtomicLong();
+  private final ConcurrentHashMap<Key, Long> systemGenerations = new ConcurrentHashMap<>();
+
+  // The evictions come from the changes committed by this instance only. In the cluster mode, the changes made by the
+  // other instances, e.g. a new colony or debris field, are seen once the systems expire.
+  public GalaxySystemCache(@Value("${retro-game.event-scheduler-cluster-mode:false}") boolean clusterMode,
+                           @Value("${retro-game.galaxy-cache-cluster-expiry-seconds:60}") int clusterExpirySeconds,
+                           GalaxySlotRepository galaxySlotRepository) {
+    this.galaxySlotRepository = galaxySlotRepository;
+    var builder = CacheBuilder.newBuilder();
+    if (clusterMode) {
+      builder.expireAfterWrite(clusterExpirySeconds, TimeUnit.SECONDS);
+    }
+    cache = builder.build();
+  }
+
+  private Generation getGeneration(Key key) {
+    return new Generation(galaxyGeneration.get(), systemGenerations.getOrDefault(key, 0L));
+  }
+
+  @PostConstruct
+  private void loadSystems() {
+    var systems = new HashMap<Key, List<GalaxySlot>>();
+    for (var galaxy = 1; galaxy <= NUM_GALAXIES; galaxy++) {
+      for (var system = 1; system <= NUM_SYSTEMS; system++) {
+        systems.put(new Key(galaxy, system), new ArrayList<>());
+      }
+    }
+    var numSlots = 0;
+    for (var slot : galaxySlotRepository.findAll()) {
+      systems.computeIfAbsent(new Key(slot.getGalaxy(), slot.getSystem()), k -> new ArrayList<>()).add(slot);
+      numSlots++;
+    }
+    systems.replaceAll((key, slots) -> List.copyOf(slots));
+    cache.putAll(systems);
+    logger.info("Galaxy loaded: numSystems={} numSlots={}", systems.size(), numSlots);
+  }
+
+  public List<GalaxySlot> get(int galaxy, int system) {
+    var key = new Key(galaxy, system);
+    var slots = cache.getIfPresent(key);
+    if (slots != null) {
+      return slots;
+    }
+    var generation = getGeneration(key);
+    var loaded = List.copyOf(galaxySlotRepository.findAllByGalaxyAndSystem(galaxy, system));
+    // The check and the store are atomic with respect to the invalidation of the entry. A stale load is still returned
+    // to its caller, like a read that happened just before the eviction.
+    cache.asMap().compute(key, (k, current) -> getGeneration(k).equals(generation) ? loaded : current);
+    return loaded;
+  }
+
+  public void evict(int galaxy, int system) {
+    var key = new Key(galaxy, system);
+    systemGenerations.merge(key, 1L, Long::sum);
+    cache.invalidate(key);
+  }
+
+  public void evictAll() {
+    galaxyGeneration.incrementAndGet();
+    cache.invalidateAll();
+  }
+}
@@ -45,6 +45,8 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
             "/reset-password",
             "/change-password",
             "/static/**").permitAll()
+        // Actuator, served on the management port only
+        .antMatchers("/actuator/health", "/actuator/prometheus").permitAll()
         // Admin
         .antMatchers("/admin/**").hasRole("ADMIN")
         // Vacation mode
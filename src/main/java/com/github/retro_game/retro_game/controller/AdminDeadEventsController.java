@@ -0,0 +1,35 @@
+package com.github.retro_game.retro_game.controller;
+
+import com.github.retro_game.retro_game.service.DeadEventService;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+@Controller
+public class AdminDeadEventsController {
+  private final DeadEventService deadEventService;
+
+  public AdminDeadEventsController(DeadEventService deadEventService) {
+    this.deadEventService = deadEventService;
+  }
+
+  @GetMapping("/admin/dead-events")
+  public String deadEvents(Model model) {
+    model.addAttribute("events", deadEventService.getAll());
+    return "admin-dead-events";
+  }
+
+  @PostMapping("/admin/dead-events/requeue")
+  public String requeue(@RequestParam long id) {
+    deadEventService.requeue(id);
+    return "redirect:/admin/dead-events";
+  }
+
+  @PostMapping("/admin/dead-events/delete")
+  public String delete(@RequestParam long id) {
+    deadEventService.delete(id);
+    return "redirect:/admin/dead-events";
+  }
+}
@@ -1,12 +1,21 @@
 package com.github.retro_game.retro_game.controller;
 
+import com.github.retro_game.retro_game.service.EventSchedulerStatsService;
 import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 
 @Controller
 public class AdminHomeController {
+  private final EventSchedulerStatsService eventSchedulerStatsService;
+
+  public AdminHomeController(EventSchedulerStatsService eventSchedulerStatsService) {
+    this.eventSchedulerStatsService = eventSchedulerStatsService;
+  }
+
   @GetMapping("/admin/")
-  public String home() {
+  public String home(Model model) {
+    model.addAttribute("eventSchedulerStats", eventSchedulerStatsService.getStats());
     return "admin-home";
   }
 }
@@ -0,0 +1,77 @@
+package com.github.retro_game.retro_game.controller;
+
+import com.github.retro_game.retro_game.controller.activity.Activity;
+import com.github.retro_game.retro_game.controller.form.SimulateCombatCombatant;
+import com.github.retro_game.retro_game.controller.form.SimulateCombatRequest;
+import com.github.retro_game.retro_game.controller.form.SimulateCombatResponse;
+import com.github.retro_game.retro_game.dto.CombatSimulationCombatantDto;
+import com.github.retro_game.retro_game.service.CombatSimulatorService;
+import com.github.retro_game.retro_game.service.exception.SimulatorBusyException;
+import com.github.retro_game.retro_game.service.exception.TooManySimulationsException;
+import com.github.retro_game.retro_game.service.exception.TooManyUnitsException;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import javax.validation.Valid;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+@Controller
+public class CombatSimulatorController {
+  private final CombatSimulatorService combatSimulatorService;
+
+  public CombatSimulatorController(CombatSimulatorService combatSimulatorService) {
+    this.combatSimulatorService = combatSimulatorService;
+  }
+
+  // The request thread is released while the simulations run.
+  @PostMapping("/combat-simulator/simulate")
+  @ResponseBody
+  @PreAuthorize("hasPermission(#request.body, 'ACCESS')")
+  @Activity(bodies = "#request.body")
+  public CompletableFuture<SimulateCombatResponse> simulate(@RequestBody @Valid SimulateCombatRequest request) {
+    try {
+      return combatSimulatorService.simulate(convert(request.getAttackers()), convert(request.getDefenders()),
+              request.getNumSimulations())
+          .thenApply(result -> {
+            var response = new SimulateCombatResponse();
+            response.setSuccess(true);
+            response.setResult(result);
+            return response;
+          })
+          .exceptionally(e -> {
+            var cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause instanceof TimeoutException) {
+              var response = new SimulateCombatResponse();
+              response.setError("SIMULATION_TIMEOUT");
+              return response;
+            }
+            throw e instanceof CompletionException ce ? ce : new CompletionException(e);
+          });
+    } catch (SimulatorBusyException e) {
+      return error("SIMULATOR_BUSY");
+    } catch (TooManySimulationsException e) {
+      return error("TOO_MANY_SIMULATIONS");
+    } catch (TooManyUnitsException e) {
+      return error("TOO_MANY_UNITS");
+    }
+  }
+
+  private static CompletableFuture<SimulateCombatResponse> error(String error) {
+    var response = new SimulateCombatResponse();
+    response.setError(error);
+    return CompletableFuture.completedFuture(response);
+  }
+
+  private static List<CombatSimulationCombatantDto> convert(List<SimulateCombatCombatant> combatants) {
+    return combatants.stream()
+        .map(c -> new CombatSimulationCombatantDto(c.getWeaponsTechnology(), c.getShieldingTechnology(),
+            c.getArmorTechnology(), c.getUnits()))
+        .toList();
+  }
+}
@@ -0,0 +1,54 @@
+package com.github.retro_game.retro_game.controller.form;
+
+import com.github.retro_game.retro_game.dto.UnitKindDto;
+import org.hibernate.validator.constraints.Range;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.Map;
+
+public class SimulateCombatCombatant {
+  @Range(min = 0, max = 100)
+  private int weaponsTechnology;
+
+  @Range(min = 0, max = 100)
+  private int shieldingTechnology;
+
+  @Range(min = 0, max = 100)
+  private int armorTechnology;
+
+  @NotNull
+  private Map<@NotNull UnitKindDto, @NotNull @Min(0) Long> units;
+
+  public int getWeaponsTechnology() {
+    return weaponsTechnology;
+  }
+
+  public void setWeaponsTechnology(int weaponsTechnology) {
+    this.weaponsTechnology = weaponsTechnology;
+  }
+
+  public int getShieldingTechnology() {
+    return shieldingTechnology;
+  }
+
+  public void setShieldingTechnology(int shieldingTechnology) {
+    this.shieldingTechnology = shieldingTechnology;
+  }
+
+  public int getArmorTechnology() {
+    return armorTechnology;
+  }
+
+  public void setArmorTechnology(int armorTechnology) {
+    this.armorTechnology = armorTechnology;
+  }
+
+  public Map<UnitKindDto, Long> getUnits() {
+    return units;
+  }
+
+  public void setUnits(Map<UnitKindDto, Long> units) {
+    this.units = units;
+  }
+}
@@ -0,0 +1,55 @@
+package com.github.retro_game.retro_game.controller.form;
+
+import org.hibernate.validator.constraints.Range;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+public class SimulateCombatRequest {
+  private long body;
+
+  @NotNull
+  @Size(min = 1, max = 64)
+  private List<@NotNull @Valid SimulateCombatCombatant> attackers;
+
+  @NotNull
+  @Size(min = 1, max = 64)
+  private List<@NotNull @Valid SimulateCombatCombatant> defenders;
+
+  @Range(min = 1, max = 100)
+  private int numSimulations;
+
+  public long getBody() {
+    return body;
+  }
+
+  public void setBody(long body) {
+    this.body = body;
+  }
+
+  public List<SimulateCombatCombatant> getAttackers() {
+    return attackers;
+  }
+
+  public void setAttackers(List<SimulateCombatCombatant> attackers) {
+    this.attackers = attackers;
+  }
+
+  public List<SimulateCombatCombatant> getDefenders() {
+    return defenders;
+  }
+
+  public void setDefenders(List<SimulateCombatCombatant> defenders) {
+    this.defenders = defenders;
+  }
+
+  public int getNumSimulations() {
+    return numSimulations;
+  }
+
+  public void setNumSimulations(int numSimulations) {
+    this.numSimulations = numSimulations;
+  }
+}
@@ -0,0 +1,33 @@
+package com.github.retro_game.retro_game.controller.form;
+
+import com.github.retro_game.retro_game.dto.CombatSimulationResultDto;
+
+public class SimulateCombatResponse {
+  private boolean success;
+  private String error;
+  private CombatSimulationResultDto result;
+
+  public boolean isSuccess() {
+    return success;
+  }
+
+  public void setSuccess(boolean success) {
+    this.success = success;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public void setError(String error) {
+    this.error = error;
+  }
+
+  public CombatSimulationResultDto getResult() {
+    return result;
+  }
+
+  public void setResult(CombatSimulationResultDto result) {
+    this.result = result;
+  }
+}
@@ -1,5 +1,6 @@
 package com.github.retro_game.retro_game.cron;
 
+import com.github.retro_game.retro_game.cache.GalaxySystemCache;
 import com.github.retro_game.retro_game.entity.CoordinatesKind;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,10 +12,12 @@ import org.springframework.stereotype.Component;
 class DeleteOldDebrisFieldsTask {
   private static final int DAYS_BEFORE_DELETION = 3;
   private static final Logger logger = LoggerFactory.getLogger(DeleteOldDebrisFieldsTask.class);
+  private final GalaxySystemCache galaxySystemCache;
   private final JdbcTemplate jdbcTemplate;
   private final String sql;
 
-  public DeleteOldDebrisFieldsTask(JdbcTemplate jdbcTemplate) {
+  public DeleteOldDebrisFieldsTask(GalaxySystemCache galaxySystemCache, JdbcTemplate jdbcTemplate) {
+    this.galaxySystemCache = galaxySystemCache;
     this.jdbcTemplate = jdbcTemplate;
     this.sql = String.format("" +
             "delete from debris_fields df" +
@@ -26,13 +29,17 @@ class DeleteOldDebrisFieldsTask {
             "        and f.target_system = df.system" +
             "        and f.target_position = df.position" +
             "        and f.target_kind = %d" +
-            "   )",
+            "   )" +
+            " returning df.galaxy, df.system",
         DAYS_BEFORE_DELETION, CoordinatesKind.DEBRIS_FIELD.ordinal());
   }
 
   @Scheduled(cron = "0 30 1,9,17 * * *")
   private void deleteOldDebrisFields() {
     logger.info("Deleting old debris fields");
-    jdbcTemplate.update(sql);
+    // The statement is run in auto-commit mode, thus the deleted fields can be evicted from the galaxy right away.
+    jdbcTemplate.query(sql, rs -> {
+      galaxySystemCache.evict(rs.getInt(1), rs.getInt(2));
+    });
   }
 }
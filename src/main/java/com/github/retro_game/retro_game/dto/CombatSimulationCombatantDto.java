@@ -0,0 +1,7 @@
+package com.github.retro_game.retro_game.dto;
+
+import java.util.Map;
+
+public record CombatSimulationCombatantDto(int weaponsTechnology, int shieldingTechnology, int armorTechnology,
+                                           Map<UnitKindDto, Long> units) {
+}
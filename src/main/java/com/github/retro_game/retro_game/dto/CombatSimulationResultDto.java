@@ -0,0 +1,7 @@
+package com.github.retro_game.retro_game.dto;
+
+public record CombatSimulationResultDto(int numSimulations, double attackersWinProbability, double drawProbability,
+                                        double defendersWinProbability, double averageNumRounds,
+                                        ResourcesDto averageAttackersLoss, ResourcesDto averageDefendersLoss,
+                                        ResourcesDto averageDebris) {
+}
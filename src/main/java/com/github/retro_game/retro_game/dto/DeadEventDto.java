@@ -0,0 +1,9 @@
+package com.github.retro_game.retro_game.dto;
+
+import java.util.Date;
+import java.util.List;
+
+// The stuck flights are the flights of a flight event, which stay in the air until the event is requeued.
+public record DeadEventDto(long id, long eventId, Date at, String kind, Long param, int attempts, String error,
+                           Date failedAt, List<Long> stuckFlightIds) {
+}
@@ -0,0 +1,6 @@
+package com.github.retro_game.retro_game.dto;
+
+public record EventKindStatsDto(String kind, long numHandled, double meanHandlingTimeInMs, double maxHandlingTimeInMs,
+                                double meanLagInMs, double maxLagInMs, long numRetries,
+                                long numSerializationFailures) {
+}
@@ -0,0 +1,4 @@
+package com.github.retro_game.retro_game.dto;
+
+public record EventPartitionStatsDto(int numPendingEvents, long lagInMs) {
+}
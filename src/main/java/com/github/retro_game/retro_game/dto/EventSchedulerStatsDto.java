@@ -0,0 +1,8 @@
+package com.github.retro_game.retro_game.dto;
+
+import java.util.List;
+
+public record EventSchedulerStatsDto(long currentLagInMs, int numQueuedEvents, int numRetryingEvents,
+                                     long numDeadEvents, List<EventKindStatsDto> kinds,
+                                     List<EventPartitionStatsDto> partitions) {
+}
@@ -65,10 +65,14 @@ public class Body implements Serializable {
   @Type(type = "int-array")
   private int[] buildingsArray;
 
+  private transient ItemsView<BuildingKind> buildingsView;
+
   @Column(name = "units", nullable = false)
   @Type(type = "int-array")
   private int[] unitsArray;
 
+  private transient ItemsView<UnitKind> unitsView;
+
   @Column(name = "building_queue", nullable = false)
   @Type(type = "int-array")
   private int[] buildingQueueArray;
@@ -77,6 +81,24 @@ public class Body implements Serializable {
   @Type(type = "int-array")
   private int[] shipyardQueueArray;
 
+  // Whether the resources and the shipyard are projected to a time, without being persisted. The persistence context
+  // doesn't flush a projected body, thus any change would be lost, see BodyServiceInternal.
+  private transient boolean projected;
+
+  public boolean isProjected() {
+    return projected;
+  }
+
+  public void setProjected(boolean projected) {
+    this.projected = projected;
+  }
+
+  private void checkWritable() {
+    if (projected) {
+      throw new IllegalStateException("Body is projected, it must be updated before it's modified: bodyId=" + id);
+    }
+  }
+
   public long getId() {
     return id;
   }
@@ -86,6 +108,7 @@ public class Body implements Serializable {
   }
 
   public void setUser(User user) {
+    checkWritable();
     this.user = user;
   }
 
@@ -94,6 +117,7 @@ public class Body implements Serializable {
   }
 
   public void setCoordinates(Coordinates coordinates) {
+    checkWritable();
     this.coordinates = coordinates;
   }
 
@@ -102,6 +126,7 @@ public class Body implements Serializable {
   }
 
   public void setName(String name) {
+    checkWritable();
     this.name = name;
   }
 
@@ -110,6 +135,7 @@ public class Body implements Serializable {
   }
 
   public void setCreatedAt(Date createdAt) {
+    checkWritable();
     this.createdAt = createdAt;
   }
 
@@ -118,6 +144,7 @@ public class Body implements Serializable {
   }
 
   public void setUpdatedAt(Date updatedAt) {
+    checkWritable();
     this.updatedAt = updatedAt;
   }
 
@@ -126,6 +153,7 @@ public class Body implements Serializable {
   }
 
   public void setDiameter(int diameter) {
+    checkWritable();
     this.diameter = diameter;
   }
 
@@ -134,6 +162,7 @@ public class Body implements Serializable {
   }
 
   public void setTemperature(int temperature) {
+    checkWritable();
     this.temperature = temperature;
   }
 
@@ -142,6 +171,7 @@ public class Body implements Serializable {
   }
 
   public void setType(BodyType type) {
+    checkWritable();
     this.type = type;
   }
 
@@ -150,6 +180,7 @@ public class Body implements Serializable {
   }
 
   public void setImage(int image) {
+    checkWritable();
     this.image = image;
   }
 
@@ -158,6 +189,7 @@ public class Body implements Serializable {
   }
 
   public void setResources(Resources resources) {
+    checkWritable();
     this.resources = resources;
   }
 
@@ -166,6 +198,7 @@ public class Body implements Serializable {
   }
 
   public void setProductionFactors(ProductionFactors productionFactors) {
+    checkWritable();
     this.productionFactors = productionFactors;
   }
 
@@ -174,6 +207,7 @@ public class Body implements Serializable {
   }
 
   public void setLastJumpAt(Date lastJumpAt) {
+    checkWritable();
     this.lastJumpAt = lastJumpAt;
   }
 
@@ -182,17 +216,30 @@ public class Body implements Serializable {
   }
 
   public void setShipyardStartAt(Date shipyardStartAt) {
+    checkWritable();
     this.shipyardStartAt = shipyardStartAt;
   }
 
+  public int[] getBuildingsArray() {
+    return buildingsArray;
+  }
+
   public EnumMap<BuildingKind, Integer> getBuildings() {
     return SerializationUtils.deserializeItems(BuildingKind.class, buildingsArray);
   }
 
   public void setBuildings(Map<BuildingKind, Integer> buildings) {
+    checkWritable();
     buildingsArray = SerializationUtils.serializeItems(BuildingKind.class, buildings);
   }
 
+  public ItemsView<BuildingKind> getBuildingsView() {
+    if (buildingsView == null || !buildingsView.isBackedBy(buildingsArray)) {
+      buildingsView = new ItemsView<>(BuildingKind.values(), buildingsArray);
+    }
+    return buildingsView;
+  }
+
   public int getBuildingLevel(BuildingKind kind) {
     var index = kind.ordinal();
     var level = buildingsArray[index];
@@ -201,6 +248,7 @@ public class Body implements Serializable {
   }
 
   public void setBuildingLevel(BuildingKind kind, int level) {
+    checkWritable();
     assert level >= 0;
     var index = kind.ordinal();
     buildingsArray[index] = level;
@@ -215,9 +263,17 @@ public class Body implements Serializable {
   }
 
   public void setUnits(Map<UnitKind, Integer> units) {
+    checkWritable();
     unitsArray = SerializationUtils.serializeItems(UnitKind.class, units);
   }
 
+  public ItemsView<UnitKind> getUnitsView() {
+    if (unitsView == null || !unitsView.isBackedBy(unitsArray)) {
+      unitsView = new ItemsView<>(UnitKind.values(), unitsArray);
+    }
+    return unitsView;
+  }
+
   public int getUnitsCount(UnitKind kind) {
     var index = kind.ordinal();
     var count = unitsArray[index];
@@ -226,6 +282,7 @@ public class Body implements Serializable {
   }
 
   public void setUnitsCount(UnitKind kind, int count) {
+    checkWritable();
     assert count >= 0;
     var index = kind.ordinal();
     unitsArray[index] = count;
@@ -235,6 +292,10 @@ public class Body implements Serializable {
     return Arrays.stream(unitsArray).sum();
   }
 
+  public int[] getBuildingQueueArray() {
+    return buildingQueueArray;
+  }
+
   public SortedMap<Integer, BuildingQueueEntry> getBuildingQueue() {
     assert buildingQueueArray.length % 3 == 0;
     var numEntries = buildingQueueArray.length / 3;
@@ -251,6 +312,7 @@ public class Body implements Serializable {
   }
 
   public void setBuildingQueue(SortedMap<Integer, BuildingQueueEntry> queue) {
+    checkWritable();
     var array = new int[queue.size() * 3];
     var i = 0;
     for (var entry : queue.entrySet()) {
@@ -262,6 +324,10 @@ public class Body implements Serializable {
     buildingQueueArray = array;
   }
 
+  public int[] getShipyardQueueArray() {
+    return shipyardQueueArray;
+  }
+
   public List<ShipyardQueueEntry> getShipyardQueue() {
     assert shipyardQueueArray.length % 2 == 0;
     var numEntries = shipyardQueueArray.length / 2;
@@ -276,6 +342,7 @@ public class Body implements Serializable {
   }
 
   public void setShipyardQueue(List<ShipyardQueueEntry> queue) {
+    checkWritable();
     var array = new int[queue.size() * 2];
     var i = 0;
     for (var entry : queue) {
@@ -0,0 +1,74 @@
+package com.github.retro_game.retro_game.entity;
+
+import javax.persistence.*;
+import java.util.Date;
+
+// An event that kept failing, moved out of the events table, so that it doesn't block the others.
+@Entity
+@Table(name = "events_dead_letter")
+public class DeadEvent {
+  @Column(name = "id")
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private long id;
+
+  @Column(name = "event_id", nullable = false, updatable = false)
+  private long eventId;
+
+  @Column(name = "at", nullable = false, updatable = false)
+  private Date at;
+
+  @Column(name = "kind", nullable = false, updatable = false)
+  private EventKind kind;
+
+  @Column(name = "param", updatable = false)
+  private Long param;
+
+  @Column(name = "body_id", updatable = false)
+  private Long bodyId;
+
+  @Column(name = "attempts", nullable = false, updatable = false)
+  private int attempts;
+
+  @Column(name = "error", nullable = false, updatable = false)
+  private String error;
+
+  @Column(name = "failed_at", nullable = false, updatable = false)
+  private Date failedAt;
+
+  public long getId() {
+    return id;
+  }
+
+  public long getEventId() {
+    return eventId;
+  }
+
+  public Date getAt() {
+    return at;
+  }
+
+  public EventKind getKind() {
+    return kind;
+  }
+
+  public Long getParam() {
+    return param;
+  }
+
+  public Long getBodyId() {
+    return bodyId;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public Date getFailedAt() {
+    return failedAt;
+  }
+}
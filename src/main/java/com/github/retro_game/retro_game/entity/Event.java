@@ -1,6 +1,5 @@
 package com.github.retro_game.retro_game.entity;
 
-import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 
 import javax.persistence.*;
@@ -8,7 +7,6 @@ import java.util.Date;
 
 @Entity
 @Table(name = "events")
-@AllArgsConstructor
 @NoArgsConstructor
 public class Event {
   @Column(name = "id")
@@ -25,6 +23,24 @@ public class Event {
   @Column(name = "param")
   private Long param;
 
+  // The body a flight event touches, the partition key of the event. Null for other events.
+  @Column(name = "body_id")
+  private Long bodyId;
+
+  // The lease of the node handling the event in the cluster mode.
+  @Column(name = "claimed_by")
+  private String claimedBy;
+
+  @Column(name = "claimed_until")
+  private Date claimedUntil;
+
+  public Event(long id, Date at, EventKind kind, Long param) {
+    this.id = id;
+    this.at = at;
+    this.kind = kind;
+    this.param = param;
+  }
+
   public long getId() {
     return id;
   }
@@ -52,4 +68,25 @@ public class Event {
   public void setParam(Long param) {
     this.param = param;
   }
+
+  public Long getBodyId() {
+    return bodyId;
+  }
+
+  public void setBodyId(Long bodyId) {
+    this.bodyId = bodyId;
+  }
+
+  public String getClaimedBy() {
+    return claimedBy;
+  }
+
+  public Date getClaimedUntil() {
+    return claimedUntil;
+  }
+
+  public void release() {
+    claimedBy = null;
+    claimedUntil = null;
+  }
 }
@@ -79,6 +79,8 @@ public class Flight {
   @Type(type = "int-array")
   private int[] unitsArray;
 
+  private transient ItemsView<UnitKind> unitsView;
+
   @Column(name = "main_target", updatable = false)
   private UnitKind mainTarget;
 
@@ -90,6 +92,13 @@ public class Flight {
     unitsArray = SerializationUtils.serializeItems(UnitKind.class, units);
   }
 
+  public ItemsView<UnitKind> getUnitsView() {
+    if (unitsView == null || !unitsView.isBackedBy(unitsArray)) {
+      unitsView = new ItemsView<>(UnitKind.values(), unitsArray);
+    }
+    return unitsView;
+  }
+
   public int getUnitsCount(UnitKind kind) {
     var index = kind.ordinal();
     var count = unitsArray[index];
@@ -76,10 +76,19 @@ public class FlightView {
   @Type(type = "int-array")
   private int[] unitsArray;
 
+  private transient ItemsView<UnitKind> unitsView;
+
   public EnumMap<UnitKind, Integer> getUnits() {
     return SerializationUtils.deserializeItems(UnitKind.class, unitsArray);
   }
 
+  public ItemsView<UnitKind> getUnitsView() {
+    if (unitsView == null || !unitsView.isBackedBy(unitsArray)) {
+      unitsView = new ItemsView<>(UnitKind.values(), unitsArray);
+    }
+    return unitsView;
+  }
+
   public long getId() {
     return id;
   }
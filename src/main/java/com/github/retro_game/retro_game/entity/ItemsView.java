@@ -0,0 +1,64 @@
+package com.github.retro_game.retro_game.entity;
+
+// A read-only view of serialized item levels or counts, which doesn't box the values like the map getters do. The
+// view is backed by the entity's array, thus it reflects later changes made through the entity's setters.
+public final class ItemsView<K extends Enum<K>> {
+  @FunctionalInterface
+  public interface ItemConsumer<K> {
+    void accept(K kind, int value);
+  }
+
+  private final K[] kinds;
+  private final int[] array;
+
+  ItemsView(K[] kinds, int[] array) {
+    assert kinds.length == array.length;
+    this.kinds = kinds;
+    this.array = array;
+  }
+
+  boolean isBackedBy(int[] array) {
+    return this.array == array;
+  }
+
+  public int size() {
+    return array.length;
+  }
+
+  public K getKind(int index) {
+    return kinds[index];
+  }
+
+  public int get(int index) {
+    var value = array[index];
+    assert value >= 0;
+    return value;
+  }
+
+  public int get(K kind) {
+    return get(kind.ordinal());
+  }
+
+  public int sum() {
+    var sum = 0;
+    for (var value : array) {
+      sum += value;
+    }
+    return sum;
+  }
+
+  public void forEach(ItemConsumer<K> consumer) {
+    for (var i = 0; i < array.length; i++) {
+      consumer.accept(kinds[i], array[i]);
+    }
+  }
+
+  // Skips the items with zero level or count.
+  public void forEachPositive(ItemConsumer<K> consumer) {
+    for (var i = 0; i < array.length; i++) {
+      if (array[i] > 0) {
+        consumer.accept(kinds[i], array[i]);
+      }
+    }
+  }
+}
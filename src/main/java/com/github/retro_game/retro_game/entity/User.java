@@ -92,6 +92,8 @@ public class User {
   @Type(type = "int-array")
   private int[] technologiesArray;
 
+  private transient ItemsView<TechnologyKind> technologiesView;
+
   @Column(name = "technology_queue", nullable = false)
   @Type(type = "long-array")
   private long[] technologyQueueArray;
@@ -290,6 +292,13 @@ public class User {
     technologiesArray = SerializationUtils.serializeItems(TechnologyKind.class, technologies);
   }
 
+  public ItemsView<TechnologyKind> getTechnologiesView() {
+    if (technologiesView == null || !technologiesView.isBackedBy(technologiesArray)) {
+      technologiesView = new ItemsView<>(TechnologyKind.values(), technologiesArray);
+    }
+    return technologiesView;
+  }
+
   public int getTechnologyLevel(TechnologyKind kind) {
     var index = kind.ordinal();
     var level = technologiesArray[index];
@@ -6,9 +6,84 @@ import com.github.retro_game.retro_game.entity.TechnologyKind;
 
 // A helper for cost & required energy calculation.
 public class ItemCostUtils {
+  // Costs and required energy are precomputed up to this level, higher levels are calculated on each call.
+  private static final int MAX_PRECOMPUTED_LEVEL = 100;
+
+  // Indexed by kind and level, the costs are stored as consecutive metal, crystal and deuterium.
+  private static final double[][] buildingCosts = new double[BuildingKind.values().length][];
+  private static final int[][] buildingRequiredEnergies = new int[BuildingKind.values().length][];
+  private static final double[][] technologyCosts = new double[TechnologyKind.values().length][];
+  private static final int[][] technologyRequiredEnergies = new int[TechnologyKind.values().length][];
+
+  static {
+    for (var kind : BuildingKind.values()) {
+      var costs = new double[3 * (MAX_PRECOMPUTED_LEVEL + 1)];
+      var energies = new int[MAX_PRECOMPUTED_LEVEL + 1];
+      for (var level = 0; level <= MAX_PRECOMPUTED_LEVEL; level++) {
+        store(costs, level, calcCost(kind, level));
+        energies[level] = calcRequiredEnergy(kind, level);
+      }
+      buildingCosts[kind.ordinal()] = costs;
+      buildingRequiredEnergies[kind.ordinal()] = energies;
+    }
+    for (var kind : TechnologyKind.values()) {
+      var costs = new double[3 * (MAX_PRECOMPUTED_LEVEL + 1)];
+      var energies = new int[MAX_PRECOMPUTED_LEVEL + 1];
+      // Level 0 is never asked for.
+      for (var level = 1; level <= MAX_PRECOMPUTED_LEVEL; level++) {
+        store(costs, level, calcCost(kind, level));
+        energies[level] = calcRequiredEnergy(kind, level);
+      }
+      technologyCosts[kind.ordinal()] = costs;
+      technologyRequiredEnergies[kind.ordinal()] = energies;
+    }
+  }
+
+  private static void store(double[] costs, int level, Resources cost) {
+    costs[3 * level] = cost.getMetal();
+    costs[3 * level + 1] = cost.getCrystal();
+    costs[3 * level + 2] = cost.getDeuterium();
+  }
+
+  // A new object is returned, as the callers are free to modify it.
+  private static Resources load(double[] costs, int level) {
+    return new Resources(costs[3 * level], costs[3 * level + 1], costs[3 * level + 2]);
+  }
+
   public static Resources getCost(BuildingKind kind, int level) {
     // When a building of level 1 needs to be destroyed, the passed level is 0.
     assert level >= 0;
+    if (level <= MAX_PRECOMPUTED_LEVEL) {
+      return load(buildingCosts[kind.ordinal()], level);
+    }
+    return calcCost(kind, level);
+  }
+
+  public static Resources getCost(TechnologyKind kind, int level) {
+    assert level >= 1;
+    if (level <= MAX_PRECOMPUTED_LEVEL) {
+      return load(technologyCosts[kind.ordinal()], level);
+    }
+    return calcCost(kind, level);
+  }
+
+  public static int getRequiredEnergy(BuildingKind kind, int level) {
+    assert level >= 0;
+    if (level <= MAX_PRECOMPUTED_LEVEL) {
+      return buildingRequiredEnergies[kind.ordinal()][level];
+    }
+    return calcRequiredEnergy(kind, level);
+  }
+
+  public static int getRequiredEnergy(TechnologyKind kind, int level) {
+    assert level >= 1;
+    if (level <= MAX_PRECOMPUTED_LEVEL) {
+      return technologyRequiredEnergies[kind.ordinal()][level];
+    }
+    return calcRequiredEnergy(kind, level);
+  }
+
+  private static Resources calcCost(BuildingKind kind, int level) {
     var item = Item.get(kind);
     var cost = item.getBaseCost();
     cost.mul(Math.pow(item.getCostFactor(), level - 1));
@@ -16,8 +91,7 @@ public class ItemCostUtils {
     return cost;
   }
 
-  public static Resources getCost(TechnologyKind kind, int level) {
-    assert level >= 1;
+  private static Resources calcCost(TechnologyKind kind, int level) {
     var item = Item.get(kind);
     // This is the formula for Astrophysics, but can be applied to other technologies as well.
     var cost = item.getBaseCost();
@@ -30,19 +104,17 @@ public class ItemCostUtils {
     return cost;
   }
 
-  public static int getRequiredEnergy(BuildingKind kind, int level) {
-    assert level >= 0;
+  private static int calcRequiredEnergy(BuildingKind kind, int level) {
     var item = Item.get(kind);
-    return getRequiredEnergy(item.getBaseRequiredEnergy(), item.getCostFactor(), level);
+    return calcRequiredEnergy(item.getBaseRequiredEnergy(), item.getCostFactor(), level);
   }
 
-  public static int getRequiredEnergy(TechnologyKind kind, int level) {
-    assert level >= 1;
+  private static int calcRequiredEnergy(TechnologyKind kind, int level) {
     var item = Item.get(kind);
-    return getRequiredEnergy(item.getBaseRequiredEnergy(), item.getCostFactor(), level);
+    return calcRequiredEnergy(item.getBaseRequiredEnergy(), item.getCostFactor(), level);
   }
 
-  private static int getRequiredEnergy(int base, double factor, int level) {
+  private static int calcRequiredEnergy(int base, double factor, int level) {
     assert level >= 0;
     return (int) (base * Math.pow(factor, level - 1));
   }
@@ -6,27 +6,84 @@ import com.github.retro_game.retro_game.entity.TechnologyKind;
 import com.github.retro_game.retro_game.entity.User;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 // A helper to check whether the requirements for a given item are met.
 public class ItemRequirementsUtils {
+  // The requirements flattened into parallel arrays, so that the checks don't need to iterate over maps.
+  private record Requirements(BuildingKind[] buildingKinds, int[] buildingLevels, TechnologyKind[] technologyKinds,
+                              int[] technologyLevels) {
+  }
+
+  // Items are singletons, thus they can be used as keys directly.
+  private static final Map<Item, Requirements> requirements = new ConcurrentHashMap<>();
+
+  private static Requirements getRequirements(Item item) {
+    return requirements.computeIfAbsent(item, ItemRequirementsUtils::flatten);
+  }
+
+  private static Requirements flatten(Item item) {
+    var buildings = item.getBuildingsRequirements();
+    var buildingKinds = new BuildingKind[buildings.size()];
+    var buildingLevels = new int[buildings.size()];
+    var i = 0;
+    for (var entry : buildings.entrySet()) {
+      buildingKinds[i] = entry.getKey();
+      buildingLevels[i] = entry.getValue();
+      i++;
+    }
+
+    var technologies = item.getTechnologiesRequirements();
+    var technologyKinds = new TechnologyKind[technologies.size()];
+    var technologyLevels = new int[technologies.size()];
+    i = 0;
+    for (var entry : technologies.entrySet()) {
+      technologyKinds[i] = entry.getKey();
+      technologyLevels[i] = entry.getValue();
+      i++;
+    }
+
+    return new Requirements(buildingKinds, buildingLevels, technologyKinds, technologyLevels);
+  }
+
   public static boolean meetsBuildingsRequirements(Item item, Map<BuildingKind, Integer> buildings) {
-    return item.getBuildingsRequirements().entrySet().stream()
-        .allMatch(entry -> buildings.getOrDefault(entry.getKey(), 0) >= entry.getValue());
+    var reqs = getRequirements(item);
+    for (var i = 0; i < reqs.buildingKinds.length; i++) {
+      if (buildings.getOrDefault(reqs.buildingKinds[i], 0) < reqs.buildingLevels[i]) {
+        return false;
+      }
+    }
+    return true;
   }
 
   public static boolean meetsBuildingsRequirements(Item item, Body body) {
-    return item.getBuildingsRequirements().entrySet().stream()
-        .allMatch(entry -> body.getBuildingLevel(entry.getKey()) >= entry.getValue());
+    var reqs = getRequirements(item);
+    for (var i = 0; i < reqs.buildingKinds.length; i++) {
+      if (body.getBuildingLevel(reqs.buildingKinds[i]) < reqs.buildingLevels[i]) {
+        return false;
+      }
+    }
+    return true;
   }
 
   public static boolean meetsTechnologiesRequirements(Item item, Map<TechnologyKind, Integer> technologies) {
-    return item.getTechnologiesRequirements().entrySet().stream()
-        .allMatch(entry -> technologies.getOrDefault(entry.getKey(), 0) >= entry.getValue());
+    var reqs = getRequirements(item);
+    for (var i = 0; i < reqs.technologyKinds.length; i++) {
+      if (technologies.getOrDefault(reqs.technologyKinds[i], 0) < reqs.technologyLevels[i]) {
+        return false;
+      }
+    }
+    return true;
   }
 
   public static boolean meetsTechnologiesRequirements(Item item, User user) {
-    return item.getTechnologiesRequirements().entrySet().stream()
-        .allMatch(entry -> user.getTechnologyLevel(entry.getKey()) >= entry.getValue());
+    var reqs = getRequirements(item);
+    for (var i = 0; i < reqs.technologyKinds.length; i++) {
+      if (user.getTechnologyLevel(reqs.technologyKinds[i]) < reqs.technologyLevels[i]) {
+        return false;
+      }
+    }
+    return true;
   }
 
   public static boolean meetsRequirements(Item item, Body body) {
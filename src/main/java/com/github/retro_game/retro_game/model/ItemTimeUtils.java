@@ -13,12 +13,16 @@ import java.util.Date;
 // A helper for time calculation. The methods return the number of seconds required to get an item.
 @Component
 public class ItemTimeUtils {
+  private static final int MAX_PRECOMPUTED_IRN_LEVEL = 64;
+
   private final int buildingConstructionSpeed;
   private final int buildingDestructionSpeed;
   private final int technologyResearchSpeed;
   private final int unitConstructionSpeed;
   private final double irnBoostFactor;
   private final int minShipyardTime;
+  // The IRN divisors for the usual numbers of connected labs, higher levels are calculated on each call.
+  private final double[] irnDivisors = new double[MAX_PRECOMPUTED_IRN_LEVEL + 1];
 
   public ItemTimeUtils(@Value("${retro-game.building-construction-speed}") int buildingConstructionSpeed,
                        @Value("${retro-game.building-destruction-speed}") int buildingDestructionSpeed,
@@ -32,6 +36,9 @@ public class ItemTimeUtils {
     this.unitConstructionSpeed = unitConstructionSpeed;
     this.irnBoostFactor = irnBoostFactor;
     this.minShipyardTime = minShipyardTime;
+    for (var level = 0; level <= MAX_PRECOMPUTED_IRN_LEVEL; level++) {
+      irnDivisors[level] = Math.pow(1 + irnBoostFactor, level);
+    }
   }
 
   @PostConstruct
@@ -71,7 +78,9 @@ public class ItemTimeUtils {
     assert effectiveLabLevel >= 0;
     var seconds = (long) (3.6 * (cost.getMetal() + cost.getCrystal()));
     seconds /= 1 + effectiveLabLevel;
-    seconds = (long) (seconds / Math.pow(1 + irnBoostFactor, irnLevel));
+    var irnDivisor = irnLevel <= MAX_PRECOMPUTED_IRN_LEVEL ? irnDivisors[irnLevel] :
+        Math.pow(1 + irnBoostFactor, irnLevel);
+    seconds = (long) (seconds / irnDivisor);
     seconds /= technologyResearchSpeed;
     return Math.max(1, seconds);
   }
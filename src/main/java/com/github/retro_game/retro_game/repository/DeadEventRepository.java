@@ -0,0 +1,26 @@
+package com.github.retro_game.retro_game.repository;
+
+import com.github.retro_game.retro_game.entity.DeadEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+
+public interface DeadEventRepository extends JpaRepository<DeadEvent, Long> {
+  List<DeadEvent> findAllByOrderByFailedAtDesc();
+
+  // Moves the event to the dead letter table, unless it was deleted or rescheduled in the meantime. Returns the number
+  // of moved events.
+  @Transactional
+  @Modifying
+  @Query(value = """
+      with moved as (delete from events where id = ?1 and at = ?2 returning *)
+      insert into events_dead_letter (event_id, at, kind, param, body_id, attempts, error, failed_at)
+      select id, at, kind, param, body_id, ?3, ?4, now()
+        from moved
+      """, nativeQuery = true)
+  int moveFromEvents(long eventId, Date at, int attempts, String error);
+}
@@ -2,9 +2,15 @@ package com.github.retro_game.retro_game.repository;
 
 import com.github.retro_game.retro_game.entity.Event;
 import com.github.retro_game.retro_game.entity.EventKind;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,5 +21,59 @@ public interface EventRepository extends JpaRepository<Event, Long> {
 
   Optional<Event> findFirstByKindAndParam(EventKind kind, long param);
 
-  Optional<Event> findFirstByOrderByAtAscIdAsc();
+  List<Event> findAllByOrderByAtAscIdAsc(Pageable pageable);
+
+  List<Event> findByAtLessThanEqualOrderByAtAscIdAsc(Date at, Pageable pageable);
+
+  // Claims the due events that are not claimed, or whose lease expired, or that are already claimed by the node, which
+  // extends the lease. The rows locked by other nodes are skipped. Returns the claimed events ordered by their times.
+  @Transactional
+  default List<Event> claimDue(String node, int leaseSeconds, int limit) {
+    if (claim(node, leaseSeconds, limit) == 0) {
+      return new ArrayList<>();
+    }
+    return findClaimed(node, leaseSeconds);
+  }
+
+  // The persistence context is flushed before and cleared after, so that the events returned by findClaimed() are read
+  // again with their leases.
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @Query(value = """
+      update events
+         set claimed_by = ?1,
+             claimed_until = now() + make_interval(secs => ?2)
+       where id in (select id
+                      from events
+                     where at <= now()
+                       and (claimed_until is null or claimed_until < now() or claimed_by = ?1)
+                  order by at, id
+                     limit ?3
+                       for update skip locked)
+      """, nativeQuery = true)
+  int claim(String node, int leaseSeconds, int limit);
+
+  // The events claimed in the current transaction: now() is the start time of the transaction, thus their leases end
+  // exactly at now() plus the lease time.
+  @Query(value = """
+      select *
+        from events
+       where claimed_by = ?1
+         and claimed_until = now() + make_interval(secs => ?2)
+    order by at, id
+      """, nativeQuery = true)
+  List<Event> findClaimed(String node, int leaseSeconds);
+
+  // The earliest time at which an event of another node, or a new event, may be claimed: either its time or the end of
+  // the lease.
+  @Query(value = """
+      select min(case when claimed_until is null or claimed_until < now() then at
+                      else greatest(at, claimed_until) end)
+        from events
+       where claimed_by is distinct from ?1
+      """, nativeQuery = true)
+  Optional<Date> findNextClaimableAt(String node);
+
+  // Postgres delivers the notification when the transaction commits.
+  @Query(value = "select 1 from pg_notify(?1, '')", nativeQuery = true)
+  int notify(String channel);
 }
@@ -0,0 +1,14 @@
+package com.github.retro_game.retro_game.service;
+
+import com.github.retro_game.retro_game.dto.CombatSimulationCombatantDto;
+import com.github.retro_game.retro_game.dto.CombatSimulationResultDto;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface CombatSimulatorService {
+  // The simulations run in the background, the returned future completes when they are done.
+  CompletableFuture<CombatSimulationResultDto> simulate(List<CombatSimulationCombatantDto> attackers,
+                                                        List<CombatSimulationCombatantDto> defenders,
+                                                        int numSimulations);
+}
@@ -0,0 +1,14 @@
+package com.github.retro_game.retro_game.service;
+
+import com.github.retro_game.retro_game.dto.DeadEventDto;
+
+import java.util.List;
+
+public interface DeadEventService {
+  List<DeadEventDto> getAll();
+
+  // Moves the event back to the scheduler, with its original time.
+  void requeue(long id);
+
+  void delete(long id);
+}
@@ -0,0 +1,7 @@
+package com.github.retro_game.retro_game.service;
+
+import com.github.retro_game.retro_game.dto.EventSchedulerStatsDto;
+
+public interface EventSchedulerStatsService {
+  EventSchedulerStatsDto getStats();
+}
@@ -0,0 +1,7 @@
+package com.github.retro_game.retro_game.service.exception;
+
+public class SimulatorBusyException extends ServiceException {
+  public SimulatorBusyException() {
+    super("Simulator busy");
+  }
+}
@@ -0,0 +1,7 @@
+package com.github.retro_game.retro_game.service.exception;
+
+public class TooManySimulationsException extends ServiceException {
+  public TooManySimulationsException() {
+    super("Too many simulations");
+  }
+}
@@ -0,0 +1,7 @@
+package com.github.retro_game.retro_game.service.exception;
+
+public class TooManyUnitsException extends ServiceException {
+  public TooManyUnitsException() {
+    super("Too many units");
+  }
+}
@@ -138,7 +138,7 @@ public class BodyCreationServiceImpl implements BodyCreationService {
     body.setShipyardQueue(Collections.emptyList());
     body = bodyRepository.save(body);
 
-    cacheObserver.notifyBodyCreated(user.getId());
+    cacheObserver.notifyBodyCreated(user.getId(), coordinates);
 
     return body;
   }
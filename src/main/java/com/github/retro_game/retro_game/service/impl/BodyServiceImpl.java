@@ -2,6 +2,8 @@ package com.github.retro_game.retro_game.service.impl;
 
 import com.github.retro_game.retro_game.cache.BodyInfoCache;
 import com.github.retro_game.retro_game.cache.CacheObserver;
+import com.github.retro_game.retro_game.cache.EmpireBodyCache;
+import com.github.retro_game.retro_game.cache.EmpireBodySnapshot;
 import com.github.retro_game.retro_game.cache.UserInfoCache;
 import com.github.retro_game.retro_game.dto.*;
 import com.github.retro_game.retro_game.entity.*;
@@ -9,8 +11,11 @@ import com.github.retro_game.retro_game.repository.BodyRepository;
 import com.github.retro_game.retro_game.repository.UserRepository;
 import com.github.retro_game.retro_game.security.CustomUser;
 import com.github.retro_game.retro_game.service.exception.*;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.vavr.Tuple;
 import io.vavr.Tuple2;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,7 +37,6 @@ import java.time.Instant;
 import java.util.*;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
-import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service("bodyService")
@@ -57,8 +61,19 @@ class BodyServiceImpl implements BodyServiceInternal {
   private final int fieldsPerLunarBaseLevel;
   private final int storageCapacityMultiplier;
   private final boolean plasmaTechnologyAffectsProduction;
+  // Production depends only on the state in the key, and on the configuration, which is fixed for the bean. Thus the
+  // cache needs no invalidation.
+  private record ProductionKey(int metalMineLevel, int crystalMineLevel, int deuteriumSynthesizerLevel,
+                               int solarPlantLevel, int fusionReactorLevel, int numSolarSatellites,
+                               int metalMineFactor, int crystalMineFactor, int deuteriumSynthesizerFactor,
+                               int solarPlantFactor, int fusionReactorFactor, int solarSatellitesFactor,
+                               int temperature, int energyTechnologyLevel, int plasmaTechnologyLevel) {
+  }
+
+  private final Cache<ProductionKey, ProductionDto> productionCache;
   private final CacheObserver cacheObserver;
   private final BodyInfoCache bodyInfoCache;
+  private final EmpireBodyCache empireBodyCache;
   private final UserInfoCache userInfoCache;
   private final BodyRepository bodyRepository;
   private final UserRepository userRepository;
@@ -86,8 +101,10 @@ class BodyServiceImpl implements BodyServiceInternal {
                          @Value("${retro-game.fields-per-lunar-base-level}") int fieldsPerLunarBaseLevel,
                          @Value("${retro-game.storage-capacity-multiplier}") int storageCapacityMultiplier,
                          @Value("${retro-game.plasma-technology-affects-production}") boolean plasmaTechnologyAffectsProduction,
+                         @Value("${retro-game.production-cache-size:100000}") int productionCacheSize,
                          CacheObserver cacheObserver,
                          BodyInfoCache bodyInfoCache,
+                         EmpireBodyCache empireBodyCache,
                          UserInfoCache userInfoCache,
                          BodyRepository bodyRepository,
                          UserRepository userRepository) {
@@ -110,8 +127,12 @@ class BodyServiceImpl implements BodyServiceInternal {
     this.fieldsPerLunarBaseLevel = fieldsPerLunarBaseLevel;
     this.storageCapacityMultiplier = storageCapacityMultiplier;
     this.plasmaTechnologyAffectsProduction = plasmaTechnologyAffectsProduction;
+    this.productionCache = CacheBuilder.newBuilder()
+        .maximumSize(productionCacheSize)
+        .build();
     this.cacheObserver = cacheObserver;
     this.bodyInfoCache = bodyInfoCache;
+    this.empireBodyCache = empireBodyCache;
     this.userInfoCache = userInfoCache;
     this.bodyRepository = bodyRepository;
     this.userRepository = userRepository;
@@ -180,6 +201,7 @@ class BodyServiceImpl implements BodyServiceInternal {
   public BodyContextDto getBodyContext(long bodyId) {
     var txDef = new DefaultTransactionDefinition();
     txDef.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    txDef.setReadOnly(true);
     var txStatus = platformTransactionManager.getTransaction(txDef);
 
     BodyContextDto ctx = null;
@@ -187,7 +209,7 @@ class BodyServiceImpl implements BodyServiceInternal {
       var body = bodyRepository.getById(bodyId);
 
       var now = Date.from(Instant.ofEpochSecond(Instant.now().getEpochSecond()));
-      updateResourcesAndShipyard(body, now);
+      projectResourcesAndShipyard(body, now);
 
       var name = body.getName();
       var coordinates = Converter.convert(body.getCoordinates());
@@ -216,7 +238,6 @@ class BodyServiceImpl implements BodyServiceInternal {
           ));
       ctx = new BodyContextDto(bodyId, name, coordinates, type, image, resources, production, capacity, buildings, units);
 
-      entityManager.persist(body);
       platformTransactionManager.commit(txStatus);
     } catch (TransientDataAccessException e) {
       logger.warn("Updating body resources failed due to concurrent access: bodyId={}", bodyId);
@@ -238,7 +259,7 @@ class BodyServiceImpl implements BodyServiceInternal {
 
   @Override
   public int getUsedFields(Body body) {
-    return body.getBuildings().values().stream().mapToInt(Integer::intValue).sum();
+    return body.getBuildingsView().sum();
   }
 
   @Override
@@ -405,104 +426,194 @@ class BodyServiceImpl implements BodyServiceInternal {
 
     List<Body> bodies = bodyRepository.findByUserForEmpire(user, galaxy, system, position, k);
 
-    // Selected bodies.
+    // Selected bodies. Everything but the resources is taken from the snapshot, when the body didn't change since it
+    // was made.
     Date now = Date.from(Instant.ofEpochSecond(Instant.now().getEpochSecond()));
-    List<EmpireBodyDto> empireBodies = bodies.stream()
-        .map(body -> {
-          updateResourcesAndShipyard(body, now);
+    List<EmpireBodyDto> empireBodies = new ArrayList<>(bodies.size());
+    for (var body : bodies) {
+      projectResourcesAndShipyard(body, now);
+
+      ResourcesDto res = Converter.convert(body.getResources());
+      long totalRes = (long) (res.getMetal() + res.getCrystal() + res.getDeuterium());
+      Tuple2<ResourcesDto, Long> resources = Tuple.of(res, totalRes);
+
+      var state = getEmpireState(body);
+      var snapshot = empireBodyCache.get(body.getId());
+      if (snapshot == null || !snapshot.matches(state, body.getName())) {
+        snapshot = new EmpireBodySnapshot(state, createEmpireBody(body, resources));
+        empireBodyCache.put(body.getId(), snapshot);
+      }
+      empireBodies.add(withResources(snapshot.getRow(), resources));
+    }
+
+    // Total & average.
+    EmpireSummaryDto<Long> total = sumEmpire(empireBodies);
+    EmpireSummaryDto<Double> average = averageEmpire(total, empireBodies.size());
+
+    // Sort.
+    BodyKeyExtractors<EmpireBodyDto> keyExtractors = new BodyKeyExtractors<>(EmpireBodyDto::getId,
+        EmpireBodyDto::getCoordinates, EmpireBodyDto::getName);
+    sort(empireBodies, keyExtractors, user);
 
-          int usedFields = getUsedFields(body);
-          int maxFields = getMaxFields(body);
+    return new EmpireDto(empireBodies, total, average);
+  }
 
-          ResourcesDto res = Converter.convert(body.getResources());
-          long totalRes = (long) (res.getMetal() + res.getCrystal() + res.getDeuterium());
-          Tuple2<ResourcesDto, Long> resources = Tuple.of(res, totalRes);
+  // Everything the time-independent part of an empire row depends on, except for the name and the values that never
+  // change. The queues are included, as they determine the future levels and counts.
+  private static int[] getEmpireState(Body body) {
+    var buildings = body.getBuildingsArray();
+    var units = body.getUnitsArray();
+    var buildingQueue = body.getBuildingQueueArray();
+    var shipyardQueue = body.getShipyardQueueArray();
+    var state = new int[buildings.length + units.length + buildingQueue.length + shipyardQueue.length + 11];
+    var i = 0;
+    System.arraycopy(buildings, 0, state, i, buildings.length);
+    i += buildings.length;
+    System.arraycopy(units, 0, state, i, units.length);
+    i += units.length;
+    System.arraycopy(buildingQueue, 0, state, i, buildingQueue.length);
+    i += buildingQueue.length;
+    System.arraycopy(shipyardQueue, 0, state, i, shipyardQueue.length);
+    i += shipyardQueue.length;
+    // The lengths of the queues, so that the same numbers split differently don't match.
+    state[i++] = buildingQueue.length;
+    state[i++] = shipyardQueue.length;
+    var factors = body.getProductionFactors();
+    state[i++] = factors.getMetalMineFactor();
+    state[i++] = factors.getCrystalMineFactor();
+    state[i++] = factors.getDeuteriumSynthesizerFactor();
+    state[i++] = factors.getSolarPlantFactor();
+    state[i++] = factors.getFusionReactorFactor();
+    state[i++] = factors.getSolarSatellitesFactor();
+    state[i++] = body.getUser().getTechnologyLevel(TechnologyKind.ENERGY_TECHNOLOGY);
+    state[i++] = body.getUser().getTechnologyLevel(TechnologyKind.PLASMA_TECHNOLOGY);
+    state[i++] = body.getImage();
+    assert i == state.length;
+    return state;
+  }
 
-          ProductionDto production = getProduction(body);
+  private EmpireBodyDto createEmpireBody(Body body, Tuple2<ResourcesDto, Long> resources) {
+    int usedFields = getUsedFields(body);
+    int maxFields = getMaxFields(body);
 
-          int availableEnergy = production.availableEnergy();
-          int totalEnergy = production.totalEnergy();
+    ProductionDto production = getProduction(body);
 
-          double m = production.metalProduction();
-          double c = production.crystalProduction();
-          double d = production.deuteriumProduction();
+    int availableEnergy = production.availableEnergy();
+    int totalEnergy = production.totalEnergy();
 
-          ResourcesDto hourly = new ResourcesDto(m, c, d);
-          long hourlyTotal = (long) (m + c + d);
-          Tuple2<ResourcesDto, Long> productionHourly = Tuple.of(hourly, hourlyTotal);
+    double m = production.metalProduction();
+    double c = production.crystalProduction();
+    double d = production.deuteriumProduction();
 
-          ResourcesDto daily = new ResourcesDto(24 * m, 24 * c, 24 * d);
-          long dailyTotal = 24 * (long) (m + c + d);
-          Tuple2<ResourcesDto, Long> productionDaily = Tuple.of(daily, dailyTotal);
+    ResourcesDto hourly = new ResourcesDto(m, c, d);
+    long hourlyTotal = (long) (m + c + d);
+    Tuple2<ResourcesDto, Long> productionHourly = Tuple.of(hourly, hourlyTotal);
 
-          ResourcesDto weekly = new ResourcesDto(24 * 7 * m, 24 * 7 * c, 24 * 7 * d);
-          long weeklyTotal = 24 * 7 * (long) (m + c + d);
-          Tuple2<ResourcesDto, Long> productionWeekly = Tuple.of(weekly, weeklyTotal);
+    ResourcesDto daily = new ResourcesDto(24 * m, 24 * c, 24 * d);
+    long dailyTotal = 24 * (long) (m + c + d);
+    Tuple2<ResourcesDto, Long> productionDaily = Tuple.of(daily, dailyTotal);
 
-          ResourcesDto _30days = new ResourcesDto(24 * 30 * m, 24 * 30 * c, 24 * 30 * d);
-          long _30daysTotal = 24 * 30 * (long) (m + c + d);
-          Tuple2<ResourcesDto, Long> production30days = Tuple.of(_30days, _30daysTotal);
+    ResourcesDto weekly = new ResourcesDto(24 * 7 * m, 24 * 7 * c, 24 * 7 * d);
+    long weeklyTotal = 24 * 7 * (long) (m + c + d);
+    Tuple2<ResourcesDto, Long> productionWeekly = Tuple.of(weekly, weeklyTotal);
 
-          ResourcesDto cap = getCapacity(body);
-          long totalCap = (long) (cap.getMetal() + cap.getCrystal() + cap.getDeuterium());
-          Tuple2<ResourcesDto, Long> capacity = Tuple.of(cap, totalCap);
+    ResourcesDto _30days = new ResourcesDto(24 * 30 * m, 24 * 30 * c, 24 * 30 * d);
+    long _30daysTotal = 24 * 30 * (long) (m + c + d);
+    Tuple2<ResourcesDto, Long> production30days = Tuple.of(_30days, _30daysTotal);
 
-          Map<BuildingKindDto, Tuple2<Integer, Integer>> buildings = Converter.convertToEnumMap(
-              buildingsServiceInternal.getCurrentAndFutureLevels(body), BuildingKindDto.class, Converter::convert,
-              Function.identity());
+    ResourcesDto cap = getCapacity(body);
+    long totalCap = (long) (cap.getMetal() + cap.getCrystal() + cap.getDeuterium());
+    Tuple2<ResourcesDto, Long> capacity = Tuple.of(cap, totalCap);
 
-          Map<UnitKindDto, Tuple2<Integer, Integer>> units = Converter.convertToEnumMap(
-              shipyardServiceInternal.getCurrentAndFutureCounts(body), UnitKindDto.class, Converter::convert,
-              Function.identity());
+    Map<BuildingKindDto, Tuple2<Integer, Integer>> buildings = Converter.convertToEnumMap(
+        buildingsServiceInternal.getCurrentAndFutureLevels(body), BuildingKindDto.class, Converter::convert,
+        Function.identity());
 
-          return new EmpireBodyDto(body.getId(), body.getName(), Converter.convert(body.getCoordinates()),
-              Converter.convert(body.getType()), body.getImage(), body.getDiameter(), usedFields, maxFields,
-              body.getTemperature(), resources, availableEnergy, totalEnergy, productionHourly, productionDaily,
-              productionWeekly, production30days, capacity, buildings, units);
-        })
-        .collect(Collectors.toList());
+    Map<UnitKindDto, Tuple2<Integer, Integer>> units = Converter.convertToEnumMap(
+        shipyardServiceInternal.getCurrentAndFutureCounts(body), UnitKindDto.class, Converter::convert,
+        Function.identity());
 
-    // Total.
-    Supplier<Tuple2<ResourcesDto, Long>> resTuplesId = () -> Tuple.of(new ResourcesDto(0.0, 0.0, 0.0), 0L);
-    BinaryOperator<Tuple2<ResourcesDto, Long>> resTuplesAcc = (acc, elem) -> {
-      ResourcesDto a = acc._1;
-      ResourcesDto b = elem._1;
-      ResourcesDto r = new ResourcesDto(
-          a.getMetal() + b.getMetal(),
-          a.getCrystal() + b.getCrystal(),
-          a.getDeuterium() + b.getDeuterium());
-      return Tuple.of(r, acc._2 + elem._2);
-    };
-    EmpireSummaryDto<Long> total = new EmpireSummaryDto<>(
-        empireBodies.stream().mapToLong(EmpireBodyDto::getDiameter).sum(),
-        empireBodies.stream().mapToLong(EmpireBodyDto::getUsedFields).sum(),
-        empireBodies.stream().mapToLong(EmpireBodyDto::getMaxFields).sum(),
-        empireBodies.stream().mapToLong(EmpireBodyDto::getTemperature).sum(),
-        empireBodies.stream().map(EmpireBodyDto::getResources).reduce(resTuplesId.get(), resTuplesAcc),
-        empireBodies.stream().mapToLong(EmpireBodyDto::getAvailableEnergy).sum(),
-        empireBodies.stream().mapToLong(EmpireBodyDto::getTotalEnergy).sum(),
-        empireBodies.stream().map(EmpireBodyDto::getProductionHourly).reduce(resTuplesId.get(), resTuplesAcc),
-        empireBodies.stream().map(EmpireBodyDto::getProductionDaily).reduce(resTuplesId.get(), resTuplesAcc),
-        empireBodies.stream().map(EmpireBodyDto::getProductionWeekly).reduce(resTuplesId.get(), resTuplesAcc),
-        empireBodies.stream().map(EmpireBodyDto::getProduction30days).reduce(resTuplesId.get(), resTuplesAcc),
-        empireBodies.stream().map(EmpireBodyDto::getCapacity).reduce(resTuplesId.get(), resTuplesAcc),
-        empireBodies.stream().flatMap(body -> body.getBuildings().entrySet().stream())
-            .collect(Collectors.toMap(
-                Map.Entry::getKey,
-                e -> Tuple.of((long) e.getValue()._1, (long) e.getValue()._2),
-                (a, b) -> Tuple.of(a._1 + b._1, a._2 + b._2),
-                () -> new EnumMap<>(BuildingKindDto.class)
-            )),
-        empireBodies.stream().flatMap(body -> body.getUnits().entrySet().stream())
-            .collect(Collectors.toMap(
-                Map.Entry::getKey,
-                e -> Tuple.of((long) e.getValue()._1, (long) e.getValue()._2),
-                (a, b) -> Tuple.of(a._1 + b._1, a._2 + b._2),
-                () -> new EnumMap<>(UnitKindDto.class)
-            )));
-
-    // Average.
-    final int size = empireBodies.size();
+    return new EmpireBodyDto(body.getId(), body.getName(), Converter.convert(body.getCoordinates()),
+        Converter.convert(body.getType()), body.getImage(), body.getDiameter(), usedFields, maxFields,
+        body.getTemperature(), resources, availableEnergy, totalEnergy, productionHourly, productionDaily,
+        productionWeekly, production30days, capacity, buildings, units);
+  }
+
+  private static EmpireBodyDto withResources(EmpireBodyDto row, Tuple2<ResourcesDto, Long> resources) {
+    if (row.getResources() == resources) {
+      return row;
+    }
+    return new EmpireBodyDto(row.getId(), row.getName(), row.getCoordinates(), row.getType(), row.getImage(),
+        row.getDiameter(), row.getUsedFields(), row.getMaxFields(), row.getTemperature(), resources,
+        row.getAvailableEnergy(), row.getTotalEnergy(), row.getProductionHourly(), row.getProductionDaily(),
+        row.getProductionWeekly(), row.getProduction30days(), row.getCapacity(), row.getBuildings(), row.getUnits());
+  }
+
+  // Sums of resources and their totals, accumulated without creating intermediate objects.
+  private static class ResourcesSum {
+    double metal;
+    double crystal;
+    double deuterium;
+    long total;
+
+    void add(Tuple2<ResourcesDto, Long> t) {
+      metal += t._1.getMetal();
+      crystal += t._1.getCrystal();
+      deuterium += t._1.getDeuterium();
+      total += t._2;
+    }
+
+    Tuple2<ResourcesDto, Long> get() {
+      return Tuple.of(new ResourcesDto(metal, crystal, deuterium), total);
+    }
+  }
+
+  private static EmpireSummaryDto<Long> sumEmpire(List<EmpireBodyDto> empireBodies) {
+    long diameter = 0;
+    long usedFields = 0;
+    long maxFields = 0;
+    long temperature = 0;
+    long availableEnergy = 0;
+    long totalEnergy = 0;
+    var resources = new ResourcesSum();
+    var productionHourly = new ResourcesSum();
+    var productionDaily = new ResourcesSum();
+    var productionWeekly = new ResourcesSum();
+    var production30days = new ResourcesSum();
+    var capacity = new ResourcesSum();
+    var buildings = new EnumMap<BuildingKindDto, Tuple2<Long, Long>>(BuildingKindDto.class);
+    var units = new EnumMap<UnitKindDto, Tuple2<Long, Long>>(UnitKindDto.class);
+    BinaryOperator<Tuple2<Long, Long>> add = (a, b) -> Tuple.of(a._1 + b._1, a._2 + b._2);
+
+    for (var body : empireBodies) {
+      diameter += body.getDiameter();
+      usedFields += body.getUsedFields();
+      maxFields += body.getMaxFields();
+      temperature += body.getTemperature();
+      availableEnergy += body.getAvailableEnergy();
+      totalEnergy += body.getTotalEnergy();
+      resources.add(body.getResources());
+      productionHourly.add(body.getProductionHourly());
+      productionDaily.add(body.getProductionDaily());
+      productionWeekly.add(body.getProductionWeekly());
+      production30days.add(body.getProduction30days());
+      capacity.add(body.getCapacity());
+      for (var entry : body.getBuildings().entrySet()) {
+        var t = entry.getValue();
+        buildings.merge(entry.getKey(), Tuple.of((long) t._1, (long) t._2), add);
+      }
+      for (var entry : body.getUnits().entrySet()) {
+        var t = entry.getValue();
+        units.merge(entry.getKey(), Tuple.of((long) t._1, (long) t._2), add);
+      }
+    }
+
+    return new EmpireSummaryDto<>(diameter, usedFields, maxFields, temperature, resources.get(), availableEnergy,
+        totalEnergy, productionHourly.get(), productionDaily.get(), productionWeekly.get(), production30days.get(),
+        capacity.get(), buildings, units);
+  }
+
+  private static EmpireSummaryDto<Double> averageEmpire(EmpireSummaryDto<Long> total, int size) {
     assert size > 0;
     Function<Tuple2<ResourcesDto, Long>, Tuple2<ResourcesDto, Double>> resTuplesAvg = (t) -> {
       ResourcesDto r = t._1;
@@ -510,7 +621,19 @@ class BodyServiceImpl implements BodyServiceInternal {
           new ResourcesDto(r.getMetal() / size, r.getCrystal() / size, r.getDeuterium() / size),
           (double) t._2 / size);
     };
-    EmpireSummaryDto<Double> average = new EmpireSummaryDto<>(
+    Function<Tuple2<Long, Long>, Tuple2<Double, Double>> levelsAvg =
+        (t) -> Tuple.of((double) t._1 / size, (double) t._2 / size);
+
+    var buildings = new EnumMap<BuildingKindDto, Tuple2<Double, Double>>(BuildingKindDto.class);
+    for (var entry : total.getBuildings().entrySet()) {
+      buildings.put(entry.getKey(), levelsAvg.apply(entry.getValue()));
+    }
+    var units = new EnumMap<UnitKindDto, Tuple2<Double, Double>>(UnitKindDto.class);
+    for (var entry : total.getUnits().entrySet()) {
+      units.put(entry.getKey(), levelsAvg.apply(entry.getValue()));
+    }
+
+    return new EmpireSummaryDto<>(
         (double) total.getDiameter() / size,
         (double) total.getUsedFields() / size,
         (double) total.getMaxFields() / size,
@@ -523,31 +646,8 @@ class BodyServiceImpl implements BodyServiceInternal {
         resTuplesAvg.apply(total.getProductionWeekly()),
         resTuplesAvg.apply(total.getProduction30days()),
         resTuplesAvg.apply(total.getCapacity()),
-        total.getBuildings().entrySet().stream()
-            .collect(Collectors.toMap(
-                Map.Entry::getKey,
-                e -> Tuple.of((double) e.getValue()._1 / size, (double) e.getValue()._2 / size),
-                (a, b) -> {
-                  throw new IllegalStateException();
-                },
-                () -> new EnumMap<>(BuildingKindDto.class)
-            )),
-        total.getUnits().entrySet().stream()
-            .collect(Collectors.toMap(
-                Map.Entry::getKey,
-                e -> Tuple.of((double) e.getValue()._1 / size, (double) e.getValue()._2 / size),
-                (a, b) -> {
-                  throw new IllegalStateException();
-                },
-                () -> new EnumMap<>(UnitKindDto.class)
-            )));
-
-    // Sort.
-    BodyKeyExtractors<EmpireBodyDto> keyExtractors = new BodyKeyExtractors<>(EmpireBodyDto::getId,
-        EmpireBodyDto::getCoordinates, EmpireBodyDto::getName);
-    sort(empireBodies, keyExtractors, user);
-
-    return new EmpireDto(empireBodies, total, average);
+        buildings,
+        units);
   }
 
   private static <T> void sort(List<T> bodies, BodyKeyExtractors<T> extractors, User user) {
@@ -610,12 +710,52 @@ class BodyServiceImpl implements BodyServiceInternal {
     return body;
   }
 
+  @Override
+  public Body getProjected(long bodyId) {
+    var body = bodyRepository.getById(bodyId);
+    var now = Date.from(Instant.ofEpochSecond(Instant.now().getEpochSecond()));
+    projectResourcesAndShipyard(body, now);
+    return body;
+  }
+
   @Override
   public void updateResourcesAndShipyard(Body body, Date at) {
+    makeWritable(body);
     shipyardServiceInternal.update(body, at);
     updateResources(body, at);
   }
 
+  @Override
+  public void projectResourcesAndShipyard(Body body, Date at) {
+    // Read-only entities are not dirty checked, thus the projected state is not flushed. Outside of a persistence
+    // context nothing is flushed anyway. The body stays in the persistence context, as the callers read its lazy
+    // associations. Instead, it's marked as projected, and its setters fail until it's updated, so that a change made
+    // without updating the body first isn't silently lost.
+    if (entityManager.contains(body)) {
+      entityManager.unwrap(Session.class).setReadOnly(body, true);
+    }
+    body.setProjected(false);
+    try {
+      shipyardServiceInternal.project(body, at);
+      updateResources(body, at);
+    } finally {
+      body.setProjected(true);
+    }
+  }
+
+  // A body projected earlier in the same persistence context (e.g. by the body context of the request) must be reloaded
+  // before it's modified, otherwise the projected state would be taken for the persisted one.
+  private void makeWritable(Body body) {
+    if (entityManager.contains(body)) {
+      var session = entityManager.unwrap(Session.class);
+      if (session.isReadOnly(body)) {
+        entityManager.refresh(body);
+        session.setReadOnly(body, false);
+      }
+    }
+    body.setProjected(false);
+  }
+
   private void updateResources(Body body, Date at) {
     Date updatedAt = body.getUpdatedAt();
 
@@ -668,52 +808,72 @@ class BodyServiceImpl implements BodyServiceInternal {
       return new ProductionDto(1.0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
     }
 
+    ProductionItemsDto items = getProductionItems(body);
+    ProductionFactors factors = body.getProductionFactors();
+    // The technologies are read only when they matter, so that they don't split the cache needlessly, and the user is
+    // not loaded for nothing.
+    var energyTechnologyLevel = items.getFusionReactorLevel() == 0 ? 0 :
+        body.getUser().getTechnologyLevel(TechnologyKind.ENERGY_TECHNOLOGY);
+    var plasmaTechnologyLevel = !plasmaTechnologyAffectsProduction ? 0 :
+        body.getUser().getTechnologyLevel(TechnologyKind.PLASMA_TECHNOLOGY);
+    var key = new ProductionKey(items.getMetalMineLevel(), items.getCrystalMineLevel(),
+        items.getDeuteriumSynthesizerLevel(), items.getSolarPlantLevel(), items.getFusionReactorLevel(),
+        items.getNumSolarSatellites(), factors.getMetalMineFactor(), factors.getCrystalMineFactor(),
+        factors.getDeuteriumSynthesizerFactor(), factors.getSolarPlantFactor(), factors.getFusionReactorFactor(),
+        factors.getSolarSatellitesFactor(), body.getTemperature(), energyTechnologyLevel, plasmaTechnologyLevel);
+
+    var production = productionCache.getIfPresent(key);
+    if (production == null) {
+      production = calcProduction(key);
+      productionCache.put(key, production);
+    }
+    return production;
+  }
+
+  private ProductionDto calcProduction(ProductionKey key) {
     // Base production.
     int metalBaseProduction = this.metalBaseProduction * productionSpeed;
     int crystalBaseProduction = this.crystalBaseProduction * productionSpeed;
     int deuteriumBaseProduction = this.deuteriumBaseProduction * productionSpeed;
 
-    ProductionItemsDto items = getProductionItems(body);
-    ProductionFactors factors = body.getProductionFactors();
-
     // Metal mine.
-    int metalMineLevel = items.getMetalMineLevel();
-    double metalMineFactor = 0.1 * factors.getMetalMineFactor();
+    int metalMineLevel = key.metalMineLevel();
+    double metalMineFactor = 0.1 * key.metalMineFactor();
     int metalMineProduction = (int) (metalMineBaseProduction * metalMineLevel * Math.pow(1.1, metalMineLevel) *
         metalMineFactor) * productionSpeed;
     int metalMineMaxEnergyUsage = (int) Math.ceil(metalMineBaseEnergyUsage * metalMineLevel *
         Math.pow(1.1, metalMineLevel) * metalMineFactor);
 
     // Crystal mine.
-    int crystalMineLevel = items.getCrystalMineLevel();
-    double crystalMineFactor = 0.1 * factors.getCrystalMineFactor();
+    int crystalMineLevel = key.crystalMineLevel();
+    double crystalMineFactor = 0.1 * key.crystalMineFactor();
     int crystalMineProduction = (int) (crystalMineBaseProduction * crystalMineLevel *
         Math.pow(1.1, crystalMineLevel) * crystalMineFactor) * productionSpeed;
     int crystalMineMaxEnergyUsage = (int) Math.ceil(crystalMineBaseEnergyUsage * crystalMineLevel *
         Math.pow(1.1, crystalMineLevel) * crystalMineFactor);
 
     // Deuterium synthesizer.
-    int deuteriumSynthesizerLevel = items.getDeuteriumSynthesizerLevel();
-    double deuteriumSynthesizerFactor = 0.1 * factors.getDeuteriumSynthesizerFactor();
+    int deuteriumSynthesizerLevel = key.deuteriumSynthesizerLevel();
+    double deuteriumSynthesizerFactor = 0.1 * key.deuteriumSynthesizerFactor();
     int deuteriumSynthesizerProduction = (int) (deuteriumSynthesizerBaseProduction * deuteriumSynthesizerLevel *
-        Math.pow(1.1, deuteriumSynthesizerLevel) * (1.28 - 0.002 * body.getTemperature()) *
+        Math.pow(1.1, deuteriumSynthesizerLevel) * (1.28 - 0.002 * key.temperature()) *
         deuteriumSynthesizerFactor) * productionSpeed;
     int deuteriumSynthesizerMaxEnergyUsage = (int) Math.ceil(deuteriumSynthesizerBaseEnergyUsage *
         deuteriumSynthesizerLevel * Math.pow(1.1, deuteriumSynthesizerLevel) * deuteriumSynthesizerFactor);
 
     // Solar plant.
-    int solarPlantLevel = items.getSolarPlantLevel();
-    double solarPlantFactor = 0.1 * factors.getSolarPlantFactor();
+    int solarPlantLevel = key.solarPlantLevel();
+    double solarPlantFactor = 0.1 * key.solarPlantFactor();
     int solarPlantEnergyProduction = (int) (solarPlantBaseEnergyProduction * solarPlantLevel *
         Math.pow(1.1, solarPlantLevel) * solarPlantFactor);
 
     // Fusion reactor.
     int fusionReactorDeuteriumUsage = 0;
     int fusionReactorEnergyProduction = 0;
-    int fusionReactorLevel = items.getFusionReactorLevel();
+    int fusionReactorLevel = key.fusionReactorLevel();
     if (fusionReactorLevel != 0) {
-      var energyTechnologyLevel = body.getUser().getTechnologyLevel(TechnologyKind.ENERGY_TECHNOLOGY);
-      double fusionReactorFactor = 0.1 * factors.getFusionReactorFactor();
+      var energyTechnologyLevel = key.energyTechnologyLevel();
+      double fusionReactorFactor = 0.1 * key.fusionReactorFactor();
       fusionReactorDeuteriumUsage = (int) Math.ceil(fusionReactorBaseDeuteriumUsage * fusionReactorLevel *
           Math.pow(1.1, fusionReactorLevel) * fusionReactorFactor) * productionSpeed;
       fusionReactorEnergyProduction = (int) Math.round(Math.floor(fusionReactorBaseEnergyProduction *
@@ -722,9 +882,9 @@ class BodyServiceImpl implements BodyServiceInternal {
     }
 
     // Solar satellites.
-    int numSolarSatellites = items.getNumSolarSatellites();
-    double solarSatellitesFactor = 0.1 * factors.getSolarSatellitesFactor();
-    int singleSatelliteEnergy = Math.max(5, Math.min(50, (int) Math.floor(body.getTemperature() / 4.0 + 20.0)));
+    int numSolarSatellites = key.numSolarSatellites();
+    double solarSatellitesFactor = 0.1 * key.solarSatellitesFactor();
+    int singleSatelliteEnergy = Math.max(5, Math.min(50, (int) Math.floor(key.temperature() / 4.0 + 20.0)));
     int solarSatellitesEnergyProduction = (int) Math.round(singleSatelliteEnergy * numSolarSatellites *
         solarSatellitesFactor);
 
@@ -744,7 +904,7 @@ class BodyServiceImpl implements BodyServiceInternal {
     int plasmaCrystalBonus = 0;
     int plasmaDeuteriumBonus = 0;
     if (plasmaTechnologyAffectsProduction) {
-      var plasmaTechLevel = body.getUser().getTechnologyLevel(TechnologyKind.PLASMA_TECHNOLOGY);
+      var plasmaTechLevel = key.plasmaTechnologyLevel();
       plasmaMetalBonus = (int) Math.round(metalMineProduction * plasmaTechLevel * 0.01 * efficiency);
       plasmaCrystalBonus = (int) Math.round(crystalMineProduction * plasmaTechLevel * 0.0066 * efficiency);
       plasmaDeuteriumBonus = (int) Math.round(deuteriumSynthesizerProduction * plasmaTechLevel * 0.0033 * efficiency);
@@ -797,6 +957,8 @@ class BodyServiceImpl implements BodyServiceInternal {
   public void setProductionFactors(long bodyId, ProductionFactorsDto factors) {
     var body = getUpdated(bodyId);
     body.setProductionFactors(Converter.convert(factors));
+
+    cacheObserver.notifyBodyUpdated(bodyId, body.getCoordinates());
   }
 
   @Override
@@ -805,7 +967,7 @@ class BodyServiceImpl implements BodyServiceInternal {
     var body = getUpdated(bodyId);
     body.setName(name);
 
-    cacheObserver.notifyBodyUpdated(bodyId);
+    cacheObserver.notifyBodyUpdated(bodyId, body.getCoordinates());
   }
 
   @Override
@@ -815,6 +977,8 @@ class BodyServiceImpl implements BodyServiceInternal {
     if (body.getCoordinates().getKind() == CoordinatesKind.PLANET) {
       body.setImage(image);
     }
+
+    cacheObserver.notifyBodyUpdated(bodyId, body.getCoordinates());
   }
 
   @Override
@@ -870,7 +1034,7 @@ class BodyServiceImpl implements BodyServiceInternal {
   }
 
   private void delete(Body body) {
-    cacheObserver.notifyBodyDeleted(body.getUser().getId(), body.getId());
+    cacheObserver.notifyBodyDeleted(body.getUser().getId(), body.getId(), body.getCoordinates());
 
     buildingsServiceInternal.deleteBuildingsAndQueue(body);
     bodyRepository.delete(body);
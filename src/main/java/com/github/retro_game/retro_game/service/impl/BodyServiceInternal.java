@@ -12,6 +12,11 @@ public interface BodyServiceInternal extends BodyService {
   // Returns body with updated resources & shipyard.
   Body getUpdated(long bodyId);
 
+  // Returns body with resources & shipyard projected to now. The body is marked read-only in the persistence context,
+  // thus the projection is never written to the database. For read paths only, mutations must use getUpdated(), the
+  // setters of a projected body throw IllegalStateException.
+  Body getProjected(long bodyId);
+
   int getUsedFields(Body body);
 
   int getMaxFields(Body body);
@@ -20,6 +25,9 @@ public interface BodyServiceInternal extends BodyService {
 
   void updateResourcesAndShipyard(Body body, Date at);
 
+  // The same as above, but without persisting the changes, see getProjected().
+  void projectResourcesAndShipyard(Body body, Date at);
+
   ProductionDto getProduction(Body body);
 
   void destroyMoon(Body moon);
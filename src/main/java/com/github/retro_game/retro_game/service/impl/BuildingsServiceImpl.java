@@ -21,8 +21,6 @@ import org.springframework.util.Assert;
 import javax.annotation.PostConstruct;
 import java.time.Instant;
 import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 @Service
 public class BuildingsServiceImpl implements BuildingsServiceInternal {
@@ -44,9 +42,10 @@ public class BuildingsServiceImpl implements BuildingsServiceInternal {
 
     State(Body body, SortedMap<Integer, BuildingQueueEntry> queue) {
       buildings = new EnumMap<>(BuildingKind.class);
-      for (var entry : body.getBuildings().entrySet()) {
-        var level = entry.getValue();
-        buildings.put(entry.getKey(), level);
+      var view = body.getBuildingsView();
+      for (var i = 0; i < view.size(); i++) {
+        var level = view.get(i);
+        buildings.put(view.getKind(i), level);
         usedFields += level;
       }
       maxFields = bodyServiceInternal.getMaxFields(body, buildings);
@@ -120,7 +119,7 @@ public class BuildingsServiceImpl implements BuildingsServiceInternal {
   @Override
   @Transactional(isolation = Isolation.REPEATABLE_READ, readOnly = true)
   public BuildingsAndQueuePairDto getBuildingsAndQueuePair(long bodyId) {
-    var body = bodyServiceInternal.getUpdated(bodyId);
+    var body = bodyServiceInternal.getProjected(bodyId);
     var production = bodyServiceInternal.getProduction(body);
     var state = new State(body, null);
     var queue = getQueueAndUpdateState(state, body, production);
@@ -267,16 +266,14 @@ public class BuildingsServiceImpl implements BuildingsServiceInternal {
   @Override
   public Map<BuildingKind, Tuple2<Integer, Integer>> getCurrentAndFutureLevels(Body body) {
     State state = new State(body, body.getBuildingQueue());
-    return Arrays.stream(BuildingKind.values())
-        .filter(kind -> body.getBuildingLevel(kind) != 0 || state.buildings.getOrDefault(kind, 0) != 0)
-        .collect(Collectors.toMap(
-            Function.identity(),
-            kind -> Tuple.of(body.getBuildingLevel(kind), state.buildings.getOrDefault(kind, 0)),
-            (a, b) -> {
-              throw new IllegalStateException();
-            },
-            () -> new EnumMap<>(BuildingKind.class)
-        ));
+    var levels = new EnumMap<BuildingKind, Tuple2<Integer, Integer>>(BuildingKind.class);
+    body.getBuildingsView().forEach((kind, level) -> {
+      int future = state.buildings.getOrDefault(kind, 0);
+      if (level != 0 || future != 0) {
+        levels.put(kind, Tuple.of(level, future));
+      }
+    });
+    return levels;
   }
 
   @Override
@@ -667,6 +664,18 @@ public class BuildingsServiceImpl implements BuildingsServiceInternal {
     body.setBuildingQueue(queue);
   }
 
+  @Override
+  @Transactional(isolation = Isolation.REPEATABLE_READ)
+  public void handleAll(List<Event> events) {
+    for (var event : events) {
+      // An earlier event of the batch could have deleted or rescheduled the event.
+      var current = eventRepository.findById(event.getId());
+      if (current.isPresent() && current.get().getAt().getTime() == event.getAt().getTime()) {
+        handle(current.get());
+      }
+    }
+  }
+
   @Override
   @Transactional(isolation = Isolation.REPEATABLE_READ)
   public void handle(Event event) {
@@ -11,13 +11,28 @@ import com.github.retro_game.retro_game.entity.UnitKind;
 import com.github.retro_game.retro_game.model.unit.UnitItem;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.List;
 
 public class CombatReportSerialization {
-  public static byte[] serialize(List<Combatant> attackers, List<Combatant> defenders, BattleOutcome battleOutcome) {
+  // The original format (v1) starts with the number of attackers, which is never 0. Thus, 0 as the first byte marks
+  // the formats introduced later, the next byte is the format.
+  private static final int TAGGED_FORMAT_MARKER = 0;
+  // Only the rules of the battle engine and the combatants are stored, the rounds are regenerated from the seed of the
+  // report by an engine with the same rules.
+  private static final int INPUTS_ONLY_FORMAT = 1;
+  // Varints instead of fixed-width numbers, groups with no stats are omitted, and the remaining units are stored as the
+  // number of units lost since the previous round.
+  private static final int V2_FORMAT = 2;
+
+  private static final int NUM_ROUND_UNIT_GROUP_FIELDS = 7;
+
+  // The v1 format is still written when retro-game.combat-report-format=v1, so that the reports can be read after a
+  // downgrade to a version which doesn't know v2.
+  public static byte[] serializeV1(List<Combatant> attackers, List<Combatant> defenders,
+                                   BattleOutcome battleOutcome) {
     try {
       var byteArrayOutputStream = new ByteArrayOutputStream();
       var stream = new DataOutputStream(byteArrayOutputStream);
@@ -30,15 +45,55 @@ public class CombatReportSerialization {
     }
   }
 
+  public static byte[] serialize(List<Combatant> attackers, List<Combatant> defenders, BattleOutcome battleOutcome) {
+    var writer = new Writer();
+    writer.writeByte(TAGGED_FORMAT_MARKER);
+    writer.writeByte(V2_FORMAT);
+    storeCombatantsV2(writer, attackers);
+    storeCombatantsV2(writer, defenders);
+    storeRoundsV2(writer, attackers, defenders, battleOutcome);
+    return writer.toByteArray();
+  }
+
+  // The combatants are stored the same way as in v2.
+  public static byte[] serializeInputs(String rules, List<Combatant> attackers, List<Combatant> defenders) {
+    var writer = new Writer();
+    writer.writeByte(TAGGED_FORMAT_MARKER);
+    writer.writeByte(INPUTS_ONLY_FORMAT);
+    writer.writeString(rules);
+    storeCombatantsV2(writer, attackers);
+    storeCombatantsV2(writer, defenders);
+    return writer.toByteArray();
+  }
+
   public record Data(ArrayList<CombatReportCombatantDto> attackers, ArrayList<CombatReportCombatantDto> defenders,
                      ArrayList<CombatReportRoundDto> rounds) {
   }
 
+  public record Inputs(String rules, List<Combatant> attackers, List<Combatant> defenders) {
+  }
+
+  private static boolean isFormat(byte[] data, int format) {
+    return data.length >= 2 && data[0] == TAGGED_FORMAT_MARKER && data[1] == format;
+  }
+
+  public static boolean isInputsOnly(byte[] data) {
+    return isFormat(data, INPUTS_ONLY_FORMAT);
+  }
+
   public static Data deserialize(byte[] data) {
+    assert !isInputsOnly(data);
+    if (isFormat(data, V2_FORMAT)) {
+      var reader = new Reader(data, 2);
+      var attackers = loadCombatantsV2(reader);
+      var defenders = loadCombatantsV2(reader);
+      var rounds = loadRoundsV2(reader, attackers, defenders);
+      return new Data(convert(attackers), convert(defenders), rounds);
+    }
     try {
       var stream = new DataInputStream(new ByteArrayInputStream(data));
-      var attackers = loadCombatants(stream);
-      var defenders = loadCombatants(stream);
+      var attackers = convert(loadCombatants(stream));
+      var defenders = convert(loadCombatants(stream));
       var rounds = loadRounds(stream);
       return new Data(attackers, defenders, rounds);
     } catch (IOException e) {
@@ -46,6 +101,24 @@ public class CombatReportSerialization {
     }
   }
 
+  public static Inputs deserializeInputs(byte[] data) {
+    assert isInputsOnly(data);
+    var reader = new Reader(data, 2);
+    var rules = reader.readString();
+    var attackers = loadCombatantsV2(reader);
+    var defenders = loadCombatantsV2(reader);
+    return new Inputs(rules, attackers, defenders);
+  }
+
+  // The rounds go through the stored format, so that the regenerated report is exactly the same as the stored one
+  // would be.
+  public static Data regenerate(Inputs inputs, BattleOutcome battleOutcome) {
+    var writer = new Writer();
+    storeRoundsV2(writer, inputs.attackers, inputs.defenders, battleOutcome);
+    var rounds = loadRoundsV2(new Reader(writer.toByteArray(), 0), inputs.attackers, inputs.defenders);
+    return new Data(convert(inputs.attackers), convert(inputs.defenders), rounds);
+  }
+
   private static void storeCombatants(DataOutputStream stream, List<Combatant> combatants) throws IOException {
     var numCombatants = combatants.size();
     assert numCombatants <= 255;
@@ -55,9 +128,9 @@ public class CombatReportSerialization {
     }
   }
 
-  private static ArrayList<CombatReportCombatantDto> loadCombatants(DataInputStream stream) throws IOException {
+  private static ArrayList<Combatant> loadCombatants(DataInputStream stream) throws IOException {
     var numCombatants = stream.readUnsignedByte();
-    var combatants = new ArrayList<CombatReportCombatantDto>(numCombatants);
+    var combatants = new ArrayList<Combatant>(numCombatants);
     for (var i = 0; i < numCombatants; i++) {
       var combatant = loadCombatant(stream);
       combatants.add(combatant);
@@ -65,6 +138,14 @@ public class CombatReportSerialization {
     return combatants;
   }
 
+  private static ArrayList<CombatReportCombatantDto> convert(List<Combatant> combatants) {
+    var dtos = new ArrayList<CombatReportCombatantDto>(combatants.size());
+    for (var combatant : combatants) {
+      dtos.add(convert(combatant));
+    }
+    return dtos;
+  }
+
   private static void storeCombatant(DataOutputStream stream, Combatant combatant) throws IOException {
     stream.writeLong(combatant.userId());
 
@@ -93,7 +174,7 @@ public class CombatReportSerialization {
     }
   }
 
-  private static CombatReportCombatantDto loadCombatant(DataInputStream stream) throws IOException {
+  private static Combatant loadCombatant(DataInputStream stream) throws IOException {
     var userId = stream.readLong();
     assert userId > 0;
 
@@ -101,18 +182,33 @@ public class CombatReportSerialization {
     var s = stream.readInt();
     var p = stream.readInt();
     var k = CoordinatesKind.values()[stream.readUnsignedByte()];
-    var coords = Converter.convert(new Coordinates(g, s, p, k));
+    var coords = new Coordinates(g, s, p, k);
 
     var weaponsTechnology = stream.readUnsignedByte();
     var shieldingTechnology = stream.readUnsignedByte();
     var armorTechnology = stream.readUnsignedByte();
 
-    var unitGroups = new EnumMap<UnitKindDto, CombatReportUnitGroupDto>(UnitKindDto.class);
+    var unitGroups = new EnumMap<UnitKind, Long>(UnitKind.class);
     var numGroups = stream.readUnsignedByte();
     for (var i = 0; i < numGroups; i++) {
       var kind = UnitKind.values()[stream.readUnsignedByte()];
       var count = stream.readLong();
       assert count > 0;
+      unitGroups.put(kind, count);
+    }
+
+    return new Combatant(userId, coords, weaponsTechnology, shieldingTechnology, armorTechnology, unitGroups);
+  }
+
+  private static CombatReportCombatantDto convert(Combatant combatant) {
+    var weaponsTechnology = combatant.weaponsTechnology();
+    var shieldingTechnology = combatant.shieldingTechnology();
+    var armorTechnology = combatant.armorTechnology();
+
+    var unitGroups = new EnumMap<UnitKindDto, CombatReportUnitGroupDto>(UnitKindDto.class);
+    for (var entry : combatant.unitGroups().entrySet()) {
+      var kind = entry.getKey();
+      var count = entry.getValue();
 
       var item = UnitItem.get(kind);
       var weapons = (1.0 + 0.1 * weaponsTechnology) * item.getBaseWeapons();
@@ -122,8 +218,8 @@ public class CombatReportSerialization {
       unitGroups.put(Converter.convert(kind), new CombatReportUnitGroupDto(count, weapons, shields, armor));
     }
 
-    return new CombatReportCombatantDto(userId, coords, weaponsTechnology, shieldingTechnology, armorTechnology,
-        unitGroups);
+    return new CombatReportCombatantDto(combatant.userId(), Converter.convert(combatant.coordinates()),
+        weaponsTechnology, shieldingTechnology, armorTechnology, unitGroups);
   }
 
   private static void storeRounds(DataOutputStream stream, List<Combatant> attackers, List<Combatant> defenders,
@@ -153,20 +249,21 @@ public class CombatReportSerialization {
 
   private static void storeRoundCombatants(DataOutputStream stream, List<Combatant> combatants,
                                            List<CombatantOutcome> outcomes, int round) throws IOException {
-    int[] numActiveGroups = outcomes.stream().mapToInt(
-        outcome -> (int) outcome.getNthRoundUnitGroupsStats(round).values().stream().filter(s -> s.timesFired() > 0)
-            .count()).toArray();
-
-    var numActiveCombatants = (int) Arrays.stream(numActiveGroups).filter(n -> n != 0).count();
+    var numActiveCombatants = 0;
+    for (var outcome : outcomes) {
+      if (countActiveGroups(outcome.getNthRoundUnitGroupsStats(round)) > 0) {
+        numActiveCombatants++;
+      }
+    }
     assert numActiveCombatants <= 255;
     stream.writeByte(numActiveCombatants);
 
     for (var i = 0; i < outcomes.size(); i++) {
-      var numActive = numActiveGroups[i];
-      if (numActive > 0) {
-        var userId = combatants.get(i).userId();
-        var unitGroupsStats = outcomes.get(i).getNthRoundUnitGroupsStats(round);
-        storeRoundCombatant(stream, userId, unitGroupsStats, numActive);
+      var unitGroupsStats = outcomes.get(i).getNthRoundUnitGroupsStats(round);
+      var numActiveGroups = countActiveGroups(unitGroupsStats);
+      if (numActiveGroups > 0) {
+        stream.writeLong(combatants.get(i).userId());
+        storeRoundUnitGroups(stream, unitGroupsStats, numActiveGroups);
       }
     }
   }
@@ -182,13 +279,6 @@ public class CombatReportSerialization {
     return combatants;
   }
 
-  private static void storeRoundCombatant(DataOutputStream stream, long userId,
-                                          EnumMap<UnitKind, UnitGroupStats> unitGroupsStats, int numActiveGroups)
-      throws IOException {
-    stream.writeLong(userId);
-    storeRoundUnitGroups(stream, unitGroupsStats, numActiveGroups);
-  }
-
   private static CombatReportRoundCombatantDto loadRoundCombatant(DataInputStream stream) throws IOException {
     var userId = stream.readLong();
     var unitGroups = loadRoundUnitGroups(stream);
@@ -200,11 +290,9 @@ public class CombatReportSerialization {
     assert numActiveGroups <= 255;
     stream.writeByte(numActiveGroups);
     for (var entry : unitGroupsStats.entrySet()) {
-      var kind = entry.getKey();
       var stats = entry.getValue();
-      var active = stats.timesFired() > 0;
-      if (active) {
-        stream.writeByte(kind.ordinal());
+      if (stats.timesFired() > 0) {
+        stream.writeByte(entry.getKey().ordinal());
         stream.writeLong(stats.timesFired());
         stream.writeLong(stats.timesWasShot());
         stream.writeLong((long) stats.shieldDamageDealt());
@@ -235,4 +323,261 @@ public class CombatReportSerialization {
     }
     return groups;
   }
+
+  private static final class Writer extends ByteArrayOutputStream {
+    private void writeByte(int value) {
+      assert value >= 0 && value <= 255;
+      write(value);
+    }
+
+    // LEB128, 7 bits per byte, the highest bit is set if more bytes follow.
+    private void writeVarLong(long value) {
+      assert value >= 0;
+      while ((value & ~0x7FL) != 0) {
+        write((int) (value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      write((int) value);
+    }
+
+    private void writeString(String value) {
+      var bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVarLong(bytes.length);
+      write(bytes, 0, bytes.length);
+    }
+  }
+
+  private static final class Reader {
+    private final byte[] data;
+    private int position;
+
+    private Reader(byte[] data, int position) {
+      this.data = data;
+      this.position = position;
+    }
+
+    private int readUnsignedByte() {
+      return data[position++] & 0xFF;
+    }
+
+    private long readVarLong() {
+      var value = 0L;
+      var shift = 0;
+      int b;
+      do {
+        b = data[position++];
+        value |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+
+    private int readVarInt() {
+      return Math.toIntExact(readVarLong());
+    }
+
+    private String readString() {
+      var length = readVarInt();
+      var value = new String(data, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return value;
+    }
+  }
+
+  private static void storeCombatantsV2(Writer writer, List<Combatant> combatants) {
+    writer.writeVarLong(combatants.size());
+    for (var combatant : combatants) {
+      writer.writeVarLong(combatant.userId());
+
+      var coords = combatant.coordinates();
+      writer.writeVarLong(coords.getGalaxy());
+      writer.writeVarLong(coords.getSystem());
+      writer.writeVarLong(coords.getPosition());
+      writer.writeByte(coords.getKind().ordinal());
+
+      writer.writeVarLong(combatant.weaponsTechnology());
+      writer.writeVarLong(combatant.shieldingTechnology());
+      writer.writeVarLong(combatant.armorTechnology());
+
+      var unitGroups = combatant.unitGroups();
+      writer.writeVarLong(unitGroups.values().stream().filter(i -> i != 0).count());
+      for (var entry : unitGroups.entrySet()) {
+        var count = entry.getValue();
+        assert count >= 0;
+        if (count > 0) {
+          writer.writeByte(entry.getKey().ordinal());
+          writer.writeVarLong(count);
+        }
+      }
+    }
+  }
+
+  private static ArrayList<Combatant> loadCombatantsV2(Reader reader) {
+    var numCombatants = reader.readVarInt();
+    var combatants = new ArrayList<Combatant>(numCombatants);
+    for (var i = 0; i < numCombatants; i++) {
+      var userId = reader.readVarLong();
+      assert userId > 0;
+
+      var g = reader.readVarInt();
+      var s = reader.readVarInt();
+      var p = reader.readVarInt();
+      var k = CoordinatesKind.values()[reader.readUnsignedByte()];
+
+      var weaponsTechnology = reader.readVarInt();
+      var shieldingTechnology = reader.readVarInt();
+      var armorTechnology = reader.readVarInt();
+
+      var unitGroups = new EnumMap<UnitKind, Long>(UnitKind.class);
+      var numGroups = reader.readVarInt();
+      for (var j = 0; j < numGroups; j++) {
+        var kind = UnitKind.values()[reader.readUnsignedByte()];
+        var count = reader.readVarLong();
+        assert count > 0;
+        unitGroups.put(kind, count);
+      }
+
+      combatants.add(new Combatant(userId, new Coordinates(g, s, p, k), weaponsTechnology, shieldingTechnology,
+          armorTechnology, unitGroups));
+    }
+    return combatants;
+  }
+
+  // The number of units of each group before the first round, the base of the deltas of the remaining units.
+  private static long[][] initialNumUnits(List<Combatant> combatants) {
+    var numUnits = new long[combatants.size()][UnitKind.values().length];
+    for (var i = 0; i < combatants.size(); i++) {
+      for (var entry : combatants.get(i).unitGroups().entrySet()) {
+        numUnits[i][entry.getKey().ordinal()] = entry.getValue();
+      }
+    }
+    return numUnits;
+  }
+
+  private static void storeRoundsV2(Writer writer, List<Combatant> attackers, List<Combatant> defenders,
+                                    BattleOutcome battleOutcome) {
+    var numRounds = battleOutcome.numRounds();
+    writer.writeVarLong(numRounds);
+
+    var attackersNumUnits = initialNumUnits(attackers);
+    var defendersNumUnits = initialNumUnits(defenders);
+    for (var round = 0; round < numRounds; round++) {
+      storeRoundCombatantsV2(writer, battleOutcome.attackersOutcomes(), attackersNumUnits, round);
+      storeRoundCombatantsV2(writer, battleOutcome.defendersOutcomes(), defendersNumUnits, round);
+    }
+  }
+
+  private static ArrayList<CombatReportRoundDto> loadRoundsV2(Reader reader, List<Combatant> attackers,
+                                                              List<Combatant> defenders) {
+    var numRounds = reader.readVarInt();
+    var rounds = new ArrayList<CombatReportRoundDto>(numRounds);
+    var attackersNumUnits = initialNumUnits(attackers);
+    var defendersNumUnits = initialNumUnits(defenders);
+    for (var i = 0; i < numRounds; i++) {
+      var attackersRound = loadRoundCombatantsV2(reader, attackers, attackersNumUnits);
+      var defendersRound = loadRoundCombatantsV2(reader, defenders, defendersNumUnits);
+      rounds.add(new CombatReportRoundDto(attackersRound, defendersRound));
+    }
+    return rounds;
+  }
+
+  private static int countActiveGroups(EnumMap<UnitKind, UnitGroupStats> unitGroupsStats) {
+    var numActive = 0;
+    for (var stats : unitGroupsStats.values()) {
+      if (stats.timesFired() > 0) {
+        numActive++;
+      }
+    }
+    return numActive;
+  }
+
+  private static void storeRoundCombatantsV2(Writer writer, List<CombatantOutcome> outcomes, long[][] numUnits,
+                                             int round) {
+    var numActiveCombatants = 0;
+    for (var outcome : outcomes) {
+      if (countActiveGroups(outcome.getNthRoundUnitGroupsStats(round)) > 0) {
+        numActiveCombatants++;
+      }
+    }
+    writer.writeVarLong(numActiveCombatants);
+
+    for (var i = 0; i < outcomes.size(); i++) {
+      var unitGroupsStats = outcomes.get(i).getNthRoundUnitGroupsStats(round);
+      var numActiveGroups = countActiveGroups(unitGroupsStats);
+      if (numActiveGroups == 0) {
+        continue;
+      }
+
+      // The index of the combatant instead of the user id, the combatants are stored before the rounds.
+      writer.writeVarLong(i);
+      writer.writeVarLong(numActiveGroups);
+      for (var entry : unitGroupsStats.entrySet()) {
+        var stats = entry.getValue();
+        if (stats.timesFired() == 0) {
+          continue;
+        }
+        var kind = entry.getKey().ordinal();
+
+        var numLost = numUnits[i][kind] - stats.numRemainingUnits();
+        assert numLost >= 0;
+        numUnits[i][kind] = stats.numRemainingUnits();
+
+        var fields = new long[]{
+            stats.timesFired(),
+            stats.timesWasShot(),
+            (long) stats.shieldDamageDealt(),
+            (long) stats.hullDamageDealt(),
+            (long) stats.shieldDamageTaken(),
+            (long) stats.hullDamageTaken(),
+            numLost,
+        };
+        assert fields.length == NUM_ROUND_UNIT_GROUP_FIELDS;
+
+        // One bit per field, only the non-zero fields are written.
+        var mask = 0;
+        for (var j = 0; j < NUM_ROUND_UNIT_GROUP_FIELDS; j++) {
+          if (fields[j] != 0) {
+            mask |= 1 << j;
+          }
+        }
+        writer.writeByte(kind);
+        writer.writeByte(mask);
+        for (var field : fields) {
+          if (field != 0) {
+            writer.writeVarLong(field);
+          }
+        }
+      }
+    }
+  }
+
+  private static ArrayList<CombatReportRoundCombatantDto> loadRoundCombatantsV2(Reader reader,
+                                                                                List<Combatant> combatants,
+                                                                                long[][] numUnits) {
+    var numActiveCombatants = reader.readVarInt();
+    var roundCombatants = new ArrayList<CombatReportRoundCombatantDto>(numActiveCombatants);
+    for (var i = 0; i < numActiveCombatants; i++) {
+      var index = reader.readVarInt();
+      var numActiveGroups = reader.readVarInt();
+      var groups = new EnumMap<UnitKindDto, CombatReportRoundUnitGroupDto>(UnitKindDto.class);
+      for (var j = 0; j < numActiveGroups; j++) {
+        var kind = reader.readUnsignedByte();
+        var mask = reader.readUnsignedByte();
+        var timesFired = (mask & 1) != 0 ? reader.readVarLong() : 0L;
+        var timesWasShot = (mask & 2) != 0 ? reader.readVarLong() : 0L;
+        var shieldDamageDealt = (mask & 4) != 0 ? reader.readVarLong() : 0L;
+        var hullDamageDealt = (mask & 8) != 0 ? reader.readVarLong() : 0L;
+        var shieldDamageTaken = (mask & 16) != 0 ? reader.readVarLong() : 0L;
+        var hullDamageTaken = (mask & 32) != 0 ? reader.readVarLong() : 0L;
+        var numLost = (mask & 64) != 0 ? reader.readVarLong() : 0L;
+        var numRemainingUnits = numUnits[index][kind] - numLost;
+        numUnits[index][kind] = numRemainingUnits;
+        var group = new CombatReportRoundUnitGroupDto(numRemainingUnits, timesFired, timesWasShot, shieldDamageDealt,
+            hullDamageDealt, shieldDamageTaken, hullDamageTaken);
+        groups.put(Converter.convert(UnitKind.values()[kind]), group);
+      }
+      roundCombatants.add(new CombatReportRoundCombatantDto(combatants.get(index).userId(), groups));
+    }
+    return roundCombatants;
+  }
 }
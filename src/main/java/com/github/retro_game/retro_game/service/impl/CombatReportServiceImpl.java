@@ -1,7 +1,9 @@
 package com.github.retro_game.retro_game.service.impl;
 
+import com.github.retro_game.retro_game.battleengine.BattleEngine;
 import com.github.retro_game.retro_game.battleengine.BattleOutcome;
 import com.github.retro_game.retro_game.battleengine.Combatant;
+import com.github.retro_game.retro_game.battleengine.ReplayBattleEngineFactory;
 import com.github.retro_game.retro_game.dto.CombatReportDto;
 import com.github.retro_game.retro_game.dto.MoonCreationResultDto;
 import com.github.retro_game.retro_game.dto.MoonDestructionResultDto;
@@ -11,23 +13,52 @@ import com.github.retro_game.retro_game.entity.Resources;
 import com.github.retro_game.retro_game.repository.CombatReportRepository;
 import com.github.retro_game.retro_game.security.CustomUser;
 import com.github.retro_game.retro_game.service.exception.ReportDoesNotExistException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.Nullable;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
 
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 
 @Service
 public class CombatReportServiceImpl implements CombatReportServiceInternal {
   private static final Logger logger = LoggerFactory.getLogger(CombatReportServiceImpl.class);
+  private final boolean storeRounds;
+  private final boolean writeV1;
+  private final long maxReplayUnits;
+  private final BattleEngine battleEngine;
   private final CombatReportRepository combatReportRepository;
-
-  public CombatReportServiceImpl(CombatReportRepository combatReportRepository) {
+  // Regenerated reports, Guava provides a thread-safe implementation.
+  private final Cache<UUID, CombatReportSerialization.Data> regeneratedCache;
+  // Engines for reports stored with other rules than the rules of the configured engine.
+  private final ReplayBattleEngineFactory replayBattleEngineFactory;
+
+  public CombatReportServiceImpl(@Value("${retro-game.combat-report-storage:full}") String storage,
+                                 @Value("${retro-game.combat-report-format:v2}") String format,
+                                 @Value("${retro-game.combat-report-cache-size:256}") int cacheSize,
+                                 @Value("${retro-game.combat-report-max-replay-units:1000000}") long maxReplayUnits,
+                                 BattleEngine battleEngine, ReplayBattleEngineFactory replayBattleEngineFactory,
+                                 CombatReportRepository combatReportRepository) {
+    Assert.isTrue(storage.equals("full") || storage.equals("seed"),
+        "retro-game.combat-report-storage must be either full or seed");
+    this.storeRounds = storage.equals("full");
+    Assert.isTrue(format.equals("v1") || format.equals("v2"), "retro-game.combat-report-format must be either v1 or v2");
+    this.writeV1 = format.equals("v1");
+    this.maxReplayUnits = maxReplayUnits;
+    this.battleEngine = battleEngine;
+    this.replayBattleEngineFactory = replayBattleEngineFactory;
     this.combatReportRepository = combatReportRepository;
+    this.regeneratedCache = CacheBuilder.newBuilder()
+        .maximumSize(cacheSize)
+        .build();
   }
 
   @Override
@@ -54,7 +85,14 @@ public class CombatReportServiceImpl implements CombatReportServiceInternal {
       deathStarsDestroyed = moonDestructionResult.deathStarsDestroyed();
     }
 
-    var data = CombatReportSerialization.serialize(attackers, defenders, battleOutcome);
+    // The battle engine is deterministic, thus the combatants and the seed are enough to regenerate the rounds. The
+    // rounds are regenerated on the request thread when the report is viewed, thus they are stored for big battles.
+    var replay = !storeRounds && totalUnits(attackers) + totalUnits(defenders) <= maxReplayUnits;
+    var data = replay ?
+        CombatReportSerialization.serializeInputs(battleEngine.rules(), attackers, defenders) :
+        writeV1 ?
+            CombatReportSerialization.serializeV1(attackers, defenders, battleOutcome) :
+            CombatReportSerialization.serialize(attackers, defenders, battleOutcome);
 
     var report =
         new CombatReport(id, at, attackerIds, defenderIds, result, totalAttackersLoss, totalDefendersLoss, plunder,
@@ -90,7 +128,9 @@ public class CombatReportServiceImpl implements CombatReportServiceInternal {
           report.getDeathStarsDestructionChance(), report.getDeathStarsDestroyed());
     }
 
-    var data = CombatReportSerialization.deserialize(report.getData());
+    var data = CombatReportSerialization.isInputsOnly(report.getData()) ?
+        regenerate(report) :
+        CombatReportSerialization.deserialize(report.getData());
 
     return new CombatReportDto(report.getAt(), data.attackers(), data.defenders(), data.rounds(),
         Converter.convert(report.getResult()), report.getAttackersLoss(), report.getDefendersLoss(),
@@ -98,4 +138,34 @@ public class CombatReportServiceImpl implements CombatReportServiceInternal {
         report.getMoonChance(), report.isMoonGiven(), moonDestructionResult, report.getSeed(),
         report.getExecutionTime());
   }
+
+  private static long totalUnits(List<Combatant> combatants) {
+    return combatants.stream()
+        .flatMap(c -> c.unitGroups().values().stream())
+        .mapToLong(Long::longValue)
+        .sum();
+  }
+
+  // Concurrent views of the same report wait for a single regeneration.
+  private CombatReportSerialization.Data regenerate(CombatReport report) {
+    try {
+      return regeneratedCache.get(report.getId(), () -> {
+        var inputs = CombatReportSerialization.deserializeInputs(report.getData());
+        var engine = getBattleEngine(inputs.rules());
+        var battleOutcome = engine.fight(inputs.attackers(), inputs.defenders(), report.getSeed());
+        return CombatReportSerialization.regenerate(inputs, battleOutcome);
+      });
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  // The rounds must be regenerated by an engine with the same rules as the engine which fought the battle, other
+  // engines give different outcomes for the same seed.
+  private BattleEngine getBattleEngine(String rules) {
+    if (rules.equals(battleEngine.rules())) {
+      return battleEngine;
+    }
+    return replayBattleEngineFactory.get(rules);
+  }
 }
@@ -0,0 +1,279 @@
+package com.github.retro_game.retro_game.service.impl;
+
+import com.github.retro_game.retro_game.battleengine.BattleEngine;
+import com.github.retro_game.retro_game.battleengine.Combatant;
+import com.github.retro_game.retro_game.battleengine.CombatantOutcome;
+import com.github.retro_game.retro_game.dto.CombatSimulationCombatantDto;
+import com.github.retro_game.retro_game.dto.CombatSimulationResultDto;
+import com.github.retro_game.retro_game.entity.Coordinates;
+import com.github.retro_game.retro_game.entity.CoordinatesKind;
+import com.github.retro_game.retro_game.entity.Resources;
+import com.github.retro_game.retro_game.entity.UnitKind;
+import com.github.retro_game.retro_game.model.Item;
+import com.github.retro_game.retro_game.model.unit.UnitItem;
+import com.github.retro_game.retro_game.security.CustomUser;
+import com.github.retro_game.retro_game.service.CombatSimulatorService;
+import com.github.retro_game.retro_game.service.exception.SimulatorBusyException;
+import com.github.retro_game.retro_game.service.exception.TooManySimulationsException;
+import com.github.retro_game.retro_game.service.exception.TooManyUnitsException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+class CombatSimulatorServiceImpl implements CombatSimulatorService {
+  private static final Logger logger = LoggerFactory.getLogger(CombatSimulatorServiceImpl.class);
+  private static final int MAX_CACHE_SIZE = 1024;
+  private static final Coordinates SIMULATION_COORDINATES = new Coordinates(1, 1, 1, CoordinatesKind.PLANET);
+
+  // Missiles don't participate in battles.
+  private static final UnitKind[] fightUnitKinds = Arrays.stream(UnitKind.values())
+      .filter(kind -> kind != UnitKind.ANTI_BALLISTIC_MISSILE && kind != UnitKind.INTERPLANETARY_MISSILE)
+      .toArray(UnitKind[]::new);
+
+  private final double fleetRebuildFactor;
+  private final double defenseRebuildFactor;
+  private final double fleetDebrisFactor;
+  private final double defenseDebrisFactor;
+  private final int maxConcurrentSimulationsPerUser;
+  private final long maxUnits;
+  private final long maxSimulatedUnits;
+  private final int timeoutSeconds;
+  private final BattleEngine battleEngine;
+  private final ThreadPoolExecutor executor;
+  private final ConcurrentHashMap<Long, AtomicInteger> numRunningSimulations = new ConcurrentHashMap<>();
+
+  // Simulations are seeded deterministically, the same input gives the same result.
+  private final Cache<SimulationKey, CombatSimulationResultDto> cache = CacheBuilder.newBuilder()
+      .maximumSize(MAX_CACHE_SIZE)
+      .build();
+
+  private record SimulationKey(List<CombatSimulationCombatantDto> attackers,
+                               List<CombatSimulationCombatantDto> defenders, int numSimulations) {
+  }
+
+  public CombatSimulatorServiceImpl(@Value("${retro-game.fleet-rebuild-factor:0.0}") double fleetRebuildFactor,
+                                    @Value("${retro-game.defense-rebuild-factor:0.7}") double defenseRebuildFactor,
+                                    @Value("${retro-game.fleet-debris-factor:0.3}") double fleetDebrisFactor,
+                                    @Value("${retro-game.defense-debris-factor:0.0}") double defenseDebrisFactor,
+                                    @Value("${retro-game.combat-simulator-threads:2}") int numThreads,
+                                    @Value("${retro-game.combat-simulator-queue-capacity:32}") int queueCapacity,
+                                    @Value("${retro-game.combat-simulator-max-concurrent-per-user:1}")
+                                        int maxConcurrentSimulationsPerUser,
+                                    @Value("${retro-game.combat-simulator-max-units:10000000}") long maxUnits,
+                                    @Value("${retro-game.combat-simulator-max-simulated-units:100000000}")
+                                        long maxSimulatedUnits,
+                                    @Value("${retro-game.combat-simulator-timeout-seconds:30}") int timeoutSeconds,
+                                    BattleEngine battleEngine) {
+    this.fleetRebuildFactor = fleetRebuildFactor;
+    this.defenseRebuildFactor = defenseRebuildFactor;
+    this.fleetDebrisFactor = fleetDebrisFactor;
+    this.defenseDebrisFactor = defenseDebrisFactor;
+    this.maxConcurrentSimulationsPerUser = maxConcurrentSimulationsPerUser;
+    this.maxUnits = maxUnits;
+    this.maxSimulatedUnits = maxSimulatedUnits;
+    this.timeoutSeconds = timeoutSeconds;
+    this.battleEngine = battleEngine;
+    // Both the number of threads and the queue are bounded, simulations that don't fit are rejected.
+    executor = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("combat-simulator-"),
+        new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Override
+  public CompletableFuture<CombatSimulationResultDto> simulate(List<CombatSimulationCombatantDto> attackers,
+                                                               List<CombatSimulationCombatantDto> defenders,
+                                                               int numSimulations) {
+    // The counts come from the request, they are summed with overflow checks so that they cannot wrap around the
+    // caps. The second cap bounds the work of all simulations together.
+    try {
+      var totalUnits = Math.addExact(totalUnits(attackers), totalUnits(defenders));
+      if (totalUnits > maxUnits || Math.multiplyExact(totalUnits, numSimulations) > maxSimulatedUnits) {
+        throw new TooManyUnitsException();
+      }
+    } catch (ArithmeticException e) {
+      throw new TooManyUnitsException();
+    }
+
+    var key = new SimulationKey(List.copyOf(attackers), List.copyOf(defenders), numSimulations);
+    var cached = cache.getIfPresent(key);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+
+    var userId = CustomUser.getCurrentUserId();
+    var running = numRunningSimulations.computeIfAbsent(userId, id -> new AtomicInteger());
+    if (running.incrementAndGet() > maxConcurrentSimulationsPerUser) {
+      release(userId, running);
+      throw new TooManySimulationsException();
+    }
+
+    // The deadline includes the time spent in the queue. The future fails with a TimeoutException when it passes, and
+    // the task stops after the battle it is fighting, or doesn't start at all. The same happens when the future is
+    // cancelled.
+    var future = new CompletableFuture<CombatSimulationResultDto>();
+    try {
+      executor.execute(() -> {
+        try {
+          if (future.isDone()) {
+            return;
+          }
+          var result = run(key, future);
+          cache.put(key, result);
+          future.complete(result);
+        } catch (Throwable e) {
+          future.completeExceptionally(e);
+        } finally {
+          release(userId, running);
+        }
+      });
+      return future.orTimeout(timeoutSeconds, TimeUnit.SECONDS);
+    } catch (RejectedExecutionException e) {
+      release(userId, running);
+      logger.info("Combat simulation rejected, the queue is full: userId={}", userId);
+      throw new SimulatorBusyException();
+    }
+  }
+
+  private void release(long userId, AtomicInteger running) {
+    if (running.decrementAndGet() == 0) {
+      numRunningSimulations.remove(userId, running);
+    }
+  }
+
+  private static long totalUnits(List<CombatSimulationCombatantDto> combatants) {
+    return combatants.stream()
+        .flatMap(c -> c.units().values().stream())
+        .mapToLong(Long::longValue)
+        .reduce(0L, Math::addExact);
+  }
+
+  private CombatSimulationResultDto run(SimulationKey key, CompletableFuture<CombatSimulationResultDto> future) {
+    var attackers = makeCombatants(key.attackers);
+    var defenders = makeCombatants(key.defenders);
+
+    var numAttackersWins = 0;
+    var numDraws = 0;
+    var numDefendersWins = 0;
+    var totalNumRounds = 0L;
+    var attackersLoss = new Resources();
+    var defendersLoss = new Resources();
+    var debris = new Resources();
+
+    // The simulations don't use the pool of the battle engine (fightAll), the executor bounds the cores they take.
+    for (var seed = 1; seed <= key.numSimulations; seed++) {
+      if (future.isDone()) {
+        // Timed out or cancelled, nobody waits for the result.
+        throw new CancellationException();
+      }
+      var outcome = battleEngine.fight(attackers, defenders, seed);
+      var lastRound = outcome.numRounds() - 1;
+      totalNumRounds += outcome.numRounds();
+
+      var attackersFleetLoss = new Resources();
+      var attackersDefenseLoss = new Resources();
+      var attackersAlive = calcLoss(attackers, outcome.attackersOutcomes(), lastRound, attackersFleetLoss,
+          attackersDefenseLoss);
+      var defendersFleetLoss = new Resources();
+      var defendersDefenseLoss = new Resources();
+      var defendersAlive = calcLoss(defenders, outcome.defendersOutcomes(), lastRound, defendersFleetLoss,
+          defendersDefenseLoss);
+
+      if (attackersAlive && defendersAlive) {
+        numDraws++;
+      } else if (attackersAlive) {
+        numAttackersWins++;
+      } else {
+        numDefendersWins++;
+      }
+
+      attackersLoss.add(attackersFleetLoss);
+      attackersLoss.add(attackersDefenseLoss);
+      defendersLoss.add(defendersFleetLoss);
+      defendersLoss.add(defendersDefenseLoss);
+
+      // The same as in the attack mission handler.
+      var fleetLoss = new Resources(attackersFleetLoss);
+      fleetLoss.add(defendersFleetLoss);
+      fleetLoss.mul(fleetDebrisFactor);
+      var defenseLoss = new Resources(attackersDefenseLoss);
+      defenseLoss.add(defendersDefenseLoss);
+      defenseLoss.mul(defenseDebrisFactor);
+      fleetLoss.add(defenseLoss);
+      fleetLoss.setDeuterium(0.0);
+      fleetLoss.floor();
+      debris.add(fleetLoss);
+    }
+
+    var n = (double) key.numSimulations;
+    attackersLoss.mul(1.0 / n);
+    defendersLoss.mul(1.0 / n);
+    debris.mul(1.0 / n);
+    return new CombatSimulationResultDto(key.numSimulations, numAttackersWins / n, numDraws / n,
+        numDefendersWins / n, totalNumRounds / n, Converter.convert(attackersLoss), Converter.convert(defendersLoss),
+        Converter.convert(debris));
+  }
+
+  private static List<Combatant> makeCombatants(List<CombatSimulationCombatantDto> dtos) {
+    var combatants = new ArrayList<Combatant>(dtos.size());
+    for (var dto : dtos) {
+      var unitGroups = new EnumMap<UnitKind, Long>(UnitKind.class);
+      for (var entry : dto.units().entrySet()) {
+        var kind = Converter.convert(entry.getKey());
+        var count = entry.getValue();
+        if (count > 0 && kind != UnitKind.ANTI_BALLISTIC_MISSILE && kind != UnitKind.INTERPLANETARY_MISSILE) {
+          unitGroups.put(kind, count);
+        }
+      }
+      combatants.add(new Combatant(0, SIMULATION_COORDINATES, dto.weaponsTechnology(), dto.shieldingTechnology(),
+          dto.armorTechnology(), unitGroups));
+    }
+    return combatants;
+  }
+
+  // Adds the expected loss of the combatants after rebuilding to the given resources, returns whether any unit
+  // survived. The expected number of rebuilt units is used instead of a random one, it doesn't change the average.
+  private boolean calcLoss(List<Combatant> combatants, List<CombatantOutcome> outcomes, int lastRound,
+                           Resources fleetLoss, Resources defenseLoss) {
+    var alive = false;
+    for (var i = 0; i < combatants.size(); i++) {
+      var unitGroups = combatants.get(i).unitGroups();
+      var lastRoundStats = outcomes.get(i).getNthRoundUnitGroupsStats(lastRound);
+      for (var kind : fightUnitKinds) {
+        var numBeforeBattle = unitGroups.getOrDefault(kind, 0L);
+        var numAfterBattle = lastRoundStats.get(kind).numRemainingUnits();
+        if (numAfterBattle > 0) {
+          alive = true;
+        }
+        var numLost = numBeforeBattle - numAfterBattle;
+        if (numLost == 0) {
+          continue;
+        }
+
+        var isFleet = UnitItem.getFleet().containsKey(kind);
+        var rebuildFactor = isFleet ? fleetRebuildFactor : defenseRebuildFactor;
+        var cost = Item.get(kind).getCost();
+        cost.mul(numLost * (1.0 - rebuildFactor));
+        (isFleet ? fleetLoss : defenseLoss).add(cost);
+      }
+    }
+    return alive;
+  }
+}
@@ -0,0 +1,83 @@
+package com.github.retro_game.retro_game.service.impl;
+
+import com.github.retro_game.retro_game.dto.DeadEventDto;
+import com.github.retro_game.retro_game.entity.DeadEvent;
+import com.github.retro_game.retro_game.entity.Event;
+import com.github.retro_game.retro_game.entity.EventKind;
+import com.github.retro_game.retro_game.repository.DeadEventRepository;
+import com.github.retro_game.retro_game.service.DeadEventService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Service
+class DeadEventServiceImpl implements DeadEventService {
+  private static final Logger logger = LoggerFactory.getLogger(DeadEventServiceImpl.class);
+  private final DeadEventRepository deadEventRepository;
+  private final EventScheduler eventScheduler;
+  private final FlightServiceInternal flightServiceInternal;
+
+  public DeadEventServiceImpl(DeadEventRepository deadEventRepository, EventScheduler eventScheduler,
+                              FlightServiceInternal flightServiceInternal) {
+    this.deadEventRepository = deadEventRepository;
+    this.eventScheduler = eventScheduler;
+    this.flightServiceInternal = flightServiceInternal;
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public List<DeadEventDto> getAll() {
+    return deadEventRepository.findAllByOrderByFailedAtDesc().stream()
+        .map(e -> new DeadEventDto(e.getId(), e.getEventId(), e.getAt(), e.getKind().name(), e.getParam(),
+            e.getAttempts(), e.getError(), e.getFailedAt(), getStuckFlightIds(e)))
+        .collect(Collectors.toList());
+  }
+
+  private List<Long> getStuckFlightIds(DeadEvent deadEvent) {
+    if (deadEvent.getKind() != EventKind.FLIGHT || deadEvent.getParam() == null) {
+      return Collections.emptyList();
+    }
+    return flightServiceInternal.getEventFlightIds(deadEvent.getParam(), deadEvent.getAt());
+  }
+
+  @Override
+  @Transactional
+  public void requeue(long id) {
+    var deadEventOpt = deadEventRepository.findById(id);
+    if (deadEventOpt.isEmpty()) {
+      logger.warn("Requeuing dead event, event doesn't exist: deadEventId={}", id);
+      return;
+    }
+    var deadEvent = deadEventOpt.get();
+    deadEventRepository.delete(deadEvent);
+    // The event is due now, an event from the past would make the scheduler catch up. A flight is postponed as a whole,
+    // as its handler compares the time of the event with the times of the flight, e.g. to tell an arrival from a return.
+    var event = new Event(0, deadEvent.getAt(), deadEvent.getKind(), deadEvent.getParam());
+    event.setBodyId(deadEvent.getBodyId());
+    var now = Date.from(Instant.ofEpochSecond(Instant.now().getEpochSecond()));
+    if (now.after(event.getAt())) {
+      if (event.getKind() == EventKind.FLIGHT) {
+        flightServiceInternal.postpone(event, now);
+      } else {
+        event.setAt(now);
+      }
+    }
+    eventScheduler.schedule(event);
+    logger.info("Requeued dead event: deadEventId={} eventId={} newEventId={}", id, deadEvent.getEventId(),
+        event.getId());
+  }
+
+  @Override
+  @Transactional
+  public void delete(long id) {
+    deadEventRepository.deleteById(id);
+    logger.info("Deleted dead event: deadEventId={}", id);
+  }
+}
@@ -58,7 +58,7 @@ class DetailsServiceImpl implements DetailsService {
 
   @Override
   public BuildingDetailsDto getBuildingDetails(long bodyId, BuildingKindDto kind) {
-    Body body = bodyServiceInternal.getUpdated(bodyId);
+    Body body = bodyServiceInternal.getProjected(bodyId);
 
     BuildingKind k = Converter.convert(kind);
 
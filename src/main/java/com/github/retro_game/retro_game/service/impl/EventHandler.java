@@ -2,6 +2,11 @@ package com.github.retro_game.retro_game.service.impl;
 
 import com.github.retro_game.retro_game.entity.Event;
 
+import java.util.List;
+
 interface EventHandler {
   void handle(Event event);
+
+  // Handles the events in order in a single transaction.
+  void handleAll(List<Event> events);
 }
@@ -0,0 +1,94 @@
+package com.github.retro_game.retro_game.service.impl;
+
+import com.github.retro_game.retro_game.entity.EventKind;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Meters of the event scheduler, exposed by the actuator's prometheus endpoint and shown on the admin home page.
+@Component
+class EventMetrics {
+  private static final String KIND_TAG = "kind";
+  private final MeterRegistry meterRegistry;
+  // Time from the scheduled time of an event to the start of its handling.
+  private final EnumMap<EventKind, Timer> lagTimers = new EnumMap<>(EventKind.class);
+  private final EnumMap<EventKind, Timer> handlingTimers = new EnumMap<>(EventKind.class);
+  private final EnumMap<EventKind, Counter> retryCounters = new EnumMap<>(EventKind.class);
+  private final EnumMap<EventKind, Counter> serializationFailureCounters = new EnumMap<>(EventKind.class);
+  private final EnumMap<EventKind, Counter> deadCounters = new EnumMap<>(EventKind.class);
+
+  public EventMetrics(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+    for (var kind : EventKind.values()) {
+      var tag = kind.name();
+      lagTimers.put(kind, Timer.builder("retro_game.events.lag")
+          .description("Time between the scheduled time of an event and the start of its handling")
+          .tag(KIND_TAG, tag)
+          .publishPercentileHistogram()
+          .register(meterRegistry));
+      handlingTimers.put(kind, Timer.builder("retro_game.events.handling")
+          .description("Time of handling an event, including its transaction")
+          .tag(KIND_TAG, tag)
+          .publishPercentileHistogram()
+          .register(meterRegistry));
+      retryCounters.put(kind, Counter.builder("retro_game.events.retries")
+          .description("Failed attempts to handle an event, which were retried or moved to the dead letter")
+          .tag(KIND_TAG, tag)
+          .register(meterRegistry));
+      serializationFailureCounters.put(kind, Counter.builder("retro_game.events.serialization_failures")
+          .description("Attempts to handle an event that failed due to concurrent transactions")
+          .tag(KIND_TAG, tag)
+          .register(meterRegistry));
+      deadCounters.put(kind, Counter.builder("retro_game.events.dead")
+          .description("Events moved to the dead letter")
+          .tag(KIND_TAG, tag)
+          .register(meterRegistry));
+    }
+  }
+
+  void registerGauge(String name, String description, Supplier<Number> supplier) {
+    Gauge.builder(name, supplier).description(description).register(meterRegistry);
+  }
+
+  void recordLag(EventKind kind, long lagInMs) {
+    lagTimers.get(kind).record(Math.max(0, lagInMs), TimeUnit.MILLISECONDS);
+  }
+
+  void recordHandling(EventKind kind, long timeInNs) {
+    handlingTimers.get(kind).record(timeInNs, TimeUnit.NANOSECONDS);
+  }
+
+  void countFailure(EventKind kind, Throwable e) {
+    retryCounters.get(kind).increment();
+    if (e instanceof ConcurrencyFailureException) {
+      serializationFailureCounters.get(kind).increment();
+    }
+  }
+
+  void countDead(EventKind kind) {
+    deadCounters.get(kind).increment();
+  }
+
+  Timer getHandlingTimer(EventKind kind) {
+    return handlingTimers.get(kind);
+  }
+
+  Timer getLagTimer(EventKind kind) {
+    return lagTimers.get(kind);
+  }
+
+  long getNumRetries(EventKind kind) {
+    return (long) retryCounters.get(kind).count();
+  }
+
+  long getNumSerializationFailures(EventKind kind) {
+    return (long) serializationFailureCounters.get(kind).count();
+  }
+}
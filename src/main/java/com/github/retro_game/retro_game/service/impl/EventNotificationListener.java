@@ -0,0 +1,57 @@
+package com.github.retro_game.retro_game.service.impl;
+
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+// Listens for the Postgres notifications sent when events are scheduled on other nodes. The listener holds a
+// connection of the pool for good, the scheduler enlarges the pool by one for it.
+final class EventNotificationListener implements Runnable {
+  private static final int POLL_TIMEOUT_IN_MS = 10000;
+  private static final int RECONNECT_WAIT_TIME_IN_MS = 3000;
+  private static final Logger logger = LoggerFactory.getLogger(EventNotificationListener.class);
+  private final DataSource dataSource;
+  private final String channel;
+  private final Runnable onNotification;
+
+  EventNotificationListener(DataSource dataSource, String channel, Runnable onNotification) {
+    this.dataSource = dataSource;
+    this.channel = channel;
+    this.onNotification = onNotification;
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      try (var connection = dataSource.getConnection()) {
+        connection.setAutoCommit(true);
+        try (var statement = connection.createStatement()) {
+          statement.execute("listen " + channel);
+        }
+        var pgConnection = connection.unwrap(PGConnection.class);
+
+        // Notifications sent while not listening are lost, catch up.
+        onNotification.run();
+
+        while (true) {
+          var notifications = pgConnection.getNotifications(POLL_TIMEOUT_IN_MS);
+          if (notifications != null && notifications.length > 0) {
+            onNotification.run();
+          }
+        }
+      } catch (SQLException e) {
+        logger.warn("Listening for event notifications failed, reconnecting in {}ms: msg={}",
+            RECONNECT_WAIT_TIME_IN_MS, e.getMessage());
+      }
+
+      try {
+        Thread.sleep(RECONNECT_WAIT_TIME_IN_MS);
+      } catch (InterruptedException e) {
+        logger.warn("Waiting interrupted");
+      }
+    }
+  }
+}
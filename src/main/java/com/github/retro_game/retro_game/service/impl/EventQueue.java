@@ -0,0 +1,86 @@
+package com.github.retro_game.retro_game.service.impl;
+
+import java.util.Arrays;
+
+// A binary min-heap of events keyed by (at, id), the same order the events are handled in. Only the keys are kept, in
+// primitive arrays. Not thread-safe.
+public final class EventQueue {
+  private long[] ats = new long[16];
+  private long[] ids = new long[16];
+  private int size;
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  // The time of the first event in ms since the epoch, the queue must not be empty.
+  public long peekAt() {
+    assert size > 0;
+    return ats[0];
+  }
+
+  public long peekId() {
+    assert size > 0;
+    return ids[0];
+  }
+
+  public void add(long at, long id) {
+    if (size == ats.length) {
+      ats = Arrays.copyOf(ats, 2 * size);
+      ids = Arrays.copyOf(ids, 2 * size);
+    }
+    var i = size++;
+    while (i > 0) {
+      var parent = (i - 1) >>> 1;
+      if (!less(at, id, ats[parent], ids[parent])) {
+        break;
+      }
+      ats[i] = ats[parent];
+      ids[i] = ids[parent];
+      i = parent;
+    }
+    ats[i] = at;
+    ids[i] = id;
+  }
+
+  public void poll() {
+    assert size > 0;
+    size--;
+    if (size == 0) {
+      return;
+    }
+    var at = ats[size];
+    var id = ids[size];
+    var i = 0;
+    while (true) {
+      var child = 2 * i + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && less(ats[child + 1], ids[child + 1], ats[child], ids[child])) {
+        child++;
+      }
+      if (!less(ats[child], ids[child], at, id)) {
+        break;
+      }
+      ats[i] = ats[child];
+      ids[i] = ids[child];
+      i = child;
+    }
+    ats[i] = at;
+    ids[i] = id;
+  }
+
+  // Whether (at1, id1) is handled before (at2, id2).
+  public static boolean less(long at1, long id1, long at2, long id2) {
+    return at1 < at2 || (at1 == at2 && id1 < id2);
+  }
+}
@@ -1,19 +1,33 @@
 package com.github.retro_game.retro_game.service.impl;
 
 import com.github.retro_game.retro_game.entity.Event;
+import com.github.retro_game.retro_game.entity.EventKind;
+import com.github.retro_game.retro_game.repository.DeadEventRepository;
 import com.github.retro_game.retro_game.repository.EventRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.transaction.support.TransactionSynchronizationAdapter;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.PostConstruct;
-import java.util.Date;
-import java.util.Optional;
+import javax.sql.DataSource;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -22,18 +36,102 @@ import java.util.concurrent.locks.ReentrantLock;
 public class EventScheduler implements Runnable {
   private static final int WAIT_TIME_STEP_IN_MS = 10;
   private static final int MAX_WAIT_TIME_IN_MS = 3000;
+  // In the cluster mode, the database is checked at least this often, in case a notification is missed.
+  private static final int MAX_CLUSTER_WAIT_TIME_IN_MS = 5000;
+  private static final String NOTIFICATION_CHANNEL = "retro_game_events";
   private static final Logger logger = LoggerFactory.getLogger(EventScheduler.class);
   private final Lock lock = new ReentrantLock();
   private final Condition condition = lock.newCondition();
+  // Upcoming events, guarded by the lock. All the events up to (windowEndAt, windowEndId) in the order of handling are in
+  // the queue, the later ones are loaded from the database when the queue gets to them. The queue is kept up to date by
+  // schedule(), thus the database is queried only to refill the window, or after a failure.
+  private final EventQueue queue = new EventQueue();
+  private long windowEndAt = Long.MIN_VALUE;
+  private long windowEndId = Long.MIN_VALUE;
+  private final int windowSize;
+  // With more than one worker, the events are handled by partitions, null otherwise.
+  private final Partition[] partitions;
+  // Events handed over to the partitions and not handled yet, id -> at. They are not dispatched again when the window
+  // is reloaded.
+  private final ConcurrentHashMap<Long, Long> inFlight = new ConcurrentHashMap<>();
+  // In the cluster mode, several nodes handle the events. Due events are claimed from the database in batches with
+  // leases, the queue above is not used, since other nodes schedule events as well.
+  private final boolean clusterMode;
+  private final int leaseSeconds;
+  private final String nodeId = UUID.randomUUID().toString();
+  private final ArrayDeque<Event> claimed = new ArrayDeque<>();
+  // Set by schedule() and notifications, guarded by the lock.
+  private boolean wokenUp;
+  // When the scheduler falls behind by more than the threshold, e.g. after a downtime, the due events are drained from
+  // the database in pages, and runs of independent events of the same kind are handled in single transactions.
+  private final long catchUpThresholdInMs;
+  private final int catchUpPageSize;
+  private final boolean catchUpFallback;
+  // A failing event is retried with an exponential backoff, while the others are handled in the meantime. After too many
+  // attempts, the event is moved to the dead letter table. The failures are kept in memory only.
+  private record Failure(long at, int attempts, long retryAt) {
+  }
+
+  private final ConcurrentHashMap<Long, Failure> failures = new ConcurrentHashMap<>();
+  // Events waiting for a retry, (retryAt, id), guarded by the lock.
+  private final EventQueue retries = new EventQueue();
+  private final int maxAttempts;
+  private final long retryBaseDelayInMs;
+  private final long maxRetryDelayInMs;
+  // Flights arriving at, or returning to, the same body at the same time are handled in one transaction, as farming
+  // waves often land many of them in the same second. Only a run of such events that are consecutive in the order of
+  // handling is coalesced, thus the result is the same as if they were handled one by one.
+  private static final int MAX_COALESCED_EVENTS = 256;
+  private final boolean coalesceArrivals;
+  // The time of the event being handled by the scheduler thread, 0 if none.
+  private volatile long handledAt;
+  // The earliest time of the events scheduled since catchUp() last looked, guarded by the lock.
+  private long minScheduledAt = Long.MAX_VALUE;
+  private final DataSource dataSource;
   private final TaskExecutor eventSchedulerThread;
   private final EventRepository eventRepository;
+  private final DeadEventRepository deadEventRepository;
+  private final EventMetrics eventMetrics;
   private BuildingsServiceInternal buildingsServiceInternal;
   private FlightServiceInternal flightServiceInternal;
   private TechnologyServiceInternal technologyServiceInternal;
 
-  public EventScheduler(TaskExecutor eventSchedulerThread, EventRepository eventRepository) {
+  public EventScheduler(@Value("${retro-game.event-scheduler-window-size:1000}") int windowSize,
+                        @Value("${retro-game.event-scheduler-workers:1}") int numWorkers,
+                        @Value("${retro-game.event-scheduler-cluster-mode:false}") boolean clusterMode,
+                        @Value("${retro-game.event-scheduler-lease-seconds:300}") int leaseSeconds,
+                        @Value("${retro-game.event-scheduler-catch-up-threshold-seconds:60}") int catchUpThresholdSeconds,
+                        @Value("${retro-game.event-scheduler-catch-up-page-size:500}") int catchUpPageSize,
+                        @Value("${retro-game.event-scheduler-catch-up-fallback:true}") boolean catchUpFallback,
+                        @Value("${retro-game.event-scheduler-max-attempts:10}") int maxAttempts,
+                        @Value("${retro-game.event-scheduler-retry-base-delay-ms:1000}") long retryBaseDelayInMs,
+                        @Value("${retro-game.event-scheduler-max-retry-delay-ms:300000}") long maxRetryDelayInMs,
+                        @Value("${retro-game.event-scheduler-coalesce-arrivals:true}") boolean coalesceArrivals,
+                        DataSource dataSource, TaskExecutor eventSchedulerThread, EventRepository eventRepository,
+                        DeadEventRepository deadEventRepository, EventMetrics eventMetrics) {
+    this.windowSize = windowSize;
+    this.clusterMode = clusterMode;
+    this.leaseSeconds = leaseSeconds;
+    this.catchUpThresholdInMs = 1000L * catchUpThresholdSeconds;
+    this.catchUpPageSize = catchUpPageSize;
+    this.catchUpFallback = catchUpFallback;
+    this.maxAttempts = maxAttempts;
+    this.retryBaseDelayInMs = retryBaseDelayInMs;
+    this.maxRetryDelayInMs = maxRetryDelayInMs;
+    this.coalesceArrivals = coalesceArrivals;
+    this.dataSource = dataSource;
+    if (numWorkers > 1) {
+      partitions = new Partition[numWorkers];
+      for (var i = 0; i < numWorkers; i++) {
+        partitions[i] = new Partition();
+      }
+    } else {
+      partitions = null;
+    }
     this.eventSchedulerThread = eventSchedulerThread;
     this.eventRepository = eventRepository;
+    this.deadEventRepository = deadEventRepository;
+    this.eventMetrics = eventMetrics;
   }
 
   @Autowired
@@ -53,16 +151,113 @@ public class EventScheduler implements Runnable {
 
   @PostConstruct
   private void start() {
+    eventMetrics.registerGauge("retro_game.events.current_lag", "Time since the oldest due event that is not handled yet",
+        this::getCurrentLagInMs);
+    eventMetrics.registerGauge("retro_game.events.queued", "Events loaded in memory and waiting to be handled",
+        this::getNumQueuedEvents);
+    eventMetrics.registerGauge("retro_game.events.retrying", "Failed events waiting for a retry",
+        this::getNumRetryingEvents);
+    if (partitions != null) {
+      ThreadFactory threadFactory = new CustomizableThreadFactory("event-worker-");
+      for (var partition : partitions) {
+        threadFactory.newThread(partition).start();
+      }
+    }
+    if (clusterMode) {
+      logger.info("Starting event scheduler in the cluster mode: nodeId={}", nodeId);
+      // The listener holds a connection for good. The pool gets one more, so that the event handlers and the requests
+      // still have as many connections as configured.
+      if (dataSource instanceof HikariDataSource hikari) {
+        var config = hikari.getHikariConfigMXBean();
+        config.setMaximumPoolSize(config.getMaximumPoolSize() + 1);
+      }
+      var listener = new EventNotificationListener(dataSource, NOTIFICATION_CHANNEL, this::wakeUp);
+      new CustomizableThreadFactory("event-listener-").newThread(listener).start();
+    }
     this.eventSchedulerThread.execute(this);
   }
 
+  public record PartitionStats(int numPendingEvents, long lagInMs) {
+  }
+
+  // Empty if the events are handled by the scheduler thread itself.
+  public List<PartitionStats> getPartitionsStats() {
+    if (partitions == null) {
+      return List.of();
+    }
+    var now = System.currentTimeMillis();
+    var stats = new ArrayList<PartitionStats>(partitions.length);
+    for (var partition : partitions) {
+      stats.add(new PartitionStats(partition.events.size(), partition.getLag(now)));
+    }
+    return stats;
+  }
+
+  // In milliseconds. In the cluster mode, only the events already claimed by this node are taken into account.
+  public long getCurrentLagInMs() {
+    var now = System.currentTimeMillis();
+    var at = handledAt;
+    var lag = at == 0 ? 0 : now - at;
+    if (partitions != null) {
+      for (var partition : partitions) {
+        lag = Math.max(lag, partition.getLag(now));
+      }
+    }
+    if (!clusterMode) {
+      lock.lock();
+      try {
+        if (!queue.isEmpty()) {
+          lag = Math.max(lag, now - queue.peekAt());
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+    return Math.max(0, lag);
+  }
+
+  public int getNumQueuedEvents() {
+    var num = 0;
+    if (partitions != null) {
+      for (var partition : partitions) {
+        num += partition.events.size();
+      }
+    }
+    if (!clusterMode) {
+      lock.lock();
+      try {
+        num += queue.size();
+      } finally {
+        lock.unlock();
+      }
+    }
+    return num;
+  }
+
+  public int getNumRetryingEvents() {
+    return failures.size();
+  }
+
   public void schedule(Event event) {
+    // A rescheduled event may have been claimed already.
+    event.release();
     eventRepository.save(event);
+    if (clusterMode) {
+      eventRepository.notify(NOTIFICATION_CHANNEL);
+    }
+    var at = event.getAt().getTime();
+    var id = event.getId();
     TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
       @Override
       public void afterCommit() {
         try {
           lock.lock();
+          // Later events will be loaded with the window they belong to.
+          if (!clusterMode && !EventQueue.less(windowEndAt, windowEndId, at, id)) {
+            queue.add(at, id);
+          }
+          minScheduledAt = Math.min(minScheduledAt, at);
+          wokenUp = true;
           condition.signal();
         } finally {
           lock.unlock();
@@ -71,45 +266,631 @@ public class EventScheduler implements Runnable {
     });
   }
 
+  // The earliest time of the events scheduled since the last reset, see catchUp().
+  private long takeMinScheduledAt() {
+    lock.lock();
+    try {
+      var at = minScheduledAt;
+      minScheduledAt = Long.MAX_VALUE;
+      return at;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean needsRefill() {
+    // If the window is unbounded, all the events are in the queue already.
+    return windowEndAt != Long.MAX_VALUE &&
+        (queue.isEmpty() || EventQueue.less(windowEndAt, windowEndId, queue.peekAt(), queue.peekId()));
+  }
+
+  private void refill() {
+    // Failed events waiting for a retry are skipped, they are in the retries queue, and so are the events handed over to
+    // the partitions. The limit is raised by their number, so that a full window never consists of them only.
+    var limit = windowSize + inFlight.size() + failures.size();
+    var events = eventRepository.findAllByOrderByAtAscIdAsc(PageRequest.of(0, limit));
+    queue.clear();
+    for (var event : events) {
+      if (!isDeferred(event)) {
+        queue.add(event.getAt().getTime(), event.getId());
+      }
+    }
+    // The window ends at the last loaded event rather than at its time, so that a window full of events at the same time
+    // doesn't make every getNext() query the database again.
+    if (events.size() < limit) {
+      windowEndAt = Long.MAX_VALUE;
+      windowEndId = Long.MAX_VALUE;
+    } else {
+      var last = events.get(events.size() - 1);
+      windowEndAt = last.getAt().getTime();
+      windowEndId = last.getId();
+    }
+  }
+
+  // Makes the next call of getNext() reload the window.
+  private void invalidate() {
+    lock.lock();
+    try {
+      windowEndAt = Long.MIN_VALUE;
+      windowEndId = Long.MIN_VALUE;
+    } finally {
+      lock.unlock();
+    }
+    claimed.clear();
+  }
+
+  private void wakeUp() {
+    lock.lock();
+    try {
+      wokenUp = true;
+      condition.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean isInFlight(Event event) {
+    var inFlightAt = inFlight.get(event.getId());
+    return inFlightAt != null && inFlightAt == event.getAt().getTime();
+  }
+
+  private boolean isDeferred(Event event) {
+    var failure = failures.get(event.getId());
+    return failure != null && failure.at() == event.getAt().getTime();
+  }
+
+  // Errors of the database itself are not the fault of the event, they are retried by the caller without counting.
+  private static boolean isUnavailable(RuntimeException e) {
+    return e instanceof DataAccessResourceFailureException || e instanceof RecoverableDataAccessException ||
+        e instanceof CannotCreateTransactionException;
+  }
+
+  private void onSuccess(Event event) {
+    failures.remove(event.getId());
+  }
+
+  private void onFailure(Event event, RuntimeException e) {
+    var id = event.getId();
+    var at = event.getAt().getTime();
+    eventMetrics.countFailure(event.getKind(), e);
+    var previous = failures.get(id);
+    var attempts = (previous != null && previous.at() == at ? previous.attempts() : 0) + 1;
+    var error = ExceptionUtils.getRootCauseMessage(e);
+
+    if (attempts >= maxAttempts) {
+      try {
+        var moved = deadEventRepository.moveFromEvents(id, event.getAt(), attempts, error);
+        failures.remove(id);
+        if (moved > 0) {
+          eventMetrics.countDead(event.getKind());
+        }
+        logger.error("Event failed too many times, moved to dead letter: eventId={} kind={} param={} attempts={} " +
+            "moved={} msg={}", id, event.getKind(), event.getParam(), attempts, moved > 0, error);
+        if (moved > 0 && event.getKind() == EventKind.FLIGHT) {
+          // Nothing else moves the flight, it stays in the air until the event is requeued.
+          logger.error("Flight stuck until its dead event is requeued: eventId={} flightId={}", id, event.getParam());
+        }
+        return;
+      } catch (RuntimeException ex) {
+        // Retried again after the next attempt fails.
+        logger.error("Moving event to dead letter failed: eventId={} msg={}", id, ex.getMessage());
+      }
+    }
+
+    var delay = Math.min(maxRetryDelayInMs, retryBaseDelayInMs << Math.min(attempts - 1, 30));
+    var retryAt = System.currentTimeMillis() + delay;
+    failures.put(id, new Failure(at, attempts, retryAt));
+    lock.lock();
+    try {
+      retries.add(retryAt, id);
+      condition.signal();
+    } finally {
+      lock.unlock();
+    }
+    logger.warn("Event failed, retrying in {}ms: eventId={} kind={} param={} attempts={} msg={}", delay, id,
+        event.getKind(), event.getParam(), attempts, error);
+    if (!(e instanceof DataAccessException)) {
+      e.printStackTrace();
+    }
+  }
+
+  // Takes the due retry from the retries queue, the caller must hold the lock. Null if there is none, or if the event
+  // doesn't need it anymore.
+  private Event pollRetry(long now) {
+    if (retries.isEmpty() || retries.peekAt() > now) {
+      return null;
+    }
+    var retryAt = retries.peekAt();
+    var id = retries.peekId();
+    retries.poll();
+
+    var failure = failures.get(id);
+    if (failure == null || failure.retryAt() != retryAt) {
+      return null;
+    }
+    var event = eventRepository.findById(id);
+    if (event.isEmpty() || event.get().getAt().getTime() != failure.at() ||
+        (clusterMode && !nodeId.equals(event.get().getClaimedBy()))) {
+      failures.remove(id);
+      return null;
+    }
+    return event.get();
+  }
+
+  // Returns false if the kind of the event is wrong. A failure of the event is recorded and the event is retried later.
+  private boolean handleOne(Event event) {
+    try {
+      if (!handle(event)) {
+        return false;
+      }
+      onSuccess(event);
+    } catch (RuntimeException e) {
+      if (isUnavailable(e)) {
+        throw e;
+      }
+      onFailure(event, e);
+    }
+    return true;
+  }
+
+  private Event getNextClaimed() throws InterruptedException {
+    while (true) {
+      lock.lock();
+      try {
+        var retry = pollRetry(System.currentTimeMillis());
+        if (retry != null) {
+          return retry;
+        }
+      } finally {
+        lock.unlock();
+      }
+
+      var event = claimed.poll();
+      if (event != null) {
+        if (!isInFlight(event) && !isDeferred(event)) {
+          return event;
+        }
+        continue;
+      }
+
+      // Reset before querying, so that a notification arriving in the meantime isn't lost.
+      lock.lock();
+      try {
+        wokenUp = false;
+      } finally {
+        lock.unlock();
+      }
+
+      // The events in flight and the ones waiting for a retry are claimed again, which extends their leases. The limit is
+      // raised by their number, so that they don't take the place of the other events.
+      var limit = windowSize + inFlight.size() + failures.size();
+      var events = eventRepository.claimDue(nodeId, leaseSeconds, limit);
+      if (events.stream().anyMatch(e -> !isInFlight(e) && !isDeferred(e))) {
+        claimed.addAll(events);
+        continue;
+      }
+
+      var deadline = System.currentTimeMillis() + MAX_CLUSTER_WAIT_TIME_IN_MS;
+      var nextAt = eventRepository.findNextClaimableAt(nodeId);
+      if (nextAt.isPresent()) {
+        deadline = Math.min(deadline, nextAt.get().getTime());
+      }
+      lock.lock();
+      try {
+        if (!retries.isEmpty()) {
+          deadline = Math.min(deadline, retries.peekAt());
+        }
+        if (!wokenUp) {
+          condition.awaitUntil(new Date(deadline));
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
   private Event getNext() throws InterruptedException {
+    if (clusterMode) {
+      return getNextClaimed();
+    }
+
     lock.lock();
     try {
-      Optional<Event> event;
-      while (!(event = eventRepository.findFirstByOrderByAtAscIdAsc()).isPresent() ||
-          event.get().getAt().after(new Date())) {
-        if (event.isPresent()) {
-          condition.awaitUntil(event.get().getAt());
-        } else {
+      while (true) {
+        // The refill happens under the lock, thus an event committed in the meantime is either already visible to the
+        // query, or it is added to the queue after the refill.
+        if (needsRefill()) {
+          refill();
+        }
+
+        var now = System.currentTimeMillis();
+        var retry = pollRetry(now);
+        if (retry != null) {
+          return retry;
+        }
+
+        if (queue.isEmpty() && retries.isEmpty()) {
           condition.await();
+          continue;
+        }
+
+        var at = queue.isEmpty() ? Long.MAX_VALUE : queue.peekAt();
+        var nextAt = retries.isEmpty() ? at : Math.min(at, retries.peekAt());
+        if (nextAt > now) {
+          condition.awaitUntil(new Date(nextAt));
+          continue;
+        }
+        if (at > now) {
+          // A retry is due.
+          continue;
+        }
+
+        var id = queue.peekId();
+        queue.poll();
+
+        var inFlightAt = inFlight.get(id);
+        if (inFlightAt != null && inFlightAt == at) {
+          continue;
+        }
+
+        var failure = failures.get(id);
+        if (failure != null && failure.at() == at) {
+          continue;
+        }
+
+        // Only the keys are queued, the event could have been deleted or rescheduled in the meantime. A rescheduled
+        // event is queued again by schedule().
+        var event = eventRepository.findById(id);
+        if (event.isPresent() && event.get().getAt().getTime() == at) {
+          return event.get();
         }
       }
-      return event.get();
     } finally {
       lock.unlock();
     }
   }
 
+  // Returns false if the kind of the event is wrong.
+  private boolean handle(Event event) {
+    var kind = event.getKind();
+    var startTime = System.nanoTime();
+    eventMetrics.recordLag(kind, System.currentTimeMillis() - event.getAt().getTime());
+    try {
+      return doHandle(event);
+    } finally {
+      eventMetrics.recordHandling(kind, System.nanoTime() - startTime);
+    }
+  }
+
+  private boolean doHandle(Event event) {
+    switch (event.getKind()) {
+      case BUILDING_QUEUE -> buildingsServiceInternal.handle(event);
+      case TECHNOLOGY_QUEUE -> technologyServiceInternal.handle(event);
+      case FLIGHT -> {
+        // Battles are fought before the handling transaction, which then only applies the outcome.
+        var preparedBattle = flightServiceInternal.prepareBattle(event);
+        if (preparedBattle.isPresent()) {
+          flightServiceInternal.handle(event, preparedBattle.get());
+        } else {
+          flightServiceInternal.handle(event);
+        }
+      }
+      case SHIPYARD_QUEUE -> {
+        logger.error("Shipyard queue event, this shouldn't happen");
+        eventRepository.delete(event);
+      }
+      default -> {
+        logger.error("Wrong event kind");
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Events with the same key are handled in order by the same partition. Events touching different bodies and users
+  // are likely to have different keys and are handled concurrently, conflicts between them are still resolved by the
+  // serializable transactions.
+  private long getPartitionKey(Event event) {
+    return switch (event.getKind()) {
+      case BUILDING_QUEUE -> event.getParam();
+      // Negative, so that a user doesn't share the key with the body with the same id.
+      case TECHNOLOGY_QUEUE -> -event.getParam();
+      case FLIGHT -> getBodyId(event);
+      default -> 0;
+    };
+  }
+
+  // Flight events store the body they touch, only the events scheduled before that need to look it up.
+  private long getBodyId(Event event) {
+    var bodyId = event.getBodyId();
+    return bodyId != null ? bodyId : flightServiceInternal.getEventBodyId(event);
+  }
+
+  private void dispatch(Event event) {
+    var key = getPartitionKey(event);
+    var partition = partitions[Math.floorMod(Long.hashCode(key), partitions.length)];
+    inFlight.put(event.getId(), event.getAt().getTime());
+    partition.events.add(event);
+  }
+
+  private final class Partition implements Runnable {
+    private final BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+    // The time of the event being handled, 0 if none.
+    private volatile long handledAt;
+
+    private long getLag(long now) {
+      var at = handledAt;
+      if (at == 0) {
+        var next = events.peek();
+        if (next == null) {
+          return 0;
+        }
+        at = next.getAt().getTime();
+      }
+      return Math.max(0, now - at);
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        Event event;
+        try {
+          event = events.take();
+        } catch (InterruptedException e) {
+          logger.info("Interrupted");
+          continue;
+        }
+
+        var at = event.getAt().getTime();
+        handledAt = at;
+        try {
+          handleWithRetries(event);
+        } finally {
+          handledAt = 0;
+          inFlight.remove(event.getId(), at);
+        }
+      }
+    }
+
+    // Retries only while the database is unavailable, other failures are recorded and the event is dispatched again
+    // by the scheduler when its retry is due.
+    private void handleWithRetries(Event event) {
+      int waitTime = 0;
+      while (true) {
+        try {
+          // The event could have been deleted or rescheduled while waiting in the partition, or by a conflicting
+          // event handled by another partition.
+          var current = eventRepository.findById(event.getId());
+          if (current.isEmpty() || current.get().getAt().getTime() != event.getAt().getTime()) {
+            return;
+          }
+          // In the cluster mode, the lease could have expired, and the event could have been claimed by another node.
+          if (clusterMode && !nodeId.equals(current.get().getClaimedBy())) {
+            return;
+          }
+          if (!handleOne(current.get())) {
+            eventRepository.delete(current.get());
+          }
+          return;
+        } catch (RuntimeException e) {
+          waitTime = Math.min(MAX_WAIT_TIME_IN_MS, waitTime + WAIT_TIME_STEP_IN_MS);
+          logger.warn("Event worker database unavailable, retrying in {}ms: msg={}", waitTime, e.getMessage());
+        }
+
+        try {
+          Thread.sleep(waitTime);
+        } catch (InterruptedException ex) {
+          logger.warn("Waiting interrupted");
+        }
+      }
+    }
+  }
+
+  private boolean canBeBatched(Event event) {
+    return switch (event.getKind()) {
+      case BUILDING_QUEUE, TECHNOLOGY_QUEUE, FLIGHT -> true;
+      default -> false;
+    };
+  }
+
+  // Handles the events in one transaction. With the fallback, if the transaction fails, the events are handled one by
+  // one, so that a single failing event doesn't make the others fail again.
+  private void handleBatch(List<Event> batch, boolean fallback) {
+    handledAt = batch.get(0).getAt().getTime();
+    if (batch.size() == 1) {
+      if (!handleOne(batch.get(0))) {
+        eventRepository.delete(batch.get(0));
+      }
+      return;
+    }
+    var kind = batch.get(0).getKind();
+    var now = System.currentTimeMillis();
+    for (var event : batch) {
+      eventMetrics.recordLag(kind, now - event.getAt().getTime());
+    }
+    try {
+      var startTime = System.nanoTime();
+      switch (kind) {
+        case BUILDING_QUEUE -> buildingsServiceInternal.handleAll(batch);
+        case TECHNOLOGY_QUEUE -> technologyServiceInternal.handleAll(batch);
+        case FLIGHT -> flightServiceInternal.handleAll(batch, flightServiceInternal.prepareBattles(batch));
+      }
+      // The events of a batch are not timed separately, each of them gets the average time.
+      var time = (System.nanoTime() - startTime) / batch.size();
+      for (var i = 0; i < batch.size(); i++) {
+        eventMetrics.recordHandling(kind, time);
+      }
+    } catch (RuntimeException e) {
+      eventMetrics.countFailure(kind, e);
+      if (!fallback || isUnavailable(e)) {
+        throw e;
+      }
+      logger.warn("Batch transaction failed, falling back to single events: kind={} size={} msg={}", kind,
+          batch.size(), e.getMessage());
+      for (var event : batch) {
+        var current = eventRepository.findById(event.getId());
+        if (current.isPresent() && current.get().getAt().getTime() == event.getAt().getTime() &&
+            !handleOne(current.get())) {
+          eventRepository.delete(current.get());
+        }
+      }
+    }
+  }
+
+  // Takes the flight events that are next in the queue, have the same time as the given one, and concern the same body.
+  // The returned list starts with the given event.
+  private List<Event> coalesce(Event event) {
+    var events = new ArrayList<Event>();
+    events.add(event);
+    var at = event.getAt().getTime();
+    Long bodyId = null;
+    lock.lock();
+    try {
+      while (events.size() < MAX_COALESCED_EVENTS && !queue.isEmpty() && queue.peekAt() == at) {
+        var id = queue.peekId();
+        // The events that would be skipped by getNext() are skipped here as well.
+        var inFlightAt = inFlight.get(id);
+        var failure = failures.get(id);
+        if ((inFlightAt != null && inFlightAt == at) || (failure != null && failure.at() == at)) {
+          queue.poll();
+          continue;
+        }
+        var next = eventRepository.findById(id);
+        if (next.isEmpty() || next.get().getAt().getTime() != at) {
+          queue.poll();
+          continue;
+        }
+        if (next.get().getKind() != EventKind.FLIGHT) {
+          break;
+        }
+        if (bodyId == null) {
+          bodyId = getBodyId(event);
+        }
+        if (getBodyId(next.get()) != bodyId) {
+          break;
+        }
+        queue.poll();
+        events.add(next.get());
+      }
+    } finally {
+      lock.unlock();
+    }
+    return events;
+  }
+
+  // The battles of a batch would all be prepared from the state before the batch, thus after the first one they would
+  // be stale and fought again in the transaction. An arrival with a battle is handled on its own, after the events
+  // preceding it, so that its battle is prepared from their results.
+  private void handleCoalesced(List<Event> events) {
+    var battleEventIds = events.size() > 1 ? flightServiceInternal.getBattleEventIds(events) : Set.<Long>of();
+    var batch = new ArrayList<Event>();
+    for (var event : events) {
+      if (!battleEventIds.contains(event.getId())) {
+        batch.add(event);
+        continue;
+      }
+      if (!batch.isEmpty()) {
+        handleBatch(batch, true);
+        batch = new ArrayList<>();
+      }
+      handleBatch(List.of(event), true);
+    }
+    if (!batch.isEmpty()) {
+      handleBatch(batch, true);
+    }
+  }
+
+  // Drains the due events in pages, until the scheduler is no longer behind. A page is split into runs of consecutive
+  // events of the same kind, each of them touching a different body or user, and each run is handled in one
+  // transaction. The events of a run are handled in their order, although events scheduled by the run itself are
+  // handled only after the run, even if they are due earlier. When a run schedules an event due before the rest of the
+  // page, e.g. the return of a flight, the rest of the page is dropped and loaded again, so that the order is kept.
+  private void catchUp() {
+    var startTime = System.currentTimeMillis();
+    var numHandled = 0L;
+    logger.info("Catching up started");
+    try {
+      while (true) {
+        var now = System.currentTimeMillis();
+        // Events scheduled before the query are loaded by it.
+        takeMinScheduledAt();
+        // The events waiting for a retry are left to the normal mode.
+        var events = new ArrayList<>(eventRepository.findByAtLessThanEqualOrderByAtAscIdAsc(new Date(now),
+            PageRequest.of(0, catchUpPageSize + failures.size())));
+        events.removeIf(this::isDeferred);
+        if (events.isEmpty() || now - events.get(0).getAt().getTime() <= catchUpThresholdInMs) {
+          break;
+        }
+
+        // Events are independent when they have different partition keys, e.g. flights arriving at different bodies.
+        var next = 0;
+        while (next < events.size()) {
+          var batch = new ArrayList<Event>();
+          var keys = new HashSet<Long>();
+          batch.add(events.get(next));
+          keys.add(getPartitionKey(events.get(next)));
+          next++;
+          while (next < events.size()) {
+            var event = events.get(next);
+            if (batch.get(0).getKind() != event.getKind() || !canBeBatched(event) ||
+                !keys.add(getPartitionKey(event))) {
+              break;
+            }
+            batch.add(event);
+            next++;
+          }
+          handleBatch(batch, catchUpFallback);
+          numHandled += batch.size();
+
+          if (next < events.size() && takeMinScheduledAt() <= events.get(next).getAt().getTime()) {
+            break;
+          }
+        }
+
+        var lag = System.currentTimeMillis() - events.get(next - 1).getAt().getTime();
+        logger.info("Catching up: handled={} lagMs={}", numHandled, lag);
+      }
+    } finally {
+      handledAt = 0;
+      // The events handled here are still in the queue.
+      invalidate();
+    }
+    logger.info("Catching up finished: handled={} timeMs={}", numHandled, System.currentTimeMillis() - startTime);
+  }
+
   @Override
   public void run() {
     int waitTime = 0;
     while (true) {
       try {
         var event = getNext();
-        switch (event.getKind()) {
-          case BUILDING_QUEUE -> buildingsServiceInternal.handle(event);
-          case TECHNOLOGY_QUEUE -> technologyServiceInternal.handle(event);
-          case FLIGHT -> flightServiceInternal.handle(event);
-          case SHIPYARD_QUEUE -> {
-            logger.error("Shipyard queue event, this shouldn't happen");
-            eventRepository.delete(event);
+        if (partitions != null) {
+          dispatch(event);
+        } else if (!clusterMode && !isDeferred(event) &&
+            System.currentTimeMillis() - event.getAt().getTime() > catchUpThresholdInMs) {
+          // The event is handled by the catch-up as well.
+          catchUp();
+        } else if (coalesceArrivals && event.getKind() == EventKind.FLIGHT && !clusterMode && !isDeferred(event)) {
+          try {
+            handleCoalesced(coalesce(event));
+          } finally {
+            handledAt = 0;
           }
-          default -> {
-            logger.error("Wrong event kind");
-            return;
+        } else {
+          handledAt = event.getAt().getTime();
+          try {
+            if (!handleOne(event)) {
+              return;
+            }
+          } finally {
+            handledAt = 0;
           }
         }
         waitTime = 0;
       } catch (Exception e) {
+        // The event was taken from the queue, reload the window so that it is handled again.
+        invalidate();
+
         if (e instanceof InterruptedException) {
           logger.info("Interrupted");
           continue;
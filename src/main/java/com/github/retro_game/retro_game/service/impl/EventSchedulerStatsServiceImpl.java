@@ -0,0 +1,45 @@
+package com.github.retro_game.retro_game.service.impl;
+
+import com.github.retro_game.retro_game.dto.EventKindStatsDto;
+import com.github.retro_game.retro_game.dto.EventPartitionStatsDto;
+import com.github.retro_game.retro_game.dto.EventSchedulerStatsDto;
+import com.github.retro_game.retro_game.entity.EventKind;
+import com.github.retro_game.retro_game.repository.DeadEventRepository;
+import com.github.retro_game.retro_game.service.EventSchedulerStatsService;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@Service
+class EventSchedulerStatsServiceImpl implements EventSchedulerStatsService {
+  private final DeadEventRepository deadEventRepository;
+  private final EventMetrics eventMetrics;
+  private final EventScheduler eventScheduler;
+
+  public EventSchedulerStatsServiceImpl(DeadEventRepository deadEventRepository, EventMetrics eventMetrics,
+                                        EventScheduler eventScheduler) {
+    this.deadEventRepository = deadEventRepository;
+    this.eventMetrics = eventMetrics;
+    this.eventScheduler = eventScheduler;
+  }
+
+  @Override
+  public EventSchedulerStatsDto getStats() {
+    // The timers are cumulative since the start of the application.
+    var kinds = new ArrayList<EventKindStatsDto>();
+    for (var kind : EventKind.values()) {
+      var handling = eventMetrics.getHandlingTimer(kind);
+      var lag = eventMetrics.getLagTimer(kind);
+      kinds.add(new EventKindStatsDto(kind.name(), handling.count(), handling.mean(TimeUnit.MILLISECONDS),
+          handling.max(TimeUnit.MILLISECONDS), lag.mean(TimeUnit.MILLISECONDS), lag.max(TimeUnit.MILLISECONDS),
+          eventMetrics.getNumRetries(kind), eventMetrics.getNumSerializationFailures(kind)));
+    }
+    var partitions = eventScheduler.getPartitionsStats().stream()
+        .map(stats -> new EventPartitionStatsDto(stats.numPendingEvents(), stats.lagInMs()))
+        .collect(Collectors.toList());
+    return new EventSchedulerStatsDto(eventScheduler.getCurrentLagInMs(), eventScheduler.getNumQueuedEvents(),
+        eventScheduler.getNumRetryingEvents(), deadEventRepository.count(), kinds, partitions);
+  }
+}
@@ -88,7 +88,7 @@ class FlightEventsServiceImpl implements FlightEventsService {
       var targetCoordinates = Converter.convert(flight.getTargetCoordinates());
       var mission = Converter.convert(flight.getMission());
       var resources = Converter.convert(flight.getResources());
-      var units = FlightUtils.convertUnitsWithPositiveCount(flight.getUnits());
+      var units = FlightUtils.convertUnitsWithPositiveCount(flight.getUnitsView());
 
       BiFunction<Date, FlightEventKindDto, FlightEventDto> createEventDto = (var at, var kind) ->
           new FlightEventDto(flight.getId(), at, flight.getStartUserId(), flight.getStartBodyId(), startCoordinates,
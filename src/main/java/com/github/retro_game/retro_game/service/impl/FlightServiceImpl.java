@@ -1,6 +1,8 @@
 package com.github.retro_game.retro_game.service.impl;
 
+import com.github.retro_game.retro_game.battleengine.BattleInput;
 import com.github.retro_game.retro_game.cache.BodyInfoCache;
+import com.github.retro_game.retro_game.cache.CacheObserver;
 import com.github.retro_game.retro_game.dto.*;
 import com.github.retro_game.retro_game.entity.*;
 import com.github.retro_game.retro_game.model.Item;
@@ -12,18 +14,25 @@ import com.github.retro_game.retro_game.service.ActivityService;
 import com.github.retro_game.retro_game.service.BodyCreationService;
 import com.github.retro_game.retro_game.service.exception.*;
 import com.github.retro_game.retro_game.service.impl.missionhandler.AttackMissionHandler;
+import com.github.retro_game.retro_game.service.impl.missionhandler.PreparedBattle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.TransientDataAccessException;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
 
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -35,7 +44,9 @@ class FlightServiceImpl implements FlightServiceInternal {
   private final boolean astrophysicsBasedColonization;
   private final int maxPlanets;
   private final int fleetSpeed;
+  private final PlatformTransactionManager platformTransactionManager;
   private final BodyInfoCache bodyInfoCache;
+  private final CacheObserver cacheObserver;
   private final BodyRepository bodyRepository;
   private final DebrisFieldRepository debrisFieldRepository;
   private final FlightRepository flightRepository;
@@ -55,15 +66,18 @@ class FlightServiceImpl implements FlightServiceInternal {
 
   FlightServiceImpl(@Value("${retro-game.astrophysics-based-colonization}") boolean astrophysicsBasedColonization,
                     @Value("${retro-game.max-planets}") int maxPlanets,
-                    @Value("${retro-game.fleet-speed}") int fleetSpeed, BodyInfoCache bodyInfoCache,
-                    BodyRepository bodyRepository, DebrisFieldRepository debrisFieldRepository,
+                    @Value("${retro-game.fleet-speed}") int fleetSpeed,
+                    PlatformTransactionManager platformTransactionManager, BodyInfoCache bodyInfoCache,
+                    CacheObserver cacheObserver, BodyRepository bodyRepository, DebrisFieldRepository debrisFieldRepository,
                     EventRepository eventRepository, FlightRepository flightRepository,
                     FlightViewRepository flightViewRepository, PartyRepository partyRepository,
                     UserRepository userRepository) {
     this.astrophysicsBasedColonization = astrophysicsBasedColonization;
     this.maxPlanets = maxPlanets;
     this.fleetSpeed = fleetSpeed;
+    this.platformTransactionManager = platformTransactionManager;
     this.bodyInfoCache = bodyInfoCache;
+    this.cacheObserver = cacheObserver;
     this.bodyRepository = bodyRepository;
     this.debrisFieldRepository = debrisFieldRepository;
     this.eventRepository = eventRepository;
@@ -146,7 +160,7 @@ class FlightServiceImpl implements FlightServiceInternal {
       var targetBodyName = targetBodyId != null ? bodyInfoCache.get(targetBodyId).getName() : null;
       var targetCoordinates = Converter.convert(flight.getTargetCoordinates());
 
-      var units = FlightUtils.convertUnitsWithPositiveCount(flight.getUnits());
+      var units = FlightUtils.convertUnitsWithPositiveCount(flight.getUnitsView());
 
       var recallable = flight.getMission() != Mission.MISSILE_ATTACK && flight.getArrivalAt() != null &&
           (flight.getArrivalAt().after(now) ||
@@ -189,7 +203,7 @@ class FlightServiceImpl implements FlightServiceInternal {
   @Override
   @Transactional(readOnly = true)
   public Map<UnitKindDto, FlyableUnitInfoDto> getFlyableUnits(long bodyId) {
-    var body = bodyServiceInternal.getUpdated(bodyId);
+    var body = bodyServiceInternal.getProjected(bodyId);
     User user = body.getUser();
     return UnitItem.getFleet().entrySet().stream()
         .filter(e -> e.getKey() != UnitKind.SOLAR_SATELLITE)
@@ -579,6 +593,7 @@ class FlightServiceImpl implements FlightServiceInternal {
       event.setAt(flight.getArrivalAt());
       event.setKind(EventKind.FLIGHT);
       event.setParam(flight.getId());
+      event.setBodyId(getArrivalBodyId(flight));
       eventScheduler.schedule(event);
     }
 
@@ -763,6 +778,7 @@ class FlightServiceImpl implements FlightServiceInternal {
     event.setAt(f.getArrivalAt());
     event.setKind(EventKind.FLIGHT);
     event.setParam(f.getId());
+    event.setBodyId(getArrivalBodyId(f));
     eventScheduler.schedule(event);
   }
 
@@ -849,9 +865,172 @@ class FlightServiceImpl implements FlightServiceInternal {
     event.setParam(flights.get(0).getId());
   }
 
+  @Override
+  @Transactional(readOnly = true)
+  public long getEventBodyId(Event event) {
+    var flightOpt = flightRepository.findById(event.getParam());
+    if (flightOpt.isEmpty()) {
+      return 0;
+    }
+    var flight = flightOpt.get();
+    var isReturn = event.getAt().toInstant().getEpochSecond() == flight.getReturnAt().toInstant().getEpochSecond();
+    return isReturn ? flight.getStartBody().getId() : getArrivalBodyId(flight);
+  }
+
+  @Override
+  @Transactional
+  public void postpone(Event event, Date at) {
+    var from = event.getAt().toInstant().getEpochSecond();
+    var delay = at.toInstant().getEpochSecond() - from;
+    event.setAt(at);
+    var flightOpt = flightRepository.findById(event.getParam());
+    if (flightOpt.isEmpty()) {
+      return;
+    }
+    var flight = flightOpt.get();
+    var flights = getEventFlights(flight, from);
+    for (var f : flights) {
+      f.setArrivalAt(postpone(f.getArrivalAt(), from, delay));
+      f.setHoldUntil(postpone(f.getHoldUntil(), from, delay));
+      f.setReturnAt(postpone(f.getReturnAt(), from, delay));
+    }
+    logger.info("Postponed flight event: flightId={} numFlights={} delaySeconds={}", flight.getId(), flights.size(),
+        delay);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public List<Long> getEventFlightIds(long flightId, Date at) {
+    return flightRepository.findById(flightId)
+        .map(flight -> getEventFlights(flight, at.toInstant().getEpochSecond()).stream()
+            .map(Flight::getId)
+            .collect(Collectors.toList()))
+        .orElse(Collections.emptyList());
+  }
+
+  // The event of a party arrival is for all the flights of the party.
+  private List<Flight> getEventFlights(Flight flight, long at) {
+    var party = flight.getParty();
+    var isPartyArrival = party != null && flight.getArrivalAt() != null &&
+        flight.getArrivalAt().toInstant().getEpochSecond() == at;
+    return isPartyArrival ? flightRepository.findByPartyOrderById(party) : List.of(flight);
+  }
+
+  @Nullable
+  private static Date postpone(@Nullable Date date, long from, long delay) {
+    if (date == null || date.toInstant().getEpochSecond() < from) {
+      return date;
+    }
+    return Date.from(Instant.ofEpochSecond(date.toInstant().getEpochSecond() + delay));
+  }
+
+  private static boolean isBattleArrival(Event event, Flight flight) {
+    var mission = flight.getMission();
+    var isArrival = event.getAt().toInstant().getEpochSecond() != flight.getReturnAt().toInstant().getEpochSecond();
+    return isArrival && (mission == Mission.ATTACK || mission == Mission.DESTROY);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public Set<Long> getBattleEventIds(List<Event> events) {
+    var flights = flightRepository.findAllById(events.stream().map(Event::getParam).collect(Collectors.toList()))
+        .stream()
+        .collect(Collectors.toMap(Flight::getId, Function.identity()));
+    return events.stream()
+        .filter(event -> {
+          var flight = flights.get(event.getParam());
+          return flight != null && isBattleArrival(event, flight);
+        })
+        .map(Event::getId)
+        .collect(Collectors.toSet());
+  }
+
+  @Override
+  public Optional<PreparedBattle> prepareBattle(Event event) {
+    return Optional.ofNullable(prepareBattles(List.of(event)).get(event.getId()));
+  }
+
+  @Override
+  public Map<Long, PreparedBattle> prepareBattles(List<Event> events) {
+    // The combatants are read in a read-only transaction, which is rolled back. The target bodies are only projected to
+    // the arrival times, nothing is written. The battles themselves are fought after the transaction ends, so that no
+    // snapshot nor locks are held while the battle engine runs.
+    var txDef = new DefaultTransactionDefinition();
+    txDef.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    txDef.setReadOnly(true);
+    var txStatus = platformTransactionManager.getTransaction(txDef);
+
+    var eventIds = new ArrayList<Long>();
+    var flightIds = new ArrayList<Long>();
+    var inputs = new ArrayList<BattleInput>();
+    try {
+      for (var event : events) {
+        var flightOpt = flightRepository.findById(event.getParam());
+        if (flightOpt.isEmpty()) {
+          continue;
+        }
+        var flight = flightOpt.get();
+        if (isBattleArrival(event, flight)) {
+          eventIds.add(event.getId());
+          flightIds.add(flight.getId());
+          inputs.add(attackMissionHandler.prepareInput(flight));
+        }
+      }
+    } catch (TransientDataAccessException e) {
+      logger.warn("Preparing battles failed due to concurrent access: numEvents={}", events.size());
+      return Collections.emptyMap();
+    } finally {
+      platformTransactionManager.rollback(txStatus);
+    }
+
+    if (inputs.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    var battles = attackMissionHandler.fightAll(flightIds, inputs);
+    var preparedBattles = new HashMap<Long, PreparedBattle>();
+    for (var i = 0; i < battles.size(); i++) {
+      preparedBattles.put(eventIds.get(i), battles.get(i));
+    }
+    return preparedBattles;
+  }
+
   @Override
   @Transactional(isolation = Isolation.SERIALIZABLE)
   public void handle(Event event) {
+    doHandle(event, null);
+  }
+
+  @Override
+  @Transactional(isolation = Isolation.SERIALIZABLE)
+  public void handleAll(List<Event> events) {
+    for (var event : events) {
+      // An earlier event of the batch could have deleted or rescheduled the event.
+      var current = eventRepository.findById(event.getId());
+      if (current.isPresent() && current.get().getAt().getTime() == event.getAt().getTime()) {
+        doHandle(current.get(), null);
+      }
+    }
+  }
+
+  @Override
+  @Transactional(isolation = Isolation.SERIALIZABLE)
+  public void handleAll(List<Event> events, Map<Long, PreparedBattle> preparedBattles) {
+    for (var event : events) {
+      // An earlier event of the batch could have deleted or rescheduled the event.
+      var current = eventRepository.findById(event.getId());
+      if (current.isPresent() && current.get().getAt().getTime() == event.getAt().getTime()) {
+        doHandle(current.get(), preparedBattles.get(event.getId()));
+      }
+    }
+  }
+
+  @Override
+  @Transactional(isolation = Isolation.SERIALIZABLE)
+  public void handle(Event event, PreparedBattle preparedBattle) {
+    doHandle(event, preparedBattle);
+  }
+
+  private void doHandle(Event event, @Nullable PreparedBattle preparedBattle) {
     Flight flight = flightRepository.getOne(event.getParam());
     eventRepository.delete(event);
     if (event.getAt().toInstant().getEpochSecond() == flight.getReturnAt().toInstant().getEpochSecond()) {
@@ -860,7 +1039,7 @@ class FlightServiceImpl implements FlightServiceInternal {
     }
     switch (flight.getMission()) {
       case ATTACK:
-        attackMissionHandler.handle(flight, false);
+        attackMissionHandler.handle(flight, false, preparedBattle);
         break;
       case COLONIZATION:
         handleColonization(flight);
@@ -869,7 +1048,7 @@ class FlightServiceImpl implements FlightServiceInternal {
         handleDeployment(flight);
         break;
       case DESTROY:
-        attackMissionHandler.handle(flight, true);
+        attackMissionHandler.handle(flight, true, preparedBattle);
         break;
       case ESPIONAGE:
         handleEspionage(flight);
@@ -1022,10 +1201,13 @@ class FlightServiceImpl implements FlightServiceInternal {
       // If not only probes sent for espionage, always counter.
       counterChance = 1.0;
     } else {
-      int numTargetShips = body.getUnits().entrySet().stream()
-          .filter(e -> UnitItem.getFleet().containsKey(e.getKey()))
-          .mapToInt(Map.Entry::getValue)
-          .sum();
+      var bodyUnits = body.getUnitsView();
+      int numTargetShips = 0;
+      for (var i = 0; i < bodyUnits.size(); i++) {
+        if (UnitItem.getFleet().containsKey(bodyUnits.getKind(i))) {
+          numTargetShips += bodyUnits.get(i);
+        }
+      }
       numTargetShips += holdingFlights.stream()
           .mapToInt(Flight::getTotalUnitsCount)
           .sum();
@@ -1069,8 +1251,9 @@ class FlightServiceImpl implements FlightServiceInternal {
       Resources flightResources = flight.getResources();
 
       long totalCapacity = 0;
-      for (var entry : flight.getUnits().entrySet()) {
-        totalCapacity += (long) entry.getValue() * Item.get(entry.getKey()).getCapacity();
+      var flightUnits = flight.getUnitsView();
+      for (var i = 0; i < flightUnits.size(); i++) {
+        totalCapacity += (long) flightUnits.get(i) * Item.get(flightUnits.getKind(i)).getCapacity();
       }
       totalCapacity -= (long) Math.ceil(flightResources.getMetal() + flightResources.getCrystal() +
           flightResources.getDeuterium());
@@ -1115,6 +1298,7 @@ class FlightServiceImpl implements FlightServiceInternal {
       debrisField.setCrystal(remainingCrystal);
       debrisField.setUpdatedAt(flight.getArrivalAt());
       debrisFieldRepository.save(debrisField);
+      cacheObserver.notifyDebrisFieldUpdated(coordinates.getGalaxy(), coordinates.getSystem());
 
       flightResources.setMetal(flightResources.getMetal() + harvestedMetal);
       flightResources.setCrystal(flightResources.getCrystal() + harvestedCrystal);
@@ -1140,6 +1324,7 @@ class FlightServiceImpl implements FlightServiceInternal {
       event.setAt(flight.getHoldUntil());
       event.setKind(EventKind.FLIGHT);
       event.setParam(flight.getId());
+      event.setBodyId(getArrivalBodyId(flight));
       eventScheduler.schedule(event);
     } else {
       logger.info("Hold ended: flightId={} startUserId={} startBodyId={} targetUserId={} targetBodyId={}" +
@@ -1250,21 +1435,13 @@ class FlightServiceImpl implements FlightServiceInternal {
     }
 
     Map<UnitKind, UnitItem> defense = UnitItem.getDefense();
-    var units = body.getUnits().entrySet().stream()
-        .filter(e -> {
-          var kind = e.getKey();
-          var count = e.getValue();
-          return count > 0 && defense.containsKey(kind) && kind != UnitKind.ANTI_BALLISTIC_MISSILE &&
-              kind != UnitKind.INTERPLANETARY_MISSILE;
-        })
-        .collect(Collectors.toMap(
-            Map.Entry::getKey,
-            Map.Entry::getValue,
-            (a, b) -> {
-              throw new IllegalStateException();
-            },
-            () -> new EnumMap<>(UnitKind.class)
-        ));
+    var units = new EnumMap<UnitKind, Integer>(UnitKind.class);
+    body.getUnitsView().forEachPositive((kind, count) -> {
+      if (defense.containsKey(kind) && kind != UnitKind.ANTI_BALLISTIC_MISSILE &&
+          kind != UnitKind.INTERPLANETARY_MISSILE) {
+        units.put(kind, count);
+      }
+    });
 
     var order = new ArrayList<UnitKind>(units.keySet().size());
     var target = mainTarget;
@@ -1308,11 +1485,8 @@ class FlightServiceImpl implements FlightServiceInternal {
   }
 
   private void deployUnits(Flight flight, Body body) {
-    for (var entry : flight.getUnits().entrySet()) {
-      UnitKind kind = entry.getKey();
-      var count = entry.getValue();
-      body.setUnitsCount(kind, body.getUnitsCount(kind) + count);
-    }
+    flight.getUnitsView().forEachPositive((kind, count) ->
+        body.setUnitsCount(kind, body.getUnitsCount(kind) + count));
   }
 
   private List<Flight> getHoldingFlights(Body body, Date at) {
@@ -1325,6 +1499,13 @@ class FlightServiceImpl implements FlightServiceInternal {
     event.setAt(flight.getReturnAt());
     event.setKind(EventKind.FLIGHT);
     event.setParam(flight.getId());
+    event.setBodyId(flight.getStartBody().getId());
     eventScheduler.schedule(event);
   }
+
+  private static long getArrivalBodyId(Flight flight) {
+    // The target body is null when the target position is empty, e.g. colonization.
+    var targetBody = flight.getTargetBody();
+    return targetBody != null ? targetBody.getId() : flight.getStartBody().getId();
+  }
 }
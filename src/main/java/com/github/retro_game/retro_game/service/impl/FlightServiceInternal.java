@@ -1,13 +1,47 @@
 package com.github.retro_game.retro_game.service.impl;
 
 import com.github.retro_game.retro_game.entity.Body;
+import com.github.retro_game.retro_game.entity.Event;
 import com.github.retro_game.retro_game.entity.User;
 import com.github.retro_game.retro_game.service.FlightService;
+import com.github.retro_game.retro_game.service.impl.missionhandler.PreparedBattle;
 
 import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 interface FlightServiceInternal extends EventHandler, FlightService {
   boolean existsByStartOrTargetIn(Collection<Body> bodies);
 
   boolean existsByUser(User user);
+
+  // Fights the battle of an attack arrival event ahead of the event, outside of the handling transaction. Empty if the
+  // event is not an attack arrival, or if the battle couldn't be prepared.
+  Optional<PreparedBattle> prepareBattle(Event event);
+
+  // The same as prepareBattle() for many events, the battles are fought as a batch. Returns the prepared battles by the
+  // ids of the events.
+  Map<Long, PreparedBattle> prepareBattles(List<Event> events);
+
+  // The ids of the events that are arrivals of attacks or destroys, i.e. the ones with a battle.
+  Set<Long> getBattleEventIds(List<Event> events);
+
+  void handle(Event event, PreparedBattle preparedBattle);
+
+  void handleAll(List<Event> events, Map<Long, PreparedBattle> preparedBattles);
+
+  // The body the flight event touches: the start body for a return, the target body otherwise. 0 if the flight doesn't
+  // exist anymore. Events store the body when they are scheduled, this is only needed for the events scheduled before.
+  long getEventBodyId(Event event);
+
+  // Moves a flight event to a later time. The times of the flight from the event on, and of the whole party for a party
+  // arrival, are moved by the same delay, so that the event is still handled as the same phase of the flight.
+  void postpone(Event event, Date at);
+
+  // The ids of the flights a flight event with the given param and time is for, the whole party for a party arrival.
+  // Empty if the flight doesn't exist anymore.
+  List<Long> getEventFlightIds(long flightId, Date at);
 }
@@ -1,6 +1,7 @@
 package com.github.retro_game.retro_game.service.impl;
 
 import com.github.retro_game.retro_game.cache.AllianceTagCache;
+import com.github.retro_game.retro_game.cache.GalaxySystemCache;
 import com.github.retro_game.retro_game.cache.StatisticsCache;
 import com.github.retro_game.retro_game.cache.UserAllianceCache;
 import com.github.retro_game.retro_game.dto.ActiveStateDto;
@@ -10,7 +11,6 @@ import com.github.retro_game.retro_game.dto.StatisticsSummaryDto;
 import com.github.retro_game.retro_game.entity.GalaxySlot;
 import com.github.retro_game.retro_game.entity.UnitKind;
 import com.github.retro_game.retro_game.model.unit.UnitItem;
-import com.github.retro_game.retro_game.repository.GalaxySlotRepository;
 import com.github.retro_game.retro_game.security.CustomUser;
 import com.github.retro_game.retro_game.service.ActivityService;
 import com.github.retro_game.retro_game.service.GalaxyService;
@@ -28,18 +28,18 @@ import java.util.Map;
 @Service
 class GalaxyServiceImpl implements GalaxyService {
   private static final Logger logger = LoggerFactory.getLogger(GalaxyServiceImpl.class);
-  private final GalaxySlotRepository galaxySlotRepository;
   private final AllianceTagCache allianceTagCache;
+  private final GalaxySystemCache galaxySystemCache;
   private final StatisticsCache statisticsCache;
   private final UserAllianceCache userAllianceCache;
   private ActivityService activityService;
   private NoobProtectionService noobProtectionService;
   private UserServiceInternal userServiceInternal;
 
-  public GalaxyServiceImpl(GalaxySlotRepository galaxySlotRepository, AllianceTagCache allianceTagCache,
+  public GalaxyServiceImpl(AllianceTagCache allianceTagCache, GalaxySystemCache galaxySystemCache,
                            StatisticsCache statisticsCache, UserAllianceCache userAllianceCache) {
-    this.galaxySlotRepository = galaxySlotRepository;
     this.allianceTagCache = allianceTagCache;
+    this.galaxySystemCache = galaxySystemCache;
     this.statisticsCache = statisticsCache;
     this.userAllianceCache = userAllianceCache;
   }
@@ -66,7 +66,8 @@ class GalaxyServiceImpl implements GalaxyService {
 
     long now = Instant.now().getEpochSecond();
 
-    List<GalaxySlot> slots = galaxySlotRepository.findAllByGalaxyAndSystem(galaxy, system);
+    // The cached slots are shared, everything that depends on the viewer or changes with time is computed below.
+    List<GalaxySlot> slots = galaxySystemCache.get(galaxy, system);
 
     // Get the activities of bodies.
     List<Long> ids = new ArrayList<>();
@@ -42,7 +42,7 @@ class JumpGateServiceImpl implements JumpGateService {
 
   @Override
   public JumpGateInfoDto getInfo(long bodyId) {
-    Body body = bodyServiceInternal.getUpdated(bodyId);
+    Body body = bodyServiceInternal.getProjected(bodyId);
     Date canJumpAt = canJumpAt(body);
     List<JumpGateTargetDto> targets = body.getUser().getBodies().values().stream()
         .filter(b -> b.getId() != bodyId && b.getBuildingLevel(BuildingKind.JUMP_GATE) > 0)
@@ -81,10 +81,10 @@ public class RecordsServiceImpl implements RecordsService {
     var user = userRepository.getById(userId);
     var bodies = user.getBodies();
 
-    // Update resources and shipyard on all bodies.
+    // Project resources and shipyard on all bodies, the bodies themselves are not written.
     var now = Date.from(Instant.ofEpochSecond(Instant.now().getEpochSecond()));
     for (var entry : bodies.entrySet())
-      bodyServiceInternal.updateResourcesAndShipyard(entry.getValue(), now);
+      bodyServiceInternal.projectResourcesAndShipyard(entry.getValue(), now);
 
     var records = recordRepository.findAll().stream().collect(Collectors.toMap(Record::getKey, Function.identity()));
 
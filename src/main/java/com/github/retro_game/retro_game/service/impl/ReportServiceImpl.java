@@ -32,7 +32,6 @@ import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @Service("reportService")
 class ReportServiceImpl implements ReportServiceInternal {
@@ -219,22 +218,20 @@ class ReportServiceImpl implements ReportServiceInternal {
       ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
       DataOutputStream stream = new DataOutputStream(byteArrayOutputStream);
 
-      var units = body.getUnits();
+      var units = body.getUnitsView();
 
       stream.writeBoolean(fleetVisible);
       Long fleet = null;
       if (fleetVisible) {
-        var bodyUnitsStream = units.entrySet().stream()
-            .filter(e -> UnitItem.getFleet().containsKey(e.getKey()));
-        var holdingUnitsStream = holdingFlights.stream().flatMap(f -> f.getUnits().entrySet().stream());
-        var fleetUnits = Stream.concat(bodyUnitsStream, holdingUnitsStream)
-            .filter(e -> e.getValue() > 0)
-            .collect(Collectors.toMap(
-                Map.Entry::getKey,
-                Map.Entry::getValue,
-                Integer::sum,
-                () -> new EnumMap<>(UnitKind.class)
-            ));
+        var fleetUnits = new EnumMap<UnitKind, Integer>(UnitKind.class);
+        units.forEachPositive((kind, count) -> {
+          if (UnitItem.getFleet().containsKey(kind)) {
+            fleetUnits.put(kind, count);
+          }
+        });
+        for (var holdingFlight : holdingFlights) {
+          holdingFlight.getUnitsView().forEachPositive((kind, count) -> fleetUnits.merge(kind, count, Integer::sum));
+        }
         fleet = calculateUnitsCost(fleetUnits);
         serializeEnumMap(stream, fleetUnits);
       }
@@ -242,32 +239,27 @@ class ReportServiceImpl implements ReportServiceInternal {
       stream.writeBoolean(defenseVisible);
       Long defense = null;
       if (defenseVisible) {
-        var defenseUnits = units.entrySet().stream()
-            .filter(e -> e.getValue() > 0 && UnitItem.getDefense().containsKey(e.getKey()))
-            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> {
-              throw new IllegalStateException();
-            }, () -> new EnumMap<>(UnitKind.class)));
+        var defenseUnits = new EnumMap<UnitKind, Integer>(UnitKind.class);
+        units.forEachPositive((kind, count) -> {
+          if (UnitItem.getDefense().containsKey(kind)) {
+            defenseUnits.put(kind, count);
+          }
+        });
         defense = calculateUnitsCost(defenseUnits);
         serializeEnumMap(stream, defenseUnits);
       }
 
       stream.writeBoolean(buildingsVisible);
       if (buildingsVisible) {
-        var buildings = body.getBuildings().entrySet().stream()
-            .filter(e -> e.getValue() > 0)
-            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> {
-              throw new IllegalStateException();
-            }, () -> new EnumMap<>(BuildingKind.class)));
+        var buildings = new EnumMap<BuildingKind, Integer>(BuildingKind.class);
+        body.getBuildingsView().forEachPositive(buildings::put);
         serializeEnumMap(stream, buildings);
       }
 
       stream.writeBoolean(technologiesVisible);
       if (technologiesVisible) {
-        var technologies = body.getUser().getTechnologies().entrySet().stream()
-            .filter(e -> e.getValue() > 0)
-            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> {
-              throw new IllegalStateException();
-            }, () -> new EnumMap<>(TechnologyKind.class)));
+        var technologies = new EnumMap<TechnologyKind, Integer>(TechnologyKind.class);
+        body.getUser().getTechnologiesView().forEachPositive(technologies::put);
         serializeEnumMap(stream, technologies);
       }
 
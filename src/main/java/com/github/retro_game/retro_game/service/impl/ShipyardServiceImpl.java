@@ -19,8 +19,6 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 @Service
 public class ShipyardServiceImpl implements ShipyardServiceInternal {
@@ -40,7 +38,7 @@ public class ShipyardServiceImpl implements ShipyardServiceInternal {
   @Override
   @Transactional(isolation = Isolation.REPEATABLE_READ, readOnly = true)
   public UnitsAndQueuePairDto getUnitsAndQueuePair(long bodyId, UnitTypeDto type) {
-    var body = bodyServiceInternal.getUpdated(bodyId);
+    var body = bodyServiceInternal.getProjected(bodyId);
     var production = bodyServiceInternal.getProduction(body);
     var state = new EnumMap<UnitKind, Integer>(UnitKind.class);
     var queue = getQueueAndUpdateState(state, body);
@@ -183,26 +181,19 @@ public class ShipyardServiceImpl implements ShipyardServiceInternal {
   @Override
   @Transactional(readOnly = true)
   public Map<UnitKind, Tuple2<Integer, Integer>> getCurrentAndFutureCounts(Body body) {
-    EnumMap<UnitKind, Integer> inQueue = body.getShipyardQueue().stream()
-        .collect(Collectors.toMap(
-            ShipyardQueueEntry::kind,
-            ShipyardQueueEntry::count,
-            Integer::sum,
-            () -> new EnumMap<>(UnitKind.class)
-        ));
-    return Arrays.stream(UnitKind.values())
-        .filter(kind -> body.getUnitsCount(kind) != 0 || inQueue.getOrDefault(kind, 0) != 0)
-        .collect(Collectors.toMap(
-            Function.identity(),
-            kind -> {
-              int n = body.getUnitsCount(kind);
-              return Tuple.of(n, n + inQueue.getOrDefault(kind, 0));
-            },
-            (a, b) -> {
-              throw new IllegalStateException();
-            },
-            () -> new EnumMap<>(UnitKind.class)
-        ));
+    var units = body.getUnitsView();
+    var inQueue = new int[units.size()];
+    for (var entry : body.getShipyardQueue()) {
+      inQueue[entry.kind().ordinal()] += entry.count();
+    }
+    var counts = new EnumMap<UnitKind, Tuple2<Integer, Integer>>(UnitKind.class);
+    for (var i = 0; i < units.size(); i++) {
+      var n = units.get(i);
+      if (n != 0 || inQueue[i] != 0) {
+        counts.put(units.getKind(i), Tuple.of(n, n + inQueue[i]));
+      }
+    }
+    return counts;
   }
 
   @Override
@@ -290,6 +281,15 @@ public class ShipyardServiceImpl implements ShipyardServiceInternal {
   }
 
   public void update(Body body, Date at) {
+    update(body, at, true);
+  }
+
+  @Override
+  public void project(Body body, Date at) {
+    update(body, at, false);
+  }
+
+  private void update(Body body, Date at, boolean log) {
     if (body.getShipyardStartAt() == null)
       return;
 
@@ -326,7 +326,9 @@ public class ShipyardServiceImpl implements ShipyardServiceInternal {
       if (numBuilt == 0)
         break;
 
-      logger.info("Shipyard: bodyId={} kind={} count={}", body.getId(), entry.kind(), numBuilt);
+      if (log) {
+        logger.info("Shipyard: bodyId={} kind={} count={}", body.getId(), entry.kind(), numBuilt);
+      }
 
       changed = true;
       if (itemTime >= 1000) {
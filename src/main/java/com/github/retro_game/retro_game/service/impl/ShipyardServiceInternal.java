@@ -5,8 +5,12 @@ import com.github.retro_game.retro_game.entity.UnitKind;
 import com.github.retro_game.retro_game.service.ShipyardService;
 import io.vavr.Tuple2;
 
+import java.util.Date;
 import java.util.Map;
 
 interface ShipyardServiceInternal extends ShipyardService {
+  // The same as update(), for a body whose changes are not persisted.
+  void project(Body body, Date at);
+
   Map<UnitKind, Tuple2<Integer, Integer>> getCurrentAndFutureCounts(Body body);
 }
@@ -65,7 +65,7 @@ public class TechnologyServiceImpl implements TechnologyServiceInternal {
   @Override
   @Transactional(isolation = Isolation.REPEATABLE_READ, readOnly = true)
   public TechnologiesAndQueuePairDto getTechnologiesAndQueuePair(long bodyId) {
-    var body = bodyServiceInternal.getUpdated(bodyId);
+    var body = bodyServiceInternal.getProjected(bodyId);
     var production = bodyServiceInternal.getProduction(body);
     var user = body.getUser();
     var state = user.getTechnologies();
@@ -534,6 +534,18 @@ public class TechnologyServiceImpl implements TechnologyServiceInternal {
     user.setTechnologyQueue(queue);
   }
 
+  @Override
+  @Transactional(isolation = Isolation.REPEATABLE_READ)
+  public void handleAll(List<Event> events) {
+    for (var event : events) {
+      // An earlier event of the batch could have deleted or rescheduled the event.
+      var current = eventRepository.findById(event.getId());
+      if (current.isPresent() && current.get().getAt().getTime() == event.getAt().getTime()) {
+        handle(current.get());
+      }
+    }
+  }
+
   @Override
   @Transactional(isolation = Isolation.REPEATABLE_READ)
   public void handle(Event event) {
@@ -1,5 +1,6 @@
 package com.github.retro_game.retro_game.service.impl;
 
+import com.github.retro_game.retro_game.cache.CacheObserver;
 import com.github.retro_game.retro_game.dto.TechnologyKindDto;
 import com.github.retro_game.retro_game.dto.UserContextDto;
 import com.github.retro_game.retro_game.dto.UserSettingsDto;
@@ -32,6 +33,7 @@ class UserServiceImpl implements UserServiceInternal {
   private final String defaultLanguage;
   private final String defaultSkin;
   private final PasswordEncoder passwordEncoder;
+  private final CacheObserver cacheObserver;
   private final EventRepository eventRepository;
   private final UserRepository userRepository;
   private ActivityService activityService;
@@ -42,11 +44,13 @@ class UserServiceImpl implements UserServiceInternal {
   public UserServiceImpl(@Value("${retro-game.default-language}") String defaultLanguage,
                          @Value("${retro-game.default-skin}") String defaultSkin,
                          PasswordEncoder passwordEncoder,
+                         CacheObserver cacheObserver,
                          EventRepository eventRepository,
                          UserRepository userRepository) {
     this.defaultLanguage = defaultLanguage;
     this.defaultSkin = defaultSkin;
     this.passwordEncoder = passwordEncoder;
+    this.cacheObserver = cacheObserver;
     this.eventRepository = eventRepository;
     this.userRepository = userRepository;
   }
@@ -279,6 +283,8 @@ class UserServiceImpl implements UserServiceInternal {
   private void enableVacationMode(User user, Date now, Date until) {
     updateActivitiesAndBodies(user, now);
     user.setVacationUntil(until);
+
+    cacheObserver.notifyUserUpdated();
   }
 
   @Override
@@ -313,6 +319,8 @@ class UserServiceImpl implements UserServiceInternal {
     updateActivitiesAndBodies(user, now);
     user.setVacationUntil(null);
     user.setForcedVacation(false);
+
+    cacheObserver.notifyUserUpdated();
   }
 
   private void updateActivitiesAndBodies(User user, Date at) {
@@ -399,5 +407,7 @@ class UserServiceImpl implements UserServiceInternal {
     Date now = Date.from(Instant.ofEpochSecond(Instant.now().getEpochSecond()));
     user.setVacationUntil(now);
     user.setForcedVacation(false);
+
+    cacheObserver.notifyUserUpdated();
   }
 }
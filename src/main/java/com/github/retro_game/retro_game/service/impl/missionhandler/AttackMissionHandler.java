@@ -1,9 +1,11 @@
 package com.github.retro_game.retro_game.service.impl.missionhandler;
 
 import com.github.retro_game.retro_game.battleengine.BattleEngine;
+import com.github.retro_game.retro_game.battleengine.BattleInput;
 import com.github.retro_game.retro_game.battleengine.Combatant;
 import com.github.retro_game.retro_game.battleengine.CombatantOutcome;
 import com.github.retro_game.retro_game.battleengine.UnitGroupStats;
+import com.github.retro_game.retro_game.cache.CacheObserver;
 import com.github.retro_game.retro_game.dto.MoonCreationResultDto;
 import com.github.retro_game.retro_game.dto.MoonDestructionResultDto;
 import com.github.retro_game.retro_game.entity.*;
@@ -15,16 +17,21 @@ import com.github.retro_game.retro_game.service.BodyCreationService;
 import com.github.retro_game.retro_game.service.impl.BodyServiceInternal;
 import com.github.retro_game.retro_game.service.impl.CombatReportServiceInternal;
 import com.github.retro_game.retro_game.service.impl.ReportServiceInternal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.vavr.Function3;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -46,11 +53,15 @@ public class AttackMissionHandler {
   private final double defenseDebrisFactor;
   private final double maxMoonChance;
   private final BattleEngine battleEngine;
+  private final CacheObserver cacheObserver;
   private final BodyRepository bodyRepository;
   private final DebrisFieldRepository debrisFieldRepository;
   private final EventRepository eventRepository;
   private final FlightRepository flightRepository;
   private final PartyRepository partyRepository;
+  private final Timer battleTimer;
+  private final Timer battleBatchTimer;
+  private final Counter outdatedBattlesCounter;
   private ActivityService activityService;
   private BodyServiceInternal bodyServiceInternal;
   private BodyCreationService bodyCreationService;
@@ -63,20 +74,33 @@ public class AttackMissionHandler {
                               @Value("${retro-game.fleet-debris-factor:0.3}") double fleetDebrisFactor,
                               @Value("${retro-game.defense-debris-factor:0.0}") double defenseDebrisFactor,
                               @Value("${retro-game.max-moon-chance:0.2}") double maxMoonChance,
-                              BattleEngine battleEngine, BodyRepository bodyRepository,
+                              BattleEngine battleEngine, CacheObserver cacheObserver, BodyRepository bodyRepository,
                               DebrisFieldRepository debrisFieldRepository, EventRepository eventRepository,
-                              FlightRepository flightRepository, PartyRepository partyRepository) {
+                              FlightRepository flightRepository, PartyRepository partyRepository,
+                              MeterRegistry meterRegistry) {
     this.fleetRebuildFactor = fleetRebuildFactor;
     this.defenseRebuildFactor = defenseRebuildFactor;
     this.fleetDebrisFactor = fleetDebrisFactor;
     this.defenseDebrisFactor = defenseDebrisFactor;
     this.maxMoonChance = maxMoonChance;
     this.battleEngine = battleEngine;
+    this.cacheObserver = cacheObserver;
     this.bodyRepository = bodyRepository;
     this.debrisFieldRepository = debrisFieldRepository;
     this.eventRepository = eventRepository;
     this.flightRepository = flightRepository;
     this.partyRepository = partyRepository;
+    this.battleTimer = Timer.builder("retro_game.battles.execution")
+        .description("Time of fighting a battle by the battle engine")
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    this.battleBatchTimer = Timer.builder("retro_game.battles.batch_execution")
+        .description("Time of fighting a batch of battles by the battle engine")
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    this.outdatedBattlesCounter = Counter.builder("retro_game.battles.outdated")
+        .description("Prepared battles fought again, as the combatants changed before the flight was handled")
+        .register(meterRegistry);
   }
 
   @Autowired
@@ -129,7 +153,49 @@ public class AttackMissionHandler {
   private record LossAlivePair(Loss loss, boolean alive) {
   }
 
+  // Makes the input of the battle as it would be fought if the flight arrived now. The target body is only projected
+  // to the arrival time, nothing is written.
+  public BattleInput prepareInput(Flight mainFlight) {
+    var targetBody = mainFlight.getTargetBody();
+    bodyServiceInternal.projectResourcesAndShipyard(targetBody, mainFlight.getArrivalAt());
+    var attackers = makeAttackers(getAttackersFlights(mainFlight));
+    var defenders = makeDefenders(targetBody, getDefendersFlights(mainFlight));
+    return new BattleInput(attackers, defenders, ThreadLocalRandom.current().nextInt());
+  }
+
+  // Fights the battle, this doesn't touch the database and should be called outside of any transaction.
+  public PreparedBattle fight(long flightId, BattleInput input) {
+    var startTime = System.nanoTime();
+    var outcome = battleEngine.fight(input.attackers(), input.defenders(), input.seed());
+    var executionTime = System.nanoTime() - startTime;
+    battleTimer.record(executionTime, TimeUnit.NANOSECONDS);
+    return new PreparedBattle(flightId, input, outcome, executionTime);
+  }
+
+  // Fights the battles as a batch. The battles of a batch may run in parallel, thus their execution times are unknown,
+  // only the time of the whole batch is recorded.
+  public List<PreparedBattle> fightAll(List<Long> flightIds, List<BattleInput> inputs) {
+    assert flightIds.size() == inputs.size();
+    if (inputs.size() == 1) {
+      return List.of(fight(flightIds.get(0), inputs.get(0)));
+    }
+    var startTime = System.nanoTime();
+    var outcomes = battleEngine.fightAll(inputs);
+    battleBatchTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+    var battles = new ArrayList<PreparedBattle>(inputs.size());
+    for (var i = 0; i < inputs.size(); i++) {
+      battles.add(new PreparedBattle(flightIds.get(i), inputs.get(i), outcomes.get(i),
+          PreparedBattle.UNKNOWN_EXECUTION_TIME));
+    }
+    return battles;
+  }
+
   public void handle(Flight mainFlight, boolean destroy) {
+    handle(mainFlight, destroy, null);
+  }
+
+  // The prepared battle is used if the combatants are still the same, otherwise the battle is fought again.
+  public void handle(Flight mainFlight, boolean destroy, @Nullable PreparedBattle preparedBattle) {
     var targetBody = mainFlight.getTargetBody();
 
     // Update resources and shipyard, and create activity.
@@ -152,21 +218,25 @@ public class AttackMissionHandler {
     }
 
     // Make the combatants.
-    var attackers = new ArrayList<Combatant>(attackersFlights.size());
-    for (var flight : attackersFlights) {
-      attackers.add(makeCombatantFromFlight(flight));
-    }
-    var defenders = new ArrayList<Combatant>(defendersFlights.size() + 1);
-    defenders.add(makeCombatantFromBody(targetBody));
-    for (var flight : defendersFlights) {
-      defenders.add(makeCombatantFromFlight(flight));
+    var attackers = makeAttackers(attackersFlights);
+    var defenders = makeDefenders(targetBody, defendersFlights);
+
+    // Fight, unless the battle was already fought with the same combatants.
+    PreparedBattle battle;
+    if (preparedBattle != null && preparedBattle.flightId() == mainFlight.getId() &&
+        preparedBattle.input().attackers().equals(attackers) && preparedBattle.input().defenders().equals(defenders)) {
+      battle = preparedBattle;
+    } else {
+      if (preparedBattle != null) {
+        logger.info("Prepared battle is outdated, fighting again: flight={}", mainFlight.getId());
+        outdatedBattlesCounter.increment();
+      }
+      var seed = ThreadLocalRandom.current().nextInt();
+      battle = fight(mainFlight.getId(), new BattleInput(attackers, defenders, seed));
     }
-
-    // Fight.
-    var seed = ThreadLocalRandom.current().nextInt();
-    var startTime = System.nanoTime();
-    var battleOutcome = battleEngine.fight(attackers, defenders, seed);
-    var executionTime = System.nanoTime() - startTime;
+    var seed = battle.input().seed();
+    var battleOutcome = battle.outcome();
+    var executionTime = battle.executionTime();
 
     assert battleOutcome.numRounds() >= 1;
     Function<CombatantOutcome, EnumMap<UnitKind, UnitGroupStats>> getLastRoundStats =
@@ -327,6 +397,23 @@ public class AttackMissionHandler {
     return flightRepository.findHoldingFlights(flight.getTargetBody(), flight.getArrivalAt(), pageRequest);
   }
 
+  private static List<Combatant> makeAttackers(List<Flight> attackersFlights) {
+    var attackers = new ArrayList<Combatant>(attackersFlights.size());
+    for (var flight : attackersFlights) {
+      attackers.add(makeCombatantFromFlight(flight));
+    }
+    return attackers;
+  }
+
+  private static List<Combatant> makeDefenders(Body targetBody, List<Flight> defendersFlights) {
+    var defenders = new ArrayList<Combatant>(defendersFlights.size() + 1);
+    defenders.add(makeCombatantFromBody(targetBody));
+    for (var flight : defendersFlights) {
+      defenders.add(makeCombatantFromFlight(flight));
+    }
+    return defenders;
+  }
+
   private static Combatant makeCombatantFromBody(Body body) {
     return makeCombatant(body.getUser(), body.getCoordinates(), body.getUnitsArray());
   }
@@ -454,6 +541,8 @@ public class AttackMissionHandler {
       df.setMetal(df.getMetal() + metal);
       df.setCrystal(df.getCrystal() + crystal);
     }
+
+    cacheObserver.notifyDebrisFieldUpdated(coords.getGalaxy(), coords.getSystem());
   }
 
   private double calcMoonChance(Flight mainFlight, Resources debris) {
@@ -18,6 +18,7 @@ public class MissionHandlerUtils {
 
   public void scheduleReturn(Flight flight) {
     var event = new Event(0, flight.getReturnAt(), EventKind.FLIGHT, flight.getId());
+    event.setBodyId(flight.getStartBody().getId());
     eventScheduler.schedule(event);
   }
 }
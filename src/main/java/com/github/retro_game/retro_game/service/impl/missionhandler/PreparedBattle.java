@@ -0,0 +1,11 @@
+package com.github.retro_game.retro_game.service.impl.missionhandler;
+
+import com.github.retro_game.retro_game.battleengine.BattleInput;
+import com.github.retro_game.retro_game.battleengine.BattleOutcome;
+
+// A battle fought ahead of the flight event, outside of its transaction. The outcome is valid only as long as the
+// combatants didn't change in the meantime.
+public record PreparedBattle(long flightId, BattleInput input, BattleOutcome outcome, long executionTime) {
+  // The execution time of a battle fought in a batch, it isn't shown in the combat report.
+  public static final long UNKNOWN_EXECUTION_TIME = -1L;
+}
@@ -0,0 +1,46 @@
+package com.github.retro_game.retro_game.battleengine;
+
+import com.github.retro_game.retro_game.entity.Coordinates;
+import com.github.retro_game.retro_game.entity.CoordinatesKind;
+import com.github.retro_game.retro_game.entity.UnitKind;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Random;
+
+// Generates random combatants for the battle engine tests.
+public class RandomCombatants {
+  public static Combatant generateCombatant(Random random, int maxUnitsPerKind) {
+    var weaponsTechnology = random.nextInt(30);
+    var shieldingTechnology = random.nextInt(30);
+    var armorTechnology = random.nextInt(30);
+    var unitGroups = new EnumMap<UnitKind, Long>(UnitKind.class);
+    var numKinds = random.nextInt(UnitKind.values().length + 1);
+    for (var i = 0; i < numKinds; i++) {
+      var k = random.nextInt(UnitKind.values().length);
+      var kind = UnitKind.values()[k];
+      var n = (long) random.nextInt(maxUnitsPerKind);
+      unitGroups.put(kind, n);
+    }
+    return new Combatant(1, new Coordinates(1, 1, 1, CoordinatesKind.PLANET), weaponsTechnology, shieldingTechnology,
+        armorTechnology, unitGroups);
+  }
+
+  public static List<Combatant> generateCombatants(Random random, int maxUnitsPerKind) {
+    var numCombatants = random.nextInt(10);
+    var combatants = new ArrayList<Combatant>(numCombatants);
+    for (var i = 0; i < numCombatants; i++)
+      combatants.add(generateCombatant(random, maxUnitsPerKind));
+    return combatants;
+  }
+
+  // Whether both sides have units, the strategies are called only for such battles.
+  public static boolean canFight(List<Combatant> attackers, List<Combatant> defenders) {
+    return countUnits(attackers) > 0 && countUnits(defenders) > 0;
+  }
+
+  private static long countUnits(List<Combatant> combatants) {
+    return combatants.stream().flatMap(c -> c.unitGroups().values().stream()).mapToLong(Long::longValue).sum();
+  }
+}
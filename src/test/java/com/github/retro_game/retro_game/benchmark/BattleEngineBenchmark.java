@@ -0,0 +1,128 @@
+package com.github.retro_game.retro_game.benchmark;
+
+import com.github.retro_game.retro_game.battleengine.*;
+import com.github.retro_game.retro_game.entity.Coordinates;
+import com.github.retro_game.retro_game.entity.CoordinatesKind;
+import com.github.retro_game.retro_game.entity.UnitKind;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Run with: mvn -B -P benchmark test-compile exec:exec
+// The native engines need libBattleEngine in the directory given by -Dbattle-engine.library.path (build by default).
+// Pass -Dbenchmark.args="..." to override the JMH options, e.g. -Dbenchmark.args="-p engine=java -prof gc".
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BattleEngineBenchmark {
+  public enum Scenario {
+    // A full ACS party against a planet with a large defense.
+    ACS_VS_DEFENDED_PLANET,
+    // A huge fleet of death stars against a defended planet, the rapid fire makes most shots.
+    DEATH_STAR_FLEET,
+    // A swarm of espionage probes against rocket launchers, the typical probe kill.
+    PROBE_SWARM,
+  }
+
+  private static final int MAX_COMBATANTS = 64;
+
+  @Param({"java", "native", "native-direct", "aggregated", "parallel", "vector", "arena", "off-heap"})
+  private String engine;
+
+  @Param
+  private Scenario scenario;
+
+  private BattleEngine battleEngine;
+  private List<Combatant> attackers;
+  private List<Combatant> defenders;
+  private int seed;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    var strategy = switch (engine) {
+      case "java" -> new JavaBattleEngineStrategy(0);
+      case "native" -> new NativeBattleEngineStrategy();
+      case "native-direct" -> new DirectNativeBattleEngineStrategy(0);
+      case "aggregated" -> new AggregatedBattleEngineStrategy();
+      case "parallel" -> new ParallelBattleEngineStrategy(0);
+      case "vector" -> new VectorBattleEngineStrategy();
+      case "arena" -> new ArenaBattleEngineStrategy();
+      case "off-heap" -> new OffHeapBattleEngineStrategy();
+      default -> throw new IllegalArgumentException("Wrong engine: " + engine);
+    };
+    battleEngine = new BattleEngineImpl(strategy);
+
+    switch (scenario) {
+      case ACS_VS_DEFENDED_PLANET -> {
+        attackers = new ArrayList<>(MAX_COMBATANTS);
+        for (var i = 0; i < MAX_COMBATANTS; i++) {
+          attackers.add(makeCombatant(i + 1, 18, 16, 18, unitGroups(
+              UnitKind.LITTLE_FIGHTER, 2_000L,
+              UnitKind.HEAVY_FIGHTER, 1_000L,
+              UnitKind.CRUISER, 500L,
+              UnitKind.BATTLESHIP, 300L,
+              UnitKind.BOMBER, 100L,
+              UnitKind.DESTROYER, 50L)));
+        }
+        defenders = Collections.singletonList(makeCombatant(1_000, 16, 16, 16, unitGroups(
+            UnitKind.ROCKET_LAUNCHER, 200_000L,
+            UnitKind.LIGHT_LASER, 100_000L,
+            UnitKind.HEAVY_LASER, 30_000L,
+            UnitKind.GAIUS_CANNON, 10_000L,
+            UnitKind.ION_CANNON, 10_000L,
+            UnitKind.PLASMA_TURRET, 2_000L,
+            UnitKind.SMALL_SHIELD_DOME, 1L,
+            UnitKind.LARGE_SHIELD_DOME, 1L)));
+      }
+      case DEATH_STAR_FLEET -> {
+        attackers = Collections.singletonList(makeCombatant(1, 20, 20, 20, unitGroups(
+            UnitKind.DEATH_STAR, 1_000_000L)));
+        defenders = Collections.singletonList(makeCombatant(2, 20, 20, 20, unitGroups(
+            UnitKind.ROCKET_LAUNCHER, 500_000L,
+            UnitKind.LIGHT_LASER, 500_000L,
+            UnitKind.HEAVY_LASER, 100_000L,
+            UnitKind.GAIUS_CANNON, 50_000L,
+            UnitKind.ION_CANNON, 50_000L,
+            UnitKind.PLASMA_TURRET, 20_000L,
+            UnitKind.SMALL_SHIELD_DOME, 1L,
+            UnitKind.LARGE_SHIELD_DOME, 1L)));
+      }
+      case PROBE_SWARM -> {
+        attackers = Collections.singletonList(makeCombatant(1, 10, 10, 10, unitGroups(
+            UnitKind.ESPIONAGE_PROBE, 200_000L)));
+        defenders = Collections.singletonList(makeCombatant(2, 10, 10, 10, unitGroups(
+            UnitKind.ROCKET_LAUNCHER, 20_000L)));
+      }
+    }
+
+    seed = 1;
+  }
+
+  @Benchmark
+  public BattleOutcome fight() {
+    // A fixed sequence of seeds makes the runs repeatable, while not replaying the very same battle every time.
+    return battleEngine.fight(attackers, defenders, seed++);
+  }
+
+  private static Combatant makeCombatant(long userId, int weaponsTechnology, int shieldingTechnology,
+                                         int armorTechnology, EnumMap<UnitKind, Long> unitGroups) {
+    var coordinates = new Coordinates(1, 1, (int) (userId % 15) + 1, CoordinatesKind.PLANET);
+    return new Combatant(userId, coordinates, weaponsTechnology, shieldingTechnology, armorTechnology, unitGroups);
+  }
+
+  private static EnumMap<UnitKind, Long> unitGroups(Object... kindsAndCounts) {
+    assert kindsAndCounts.length % 2 == 0;
+    var unitGroups = new EnumMap<UnitKind, Long>(UnitKind.class);
+    for (var i = 0; i < kindsAndCounts.length; i += 2) {
+      unitGroups.put((UnitKind) kindsAndCounts[i], (Long) kindsAndCounts[i + 1]);
+    }
+    return unitGroups;
+  }
+}
@@ -1,50 +1,74 @@
 package com.github.retro_game.retro_game.differential;
 
-import com.github.retro_game.retro_game.battleengine.Combatant;
+import com.github.retro_game.retro_game.battleengine.ArenaBattleEngineStrategy;
+import com.github.retro_game.retro_game.battleengine.BattleEngineStrategy;
+import com.github.retro_game.retro_game.battleengine.BattleInput;
 import com.github.retro_game.retro_game.battleengine.CombatantOutcome;
+import com.github.retro_game.retro_game.battleengine.DirectNativeBattleEngineStrategy;
 import com.github.retro_game.retro_game.battleengine.JavaBattleEngineStrategy;
 import com.github.retro_game.retro_game.battleengine.NativeBattleEngineStrategy;
-import com.github.retro_game.retro_game.entity.Coordinates;
-import com.github.retro_game.retro_game.entity.CoordinatesKind;
+import com.github.retro_game.retro_game.battleengine.OffHeapBattleEngineStrategy;
+import com.github.retro_game.retro_game.battleengine.RandomCombatants;
+import com.github.retro_game.retro_game.battleengine.VectorBattleEngineStrategy;
 import com.github.retro_game.retro_game.entity.UnitKind;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
-import org.springframework.boot.test.context.SpringBootTest;
 
 import java.util.ArrayList;
-import java.util.EnumMap;
 import java.util.List;
 import java.util.Random;
+import java.util.stream.Stream;
 
-@SpringBootTest
+// The engines below must give exactly the same outcomes as the java battle engine.
 public class BattleEngineDifferentialTest {
   private static final long RANDOM_SEED = 42L;
   private static final int NUM_BATTLES = 1000;
-  private final JavaBattleEngineStrategy javaBattleEngine = new JavaBattleEngineStrategy();
-  private final NativeBattleEngineStrategy nativeBattleEngine = new NativeBattleEngineStrategy();
-
-  private static Combatant generateCombatant(Random random) {
-    var weaponsTechnology = random.nextInt(30);
-    var shieldingTechnology = random.nextInt(30);
-    var armorTechnology = random.nextInt(30);
-    var unitGroups = new EnumMap<UnitKind, Long>(UnitKind.class);
-    var numKinds = random.nextInt(UnitKind.values().length + 1);
-    for (var i = 0; i < numKinds; i++) {
-      var k = random.nextInt(UnitKind.values().length);
-      var kind = UnitKind.values()[k];
-      var n = (long) random.nextInt(1000);
-      unitGroups.put(kind, n);
+  private static final int MAX_UNITS_PER_KIND = 1000;
+  // The size of the stats of a combatant in the output of the direct native engine, and the limit of a batch.
+  private static final int DIRECT_OUTPUT_COMBATANT_SIZE = 6 * UnitKind.values().length * (3 * Long.BYTES + 4 * Float.BYTES);
+  private static final int DIRECT_MAX_BATCH_OUTPUT_SIZE = 16 * 1024 * 1024;
+  private final JavaBattleEngineStrategy javaBattleEngine = new JavaBattleEngineStrategy(0);
+
+  private static List<BattleInput> generateBattles() {
+    var random = new Random(RANDOM_SEED);
+    var battles = new ArrayList<BattleInput>(NUM_BATTLES);
+    for (var i = 0; i < NUM_BATTLES; i++) {
+      var seed = random.nextInt();
+      var attackers = RandomCombatants.generateCombatants(random, MAX_UNITS_PER_KIND);
+      var defenders = RandomCombatants.generateCombatants(random, MAX_UNITS_PER_KIND);
+      battles.add(new BattleInput(attackers, defenders, seed));
+    }
+    return battles;
+  }
+
+  // The native engines are skipped when the library hasn't been built, see battle-engine.library.path in pom.xml.
+  private static void assumeNativeLibrary() {
+    var available = true;
+    try {
+      System.loadLibrary("BattleEngine");
+    } catch (UnsatisfiedLinkError e) {
+      available = false;
+    }
+    Assumptions.assumeTrue(available, "The native battle engine library is not available");
+  }
+
+  private static BattleInput generateBattle(Random random, int maxUnitsPerKind) {
+    while (true) {
+      var seed = random.nextInt();
+      var attackers = RandomCombatants.generateCombatants(random, maxUnitsPerKind);
+      var defenders = RandomCombatants.generateCombatants(random, maxUnitsPerKind);
+      if (RandomCombatants.canFight(attackers, defenders)) {
+        return new BattleInput(attackers, defenders, seed);
+      }
     }
-    return new Combatant(1, new Coordinates(1, 1, 1, CoordinatesKind.PLANET), weaponsTechnology, shieldingTechnology,
-        armorTechnology, unitGroups);
   }
 
-  private static List<Combatant> generateCombatants(Random random) {
-    var numCombatants = random.nextInt(10);
-    var combatants = new ArrayList<Combatant>(numCombatants);
-    for (var i = 0; i < numCombatants; i++)
-      combatants.add(generateCombatant(random));
-    return combatants;
+  private static long countUnits(BattleInput battle) {
+    return Stream.concat(battle.attackers().stream(), battle.defenders().stream())
+        .flatMap(c -> c.unitGroups().values().stream())
+        .mapToLong(Long::longValue)
+        .sum();
   }
 
   private void assertOutcomesEqual(List<CombatantOutcome> lhs, List<CombatantOutcome> rhs) {
@@ -56,31 +80,98 @@ public class BattleEngineDifferentialTest {
     }
   }
 
-  @Test
-  public void test() {
+  private void assertSameAsJava(String name, BattleEngineStrategy battleEngine, List<BattleInput> battles) {
     long javaTime = 0;
-    long nativeTime = 0;
-
-    var random = new Random(RANDOM_SEED);
-
-    for (var i = 0; i < NUM_BATTLES; i++) {
-      var seed = random.nextInt();
-      var attackers = generateCombatants(random);
-      var defenders = generateCombatants(random);
+    long engineTime = 0;
 
+    for (var battle : battles) {
       long t1 = System.nanoTime();
-      var javaOutcome = javaBattleEngine.fight(attackers, defenders, seed);
+      var javaOutcome = javaBattleEngine.fight(battle.attackers(), battle.defenders(), battle.seed());
       long t2 = System.nanoTime();
-      var nativeOutcome = nativeBattleEngine.fight(attackers, defenders, seed);
+      var outcome = battleEngine.fight(battle.attackers(), battle.defenders(), battle.seed());
       long t3 = System.nanoTime();
 
       javaTime += t2 - t1;
-      nativeTime += t3 - t2;
+      engineTime += t3 - t2;
 
-      assertOutcomesEqual(javaOutcome.attackersOutcomes(), nativeOutcome.attackersOutcomes());
-      assertOutcomesEqual(javaOutcome.defendersOutcomes(), nativeOutcome.defendersOutcomes());
+      Assertions.assertEquals(javaOutcome.numRounds(), outcome.numRounds());
+      assertOutcomesEqual(javaOutcome.attackersOutcomes(), outcome.attackersOutcomes());
+      assertOutcomesEqual(javaOutcome.defendersOutcomes(), outcome.defendersOutcomes());
     }
 
-    System.out.printf("Battle Engine Perf: java=%,dns native=%,dns\n", javaTime, nativeTime);
+    System.out.printf("Battle Engine Perf: java=%,dns %s=%,dns\n", javaTime, name, engineTime);
+  }
+
+  @Test
+  public void nativeEngine() {
+    assumeNativeLibrary();
+    assertSameAsJava("native", new NativeBattleEngineStrategy(), generateBattles());
+  }
+
+  @Test
+  public void vectorEngine() {
+    assertSameAsJava("vector", new VectorBattleEngineStrategy(), generateBattles());
+  }
+
+  @Test
+  public void arenaEngine() {
+    assertSameAsJava("arena", new ArenaBattleEngineStrategy(), generateBattles());
+  }
+
+  // The arena is reused by all battles fought on a thread. A small battle after a big one must not see any units or
+  // stats left over, and the other way around.
+  @Test
+  public void arenaEngine_battlesBackToBack() {
+    var random = new Random(RANDOM_SEED);
+    var big = generateBattle(random, 50000);
+    var small = generateBattle(random, 100);
+    assertSameAsJava("arena", new ArenaBattleEngineStrategy(), List.of(small, big, small, big));
+  }
+
+  @Test
+  public void offHeapEngine() {
+    assertSameAsJava("off-heap", new OffHeapBattleEngineStrategy(), generateBattles());
+  }
+
+  // The segments of units are sized for each battle, a battle of millions of units needs segments of tens of MB.
+  @Test
+  public void offHeapEngine_bigBattles() {
+    var random = new Random(RANDOM_SEED);
+    var big = generateBattle(random, 100000);
+    var small = generateBattle(random, 100);
+    Assertions.assertTrue(countUnits(big) > 1_000_000);
+    assertSameAsJava("off-heap", new OffHeapBattleEngineStrategy(), List.of(big, small, big));
+  }
+
+  @Test
+  public void directNativeEngine() {
+    assumeNativeLibrary();
+    assertSameAsJava("native-direct", new DirectNativeBattleEngineStrategy(0), generateBattles());
+  }
+
+  // A batch is fought by native threads, and split when its output would exceed the limit. The outcomes must be the
+  // same as the outcomes of the native engine fighting the battles one by one.
+  @Test
+  public void directNativeEngine_fightAll() {
+    assumeNativeLibrary();
+    var battles = generateBattles().stream()
+        .filter(b -> RandomCombatants.canFight(b.attackers(), b.defenders()))
+        .toList();
+    var outputSize = battles.stream()
+        .mapToLong(b -> (long) (b.attackers().size() + b.defenders().size()) * DIRECT_OUTPUT_COMBATANT_SIZE)
+        .sum();
+    Assertions.assertTrue(outputSize > 2L * DIRECT_MAX_BATCH_OUTPUT_SIZE);
+
+    var nativeBattleEngine = new NativeBattleEngineStrategy();
+    var outcomes = new DirectNativeBattleEngineStrategy(4).fightAll(battles);
+    Assertions.assertEquals(battles.size(), outcomes.size());
+    for (var i = 0; i < battles.size(); i++) {
+      var battle = battles.get(i);
+      var expected = nativeBattleEngine.fight(battle.attackers(), battle.defenders(), battle.seed());
+      var outcome = outcomes.get(i);
+      Assertions.assertEquals(expected.numRounds(), outcome.numRounds());
+      assertOutcomesEqual(expected.attackersOutcomes(), outcome.attackersOutcomes());
+      assertOutcomesEqual(expected.defendersOutcomes(), outcome.defendersOutcomes());
+    }
   }
 }
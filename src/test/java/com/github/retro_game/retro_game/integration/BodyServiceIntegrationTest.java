@@ -0,0 +1,91 @@
+package com.github.retro_game.retro_game.integration;
+
+import com.github.retro_game.retro_game.entity.Body;
+import com.github.retro_game.retro_game.entity.Coordinates;
+import com.github.retro_game.retro_game.entity.CoordinatesKind;
+import com.github.retro_game.retro_game.repository.BodyRepository;
+import com.github.retro_game.retro_game.repository.UserRepository;
+import com.github.retro_game.retro_game.service.BodyCreationService;
+import com.github.retro_game.retro_game.service.BodyService;
+import com.github.retro_game.retro_game.service.UserService;
+import com.github.retro_game.retro_game.service.impl.BodyServiceInternal;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.time.Instant;
+import java.util.Date;
+
+// A projected body stays in the persistence context as a read-only entity, the tests below project and then modify it
+// in the same one, like a request does with the body context.
+public class BodyServiceIntegrationTest extends IntegrationTest {
+  @Autowired
+  private UserRepository userRepository;
+  @Autowired
+  private BodyRepository bodyRepository;
+  @Autowired
+  private BodyCreationService bodyCreationService;
+  @Autowired
+  private BodyService bodyService;
+  @Autowired
+  private BodyServiceInternal bodyServiceInternal;
+  @Autowired
+  private UserService userService;
+  @Autowired
+  private EntityManager entityManager;
+
+  private Body createBody() {
+    var userId = userService.create("test@test", "test", "test");
+    var user = userRepository.findById(userId).orElseThrow();
+    var coordinates = new Coordinates();
+    coordinates.setGalaxy(1);
+    coordinates.setSystem(1);
+    coordinates.setPosition(1);
+    coordinates.setKind(CoordinatesKind.PLANET);
+    var now = Date.from(Instant.ofEpochSecond(Instant.now().getEpochSecond()));
+    return bodyCreationService.createColony(user, coordinates, now);
+  }
+
+  @Test
+  @Transactional
+  public void rename_afterProjection_flushed() {
+    var bodyId = createBody().getId();
+    entityManager.flush();
+    var projected = bodyServiceInternal.getProjected(bodyId);
+    Assertions.assertThat(projected.isProjected()).isTrue();
+
+    bodyService.rename(bodyId, "Renamed");
+    entityManager.flush();
+    entityManager.clear();
+
+    Assertions.assertThat(bodyRepository.findById(bodyId).orElseThrow().getName()).isEqualTo("Renamed");
+  }
+
+  @Test
+  @Transactional
+  public void getUpdated_afterProjection_writable() {
+    var bodyId = createBody().getId();
+    entityManager.flush();
+    bodyServiceInternal.getProjected(bodyId);
+
+    var body = bodyServiceInternal.getUpdated(bodyId);
+    Assertions.assertThat(body.isProjected()).isFalse();
+    body.setName("Updated");
+    entityManager.flush();
+    entityManager.clear();
+
+    Assertions.assertThat(bodyRepository.findById(bodyId).orElseThrow().getName()).isEqualTo("Updated");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  @Transactional
+  public void setter_afterProjection_throws() {
+    var bodyId = createBody().getId();
+    entityManager.flush();
+    var body = bodyServiceInternal.getProjected(bodyId);
+    // The change would not be flushed, as the body is read-only in the persistence context.
+    body.setName("Lost");
+  }
+}
@@ -0,0 +1,112 @@
+package com.github.retro_game.retro_game.integration;
+
+import com.github.retro_game.retro_game.entity.Event;
+import com.github.retro_game.retro_game.entity.EventKind;
+import com.github.retro_game.retro_game.repository.EventRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Date;
+
+// The cluster mode of the event scheduler relies on Postgres specific SQL, which is run here against a real database.
+// The events are created in transactions that are rolled back, so that the scheduler of the test context doesn't see
+// them.
+public class EventRepositoryIntegrationTest extends IntegrationTest {
+  private static final int LEASE_SECONDS = 300;
+  @Autowired
+  private EventRepository eventRepository;
+  @Autowired
+  private DataSource dataSource;
+
+  private Event createEvent(long secondsFromNow) {
+    var at = Date.from(Instant.now().plusSeconds(secondsFromNow));
+    return eventRepository.save(new Event(0, at, EventKind.FLIGHT, 1L));
+  }
+
+  @Test
+  @Transactional
+  public void claimDue_claimsDueEventsInOrder() {
+    var second = createEvent(-10);
+    var first = createEvent(-20);
+    var notDue = createEvent(3600);
+
+    var events = eventRepository.claimDue("a", LEASE_SECONDS, 10);
+
+    Assertions.assertThat(events).extracting(Event::getId).containsExactly(first.getId(), second.getId());
+    Assertions.assertThat(events).allSatisfy(e -> {
+      Assertions.assertThat(e.getClaimedBy()).isEqualTo("a");
+      Assertions.assertThat(e.getClaimedUntil()).isAfter(new Date());
+    });
+    Assertions.assertThat(eventRepository.findById(notDue.getId()).orElseThrow().getClaimedBy()).isNull();
+  }
+
+  @Test
+  @Transactional
+  public void claimDue_respectsLimit() {
+    var first = createEvent(-20);
+    createEvent(-10);
+
+    var events = eventRepository.claimDue("a", LEASE_SECONDS, 1);
+
+    Assertions.assertThat(events).extracting(Event::getId).containsExactly(first.getId());
+  }
+
+  @Test
+  @Transactional
+  public void claimDue_leasedByAnotherNode_skipped() {
+    var event = createEvent(-10);
+    eventRepository.claimDue("a", LEASE_SECONDS, 10);
+
+    Assertions.assertThat(eventRepository.claimDue("b", LEASE_SECONDS, 10)).isEmpty();
+    // The node holding the lease claims the event again, which extends the lease.
+    Assertions.assertThat(eventRepository.claimDue("a", LEASE_SECONDS, 10))
+        .extracting(Event::getId)
+        .containsExactly(event.getId());
+  }
+
+  @Test
+  @Transactional
+  public void claimDue_leaseExpired_claimedByAnotherNode() {
+    var event = createEvent(-10);
+    // A lease in the past is expired right away.
+    eventRepository.claimDue("a", -LEASE_SECONDS, 10);
+
+    Assertions.assertThat(eventRepository.claimDue("b", LEASE_SECONDS, 10))
+        .extracting(Event::getId, Event::getClaimedBy)
+        .containsExactly(Assertions.tuple(event.getId(), "b"));
+  }
+
+  @Test
+  @Transactional
+  public void findNextClaimableAt_leasedEvent_endOfLease() {
+    createEvent(-10);
+    eventRepository.claimDue("a", LEASE_SECONDS, 10);
+
+    var nextAt = eventRepository.findNextClaimableAt("b");
+
+    Assertions.assertThat(nextAt).isPresent();
+    Assertions.assertThat(nextAt.get()).isAfter(Date.from(Instant.now().plusSeconds(LEASE_SECONDS - 60)));
+  }
+
+  @Test
+  public void notify_deliveredToListener() throws SQLException {
+    try (var connection = dataSource.getConnection()) {
+      connection.setAutoCommit(true);
+      try (var statement = connection.createStatement()) {
+        statement.execute("listen test_events");
+      }
+
+      eventRepository.notify("test_events");
+
+      var notifications = connection.unwrap(PGConnection.class).getNotifications(10000);
+      Assertions.assertThat(notifications).hasSize(1);
+      Assertions.assertThat(notifications[0].getName()).isEqualTo("test_events");
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package com.github.retro_game.retro_game.unit;
+
+import com.github.retro_game.retro_game.battleengine.AggregatedBattleEngineStrategy;
+import com.github.retro_game.retro_game.battleengine.Combatant;
+import com.github.retro_game.retro_game.battleengine.CombatantOutcome;
+import com.github.retro_game.retro_game.battleengine.RandomCombatants;
+import com.github.retro_game.retro_game.entity.UnitKind;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+// The aggregated engine gives different outcomes than the other engines for the same seed, thus it cannot be compared
+// with them. Instead, the invariants every outcome must satisfy are checked on random battles.
+public class AggregatedBattleEngineStrategyTest {
+  private static final long RANDOM_SEED = 42L;
+  private static final int NUM_BATTLES = 200;
+  private static final int MAX_ROUNDS = 6;
+  private final AggregatedBattleEngineStrategy battleEngine = new AggregatedBattleEngineStrategy();
+
+  private static void assertInvariants(List<Combatant> combatants, List<CombatantOutcome> outcomes, int numRounds) {
+    Assertions.assertEquals(combatants.size(), outcomes.size());
+    for (var i = 0; i < combatants.size(); i++) {
+      var unitGroups = combatants.get(i).unitGroups();
+      var stats = outcomes.get(i).unitGroupsStats();
+      Assertions.assertEquals(numRounds, stats.size());
+      for (var kind : UnitKind.values()) {
+        var previous = unitGroups.getOrDefault(kind, 0L);
+        for (var round = 0; round < numRounds; round++) {
+          var s = stats.get(round).get(kind);
+          Assertions.assertNotNull(s);
+          Assertions.assertTrue(s.numRemainingUnits() >= 0L);
+          Assertions.assertTrue(s.numRemainingUnits() <= previous, "Units revived");
+          Assertions.assertTrue(s.timesFired() >= 0L);
+          Assertions.assertTrue(s.timesWasShot() >= 0L);
+          Assertions.assertTrue(s.shieldDamageDealt() >= 0.0f);
+          Assertions.assertTrue(s.hullDamageDealt() >= 0.0f);
+          Assertions.assertTrue(s.shieldDamageTaken() >= 0.0f);
+          Assertions.assertTrue(s.hullDamageTaken() >= 0.0f);
+          previous = s.numRemainingUnits();
+        }
+      }
+    }
+  }
+
+  @Test
+  public void randomBattles_keepInvariants() {
+    var random = new Random(RANDOM_SEED);
+    var numFought = 0;
+    while (numFought < NUM_BATTLES) {
+      var seed = random.nextInt();
+      var attackers = RandomCombatants.generateCombatants(random, 1000);
+      var defenders = RandomCombatants.generateCombatants(random, 1000);
+      if (!RandomCombatants.canFight(attackers, defenders)) {
+        continue;
+      }
+      numFought++;
+
+      var outcome = battleEngine.fight(attackers, defenders, seed);
+      Assertions.assertTrue(outcome.numRounds() >= 1 && outcome.numRounds() <= MAX_ROUNDS);
+      assertInvariants(attackers, outcome.attackersOutcomes(), outcome.numRounds());
+      assertInvariants(defenders, outcome.defendersOutcomes(), outcome.numRounds());
+    }
+  }
+
+  @Test
+  public void randomBattles_sameSeed_sameOutcome() {
+    var random = new Random(RANDOM_SEED);
+    var numFought = 0;
+    while (numFought < NUM_BATTLES) {
+      var seed = random.nextInt();
+      var attackers = RandomCombatants.generateCombatants(random, 1000);
+      var defenders = RandomCombatants.generateCombatants(random, 1000);
+      if (!RandomCombatants.canFight(attackers, defenders)) {
+        continue;
+      }
+      numFought++;
+
+      var first = battleEngine.fight(attackers, defenders, seed);
+      var second = battleEngine.fight(attackers, defenders, seed);
+      Assertions.assertEquals(first, second);
+    }
+  }
+}
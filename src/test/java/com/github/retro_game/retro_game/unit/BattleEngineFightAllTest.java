@@ -0,0 +1,92 @@
+package com.github.retro_game.retro_game.unit;
+
+import com.github.retro_game.retro_game.battleengine.AggregatedBattleEngineStrategy;
+import com.github.retro_game.retro_game.battleengine.ArenaBattleEngineStrategy;
+import com.github.retro_game.retro_game.battleengine.BattleEngineStrategy;
+import com.github.retro_game.retro_game.battleengine.BattleInput;
+import com.github.retro_game.retro_game.battleengine.DirectNativeBattleEngineStrategy;
+import com.github.retro_game.retro_game.battleengine.JavaBattleEngineStrategy;
+import com.github.retro_game.retro_game.battleengine.NativeBattleEngineStrategy;
+import com.github.retro_game.retro_game.battleengine.OffHeapBattleEngineStrategy;
+import com.github.retro_game.retro_game.battleengine.ParallelBattleEngineStrategy;
+import com.github.retro_game.retro_game.battleengine.RandomCombatants;
+import com.github.retro_game.retro_game.battleengine.VectorBattleEngineStrategy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Fighting a batch of battles must give the same outcomes as fighting them one by one, in the order of the batch.
+public class BattleEngineFightAllTest {
+  private static final long RANDOM_SEED = 42L;
+  private static final int NUM_BATTLES = 200;
+
+  private static BattleEngineStrategy makeStrategy(String engine) {
+    if (engine.startsWith("native")) {
+      // The native engines are skipped when the library hasn't been built.
+      var available = true;
+      try {
+        System.loadLibrary("BattleEngine");
+      } catch (UnsatisfiedLinkError e) {
+        available = false;
+      }
+      Assumptions.assumeTrue(available, "The native battle engine library is not available");
+    }
+    return switch (engine) {
+      case "java" -> new JavaBattleEngineStrategy(4);
+      case "native" -> new NativeBattleEngineStrategy();
+      case "native-direct" -> new DirectNativeBattleEngineStrategy(4);
+      case "aggregated" -> new AggregatedBattleEngineStrategy();
+      case "parallel" -> new ParallelBattleEngineStrategy(4);
+      case "vector" -> new VectorBattleEngineStrategy();
+      case "arena" -> new ArenaBattleEngineStrategy();
+      case "off-heap" -> new OffHeapBattleEngineStrategy();
+      default -> throw new IllegalArgumentException("Wrong engine: " + engine);
+    };
+  }
+
+  private static List<BattleInput> generateBattles() {
+    var random = new Random(RANDOM_SEED);
+    var battles = new ArrayList<BattleInput>(NUM_BATTLES);
+    while (battles.size() < NUM_BATTLES) {
+      var seed = random.nextInt();
+      var attackers = RandomCombatants.generateCombatants(random, 1000);
+      var defenders = RandomCombatants.generateCombatants(random, 1000);
+      if (RandomCombatants.canFight(attackers, defenders)) {
+        battles.add(new BattleInput(attackers, defenders, seed));
+      }
+    }
+    return battles;
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"java", "native", "native-direct", "aggregated", "parallel", "vector", "arena", "off-heap"})
+  public void fightAll_sameAsFight(String engine) {
+    var battleEngine = makeStrategy(engine);
+    var battles = generateBattles();
+
+    var outcomes = battleEngine.fightAll(battles);
+
+    Assertions.assertEquals(battles.size(), outcomes.size());
+    for (var i = 0; i < battles.size(); i++) {
+      var battle = battles.get(i);
+      var expected = battleEngine.fight(battle.attackers(), battle.defenders(), battle.seed());
+      var outcome = outcomes.get(i);
+      Assertions.assertEquals(expected.numRounds(), outcome.numRounds());
+      Assertions.assertEquals(expected.attackersOutcomes().size(), outcome.attackersOutcomes().size());
+      for (var j = 0; j < expected.attackersOutcomes().size(); j++) {
+        Assertions.assertEquals(expected.attackersOutcomes().get(j).unitGroupsStats(),
+            outcome.attackersOutcomes().get(j).unitGroupsStats());
+      }
+      Assertions.assertEquals(expected.defendersOutcomes().size(), outcome.defendersOutcomes().size());
+      for (var j = 0; j < expected.defendersOutcomes().size(); j++) {
+        Assertions.assertEquals(expected.defendersOutcomes().get(j).unitGroupsStats(),
+            outcome.defendersOutcomes().get(j).unitGroupsStats());
+      }
+    }
+  }
+}
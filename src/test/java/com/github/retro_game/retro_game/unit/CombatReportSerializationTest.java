@@ -0,0 +1,114 @@
+package com.github.retro_game.retro_game.unit;
+
+import com.github.retro_game.retro_game.battleengine.BattleEngineImpl;
+import com.github.retro_game.retro_game.battleengine.BattleEngineStrategy;
+import com.github.retro_game.retro_game.battleengine.BattleOutcome;
+import com.github.retro_game.retro_game.battleengine.Combatant;
+import com.github.retro_game.retro_game.battleengine.JavaBattleEngineStrategy;
+import com.github.retro_game.retro_game.battleengine.RandomCombatants;
+import com.github.retro_game.retro_game.entity.Coordinates;
+import com.github.retro_game.retro_game.entity.CoordinatesKind;
+import com.github.retro_game.retro_game.entity.UnitKind;
+import com.github.retro_game.retro_game.service.impl.CombatReportSerialization;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Random;
+
+public class CombatReportSerializationTest {
+  private static final long RANDOM_SEED = 42L;
+  private static final int NUM_BATTLES = 200;
+  private final BattleEngineImpl battleEngine = new BattleEngineImpl(new JavaBattleEngineStrategy(1));
+
+  private record Battle(List<Combatant> attackers, List<Combatant> defenders, BattleOutcome outcome) {
+  }
+
+  // Distinct users and coordinates, so that a mixed up combatant is noticed.
+  private static List<Combatant> generateCombatants(Random random, long firstUserId) {
+    var combatants = new ArrayList<Combatant>();
+    for (var c : RandomCombatants.generateCombatants(random, 1000)) {
+      var userId = firstUserId + combatants.size();
+      var coordinates = new Coordinates(1 + random.nextInt(5), 1 + random.nextInt(500), 1 + random.nextInt(15),
+          CoordinatesKind.values()[random.nextInt(CoordinatesKind.values().length)]);
+      combatants.add(new Combatant(userId, coordinates, c.weaponsTechnology(), c.shieldingTechnology(),
+          c.armorTechnology(), c.unitGroups()));
+    }
+    return combatants;
+  }
+
+  private List<Battle> generateBattles() {
+    var random = new Random(RANDOM_SEED);
+    var battles = new ArrayList<Battle>(NUM_BATTLES);
+    while (battles.size() < NUM_BATTLES) {
+      var attackers = generateCombatants(random, 1);
+      var defenders = generateCombatants(random, 100);
+      // Reports always have an attacker and a defender.
+      if (attackers.isEmpty() || defenders.isEmpty()) {
+        continue;
+      }
+      var outcome = battleEngine.fight(attackers, defenders, random.nextInt());
+      battles.add(new Battle(attackers, defenders, outcome));
+    }
+    return battles;
+  }
+
+  // Empty groups are not stored.
+  private static List<Combatant> withoutEmptyGroups(List<Combatant> combatants) {
+    return combatants.stream()
+        .map(c -> {
+          var unitGroups = new EnumMap<UnitKind, Long>(UnitKind.class);
+          c.unitGroups().forEach((kind, count) -> {
+            if (count > 0) {
+              unitGroups.put(kind, count);
+            }
+          });
+          return new Combatant(c.userId(), c.coordinates(), c.weaponsTechnology(), c.shieldingTechnology(),
+              c.armorTechnology(), unitGroups);
+        })
+        .toList();
+  }
+
+  @Test
+  public void v1_roundTrip() {
+    for (var battle : generateBattles()) {
+      var data = CombatReportSerialization.serializeV1(battle.attackers, battle.defenders, battle.outcome);
+      Assertions.assertFalse(CombatReportSerialization.isInputsOnly(data));
+      var deserialized = CombatReportSerialization.deserialize(data);
+      Assertions.assertEquals(battle.attackers.size(), deserialized.attackers().size());
+      Assertions.assertEquals(battle.defenders.size(), deserialized.defenders().size());
+      Assertions.assertEquals(battle.outcome.numRounds(), deserialized.rounds().size());
+    }
+  }
+
+  @Test
+  public void v2_roundTrip_sameAsV1() {
+    for (var battle : generateBattles()) {
+      var v1 = CombatReportSerialization.serializeV1(battle.attackers, battle.defenders, battle.outcome);
+      var v2 = CombatReportSerialization.serialize(battle.attackers, battle.defenders, battle.outcome);
+      Assertions.assertFalse(CombatReportSerialization.isInputsOnly(v2));
+      Assertions.assertTrue(v2.length <= v1.length);
+      Assertions.assertEquals(CombatReportSerialization.deserialize(v1), CombatReportSerialization.deserialize(v2));
+    }
+  }
+
+  @Test
+  public void inputsOnly_roundTrip() {
+    for (var battle : generateBattles()) {
+      var data = CombatReportSerialization.serializeInputs(BattleEngineStrategy.AGGREGATED_RULES, battle.attackers,
+          battle.defenders);
+      Assertions.assertTrue(CombatReportSerialization.isInputsOnly(data));
+      var inputs = CombatReportSerialization.deserializeInputs(data);
+      Assertions.assertEquals(BattleEngineStrategy.AGGREGATED_RULES, inputs.rules());
+      Assertions.assertEquals(withoutEmptyGroups(battle.attackers), inputs.attackers());
+      Assertions.assertEquals(withoutEmptyGroups(battle.defenders), inputs.defenders());
+
+      // The regenerated report is the same as the stored one.
+      var v2 = CombatReportSerialization.serialize(battle.attackers, battle.defenders, battle.outcome);
+      Assertions.assertEquals(CombatReportSerialization.deserialize(v2),
+          CombatReportSerialization.regenerate(inputs, battle.outcome));
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package com.github.retro_game.retro_game.unit;
+
+import com.github.retro_game.retro_game.service.impl.EventQueue;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+public class EventQueueTest {
+  private record Key(long at, long id) {
+  }
+
+  private static ArrayList<Key> drain(EventQueue queue) {
+    var keys = new ArrayList<Key>();
+    while (!queue.isEmpty()) {
+      keys.add(new Key(queue.peekAt(), queue.peekId()));
+      queue.poll();
+    }
+    return keys;
+  }
+
+  @Test
+  public void sameAt_orderedById() {
+    var queue = new EventQueue();
+    var ids = new ArrayList<Long>();
+    for (var id = 1L; id <= 100L; id++) {
+      ids.add(id);
+    }
+    Collections.shuffle(ids, new Random(42L));
+    for (var id : ids) {
+      queue.add(1000L, id);
+    }
+
+    var keys = drain(queue);
+    Assertions.assertEquals(100, keys.size());
+    for (var i = 0; i < keys.size(); i++) {
+      Assertions.assertEquals(new Key(1000L, i + 1L), keys.get(i));
+    }
+  }
+
+  @Test
+  public void randomKeys_orderedByAtThenId() {
+    var random = new Random(42L);
+    var queue = new EventQueue();
+    var expected = new ArrayList<Key>();
+    for (var i = 0; i < 10000; i++) {
+      // Few distinct times, so that many events share them.
+      var key = new Key(random.nextInt(10), random.nextInt(1000));
+      expected.add(key);
+      queue.add(key.at(), key.id());
+      // Interleave polls with adds, the heap must stay ordered.
+      if (random.nextInt(4) == 0) {
+        expected.sort((a, b) -> EventQueue.less(a.at(), a.id(), b.at(), b.id()) ? -1 :
+            EventQueue.less(b.at(), b.id(), a.at(), a.id()) ? 1 : 0);
+        Assertions.assertEquals(expected.remove(0), new Key(queue.peekAt(), queue.peekId()));
+        queue.poll();
+      }
+    }
+    expected.sort((a, b) -> a.at() != b.at() ? Long.compare(a.at(), b.at()) : Long.compare(a.id(), b.id()));
+    Assertions.assertEquals(expected, drain(queue));
+  }
+
+  @Test
+  public void less_comparesAtThenId() {
+    Assertions.assertTrue(EventQueue.less(1L, 2L, 2L, 1L));
+    Assertions.assertTrue(EventQueue.less(1L, 1L, 1L, 2L));
+    Assertions.assertFalse(EventQueue.less(1L, 2L, 1L, 1L));
+    Assertions.assertFalse(EventQueue.less(1L, 1L, 1L, 1L));
+  }
+}
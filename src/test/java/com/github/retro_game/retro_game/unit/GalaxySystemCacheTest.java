@@ -0,0 +1,87 @@
+package com.github.retro_game.retro_game.unit;
+
+import com.github.retro_game.retro_game.cache.GalaxySystemCache;
+import com.github.retro_game.retro_game.entity.GalaxySlot;
+import com.github.retro_game.retro_game.repository.GalaxySlotRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class GalaxySystemCacheTest {
+  private final GalaxySlot oldSlot = Mockito.mock(GalaxySlot.class);
+  private final GalaxySlot newSlot = Mockito.mock(GalaxySlot.class);
+
+  @Test
+  public void get_loadedOnce() {
+    var repository = Mockito.mock(GalaxySlotRepository.class);
+    Mockito.when(repository.findAllByGalaxyAndSystem(1, 2)).thenReturn(List.of(oldSlot));
+    var cache = new GalaxySystemCache(false, 60, repository);
+
+    Assertions.assertEquals(List.of(oldSlot), cache.get(1, 2));
+    Assertions.assertEquals(List.of(oldSlot), cache.get(1, 2));
+    Mockito.verify(repository, Mockito.times(1)).findAllByGalaxyAndSystem(1, 2);
+  }
+
+  @Test
+  public void evict_reloaded() {
+    var repository = Mockito.mock(GalaxySlotRepository.class);
+    Mockito.when(repository.findAllByGalaxyAndSystem(1, 2)).thenReturn(List.of(oldSlot), List.of(newSlot));
+    var cache = new GalaxySystemCache(false, 60, repository);
+
+    Assertions.assertEquals(List.of(oldSlot), cache.get(1, 2));
+    cache.evict(1, 2);
+    Assertions.assertEquals(List.of(newSlot), cache.get(1, 2));
+  }
+
+  // Other instances of a cluster don't evict the systems of this one, they expire instead.
+  @Test
+  public void clusterMode_expired_reloaded() throws Exception {
+    var repository = Mockito.mock(GalaxySlotRepository.class);
+    Mockito.when(repository.findAllByGalaxyAndSystem(1, 2)).thenReturn(List.of(oldSlot), List.of(newSlot));
+    var cache = new GalaxySystemCache(true, 1, repository);
+
+    Assertions.assertEquals(List.of(oldSlot), cache.get(1, 2));
+    Thread.sleep(1100);
+    Assertions.assertEquals(List.of(newSlot), cache.get(1, 2));
+  }
+
+  // The first load reads the slots before the change, and the system is evicted before the load finishes. The stale
+  // slots must not be cached.
+  @Test
+  public void evict_duringLoad_staleLoadNotCached() throws Exception {
+    testEvictDuringLoad(cache -> cache.evict(1, 2));
+  }
+
+  @Test
+  public void evictAll_duringLoad_staleLoadNotCached() throws Exception {
+    testEvictDuringLoad(GalaxySystemCache::evictAll);
+  }
+
+  private void testEvictDuringLoad(Consumer<GalaxySystemCache> evict) throws Exception {
+    var loading = new CountDownLatch(1);
+    var evicted = new CountDownLatch(1);
+    var repository = Mockito.mock(GalaxySlotRepository.class);
+    Mockito.when(repository.findAllByGalaxyAndSystem(1, 2))
+        .thenAnswer(invocation -> {
+          loading.countDown();
+          Assertions.assertTrue(evicted.await(10, TimeUnit.SECONDS));
+          return List.of(oldSlot);
+        })
+        .thenReturn(List.of(newSlot));
+    var cache = new GalaxySystemCache(false, 60, repository);
+
+    var stale = CompletableFuture.supplyAsync(() -> cache.get(1, 2));
+    Assertions.assertTrue(loading.await(10, TimeUnit.SECONDS));
+    evict.accept(cache);
+    evicted.countDown();
+
+    Assertions.assertEquals(List.of(oldSlot), stale.get(10, TimeUnit.SECONDS));
+    Assertions.assertEquals(List.of(newSlot), cache.get(1, 2));
+  }
+}
@@ -0,0 +1,37 @@
+package com.github.retro_game.retro_game.unit;
+
+import com.github.retro_game.retro_game.battleengine.ParallelBattleEngineStrategy;
+import com.github.retro_game.retro_game.battleengine.RandomCombatants;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+// Replays of battles depend on the outcome being independent of the number of cores.
+public class ParallelBattleEngineStrategyTest {
+  private static final long RANDOM_SEED = 42L;
+  private static final int NUM_BATTLES = 20;
+  private final ParallelBattleEngineStrategy sequentialEngine = new ParallelBattleEngineStrategy(1);
+  private final ParallelBattleEngineStrategy parallelEngine = new ParallelBattleEngineStrategy(4);
+
+  @Test
+  public void sameSeed_sameOutcomeForAnyParallelism() {
+    var random = new Random(RANDOM_SEED);
+    var numFought = 0;
+    while (numFought < NUM_BATTLES) {
+      var seed = random.nextInt();
+      // Big enough to split the shooters into many chunks and the targets into many partitions.
+      var attackers = RandomCombatants.generateCombatants(random, 20000);
+      var defenders = RandomCombatants.generateCombatants(random, 20000);
+      if (!RandomCombatants.canFight(attackers, defenders)) {
+        continue;
+      }
+      numFought++;
+
+      var expected = sequentialEngine.fight(attackers, defenders, seed);
+      Assertions.assertEquals(expected, parallelEngine.fight(attackers, defenders, seed));
+      // The workspace of the previous fight is reused, the outcome must not depend on it.
+      Assertions.assertEquals(expected, parallelEngine.fight(attackers, defenders, seed));
+    }
+  }
+}